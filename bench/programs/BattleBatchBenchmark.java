@@ -0,0 +1,37 @@
+package programs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакет из 64 полных боёв через {@link BattleBatchRunner} при разном числе потоков —
+ * проверка того, что пропускная способность растёт с числом ядер.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BattleBatchBenchmark {
+
+    private static final int BATTLES = 64;
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    private BattleBatchRunner runner;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        runner = new BattleBatchRunner(parallelism);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATTLES)
+    public BattleBatchRunner.Summary batch() {
+        return runner.run(BenchFixtures::fullArmies, BATTLES, seed++);
+    }
+}
@@ -0,0 +1,86 @@
+package programs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Цена журнала боёв: пакет из 16 полных боёв на одном потоке без журнала и с записью в {@link BattleJournal},
+ * и проход {@link BattleJournalReader} по 256 записанным боям — сводка по итогам и разбор всех событий.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BattleJournalBenchmark {
+
+    private static final int BATTLES = 16;
+    private static final int RECORDED = 256;
+
+    @Param({"false", "true"})
+    public boolean journaled;
+
+    private Path directory;
+    private BattleJournal journal;
+    private BattleBatchRunner runner;
+    private BattleJournalReader reader;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("battle-journal");
+        journal = new BattleJournal(directory);
+        runner = new BattleBatchRunner(1);
+        runner.setJournal(journal);
+        runner.run(BenchFixtures::fullArmies, RECORDED, 42);
+        reader = BattleJournalReader.open(directory);
+        if (!journaled) runner.setJournal(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATTLES)
+    public BattleBatchRunner.Summary batch() {
+        return runner.run(BenchFixtures::fullArmies, BATTLES, seed++);
+    }
+
+    /** Доля побед игрока по заголовкам боёв, без событий. */
+    @Benchmark
+    public long scanOutcomes() {
+        BattleJournalReader.Cursor cursor = reader.cursor();
+        long wins = 0;
+        while (cursor.next()) {
+            if (cursor.getWinner() == BattleBatchRunner.Winner.PLAYER) wins++;
+        }
+        return wins;
+    }
+
+    /** Урон по юнитам игрока за все бои — чтение каждого события. */
+    @Benchmark
+    public long scanEvents() {
+        BattleJournalReader.Cursor cursor = reader.cursor();
+        long damaged = 0;
+        while (cursor.next()) {
+            for (int i = 0; i < cursor.size(); i++) {
+                if (cursor.kind(i) == BattleTimeline.Kind.DAMAGE && cursor.isPlayerUnit(cursor.unit(i))) damaged++;
+            }
+        }
+        return damaged;
+    }
+}
@@ -0,0 +1,38 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимок полного боя (по 44 юнита с каждой стороны): {@link BattleState#fork()} против глубокой копии
+ * армий с клонированием программ ({@link BattleBatchRunner#copyPair}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BattleStateBenchmark {
+
+    private Army[] armies;
+    private BattleState state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        armies = BenchFixtures.fullArmies(1);
+        state = BattleState.of(armies[0], armies[1]);
+    }
+
+    @Benchmark
+    public BattleState fork() {
+        return state.fork();
+    }
+
+    @Benchmark
+    public Army[] copyArmies() {
+        return BattleBatchRunner.copyPair(armies[0], armies[1]);
+    }
+}
@@ -0,0 +1,199 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.army.programs.computer.ComputerArcherProgram;
+import com.battle.heroes.army.programs.computer.ComputerKnightProgram;
+import com.battle.heroes.army.programs.computer.ComputerPikemanProgram;
+import com.battle.heroes.army.programs.computer.ComputerSwordsmanProgram;
+import com.battle.heroes.army.programs.user.UserArcherProgram;
+import com.battle.heroes.army.programs.user.UserKnightProgram;
+import com.battle.heroes.army.programs.user.UserPikemanProgram;
+import com.battle.heroes.army.programs.user.UserSwordsmanProgram;
+import com.battle.heroes.util.GameSpeedUtil;
+
+import java.util.*;
+
+/**
+ * Детерминированные (по seed) данные для бенчмарков: доски 27x21 заданной плотности,
+ * шаблоны юнитов и полные армии по 11 юнитов каждого типа.
+ * <p>
+ * Характеристики юнитов условные — нам важны размеры и форма данных, а не баланс.
+ */
+final class BenchFixtures {
+
+    static final int WIDTH = 27;
+    static final int HEIGHT = 21;
+    static final int SIDE_WIDTH = 3;
+    static final int MAX_UNITS_PER_TYPE = 11;
+
+    static final String[] TYPES = {"Knight", "Swordsman", "Pikeman", "Archer"};
+
+    private BenchFixtures() {
+    }
+
+    /** Один (атакующий, цель, все юниты) — вход для {@code getTargetPath}. */
+    record PathQuery(Unit attacker, Unit target, List<Unit> units) {
+    }
+
+    /**
+     * Доска с {@code density}% занятых клеток. Атакующий стоит справа (x=24..26),
+     * цель — слева (x=0..2), остальные клетки заполняются случайно.
+     */
+    static PathQuery pathQuery(int densityPercent, long seed) {
+        Random rnd = new Random(seed);
+
+        int ax = WIDTH - SIDE_WIDTH + rnd.nextInt(SIDE_WIDTH);
+        int ay = rnd.nextInt(HEIGHT);
+        int tx = rnd.nextInt(SIDE_WIDTH);
+        int ty = rnd.nextInt(HEIGHT);
+
+        Unit attacker = unit("Knight", "attacker", ax, ay);
+        Unit target = unit("Archer", "target", tx, ty);
+
+        List<Integer> free = new ArrayList<>(WIDTH * HEIGHT);
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                if ((x == ax && y == ay) || (x == tx && y == ty)) continue;
+                free.add(x * HEIGHT + y);
+            }
+        }
+        Collections.shuffle(free, rnd);
+
+        int occupied = WIDTH * HEIGHT * densityPercent / 100;
+        List<Unit> units = new ArrayList<>(occupied + 2);
+        units.add(attacker);
+        units.add(target);
+        for (int i = 0; i < occupied && i < free.size(); i++) {
+            int cell = free.get(i);
+            units.add(unit("Swordsman", "obstacle " + i, cell / HEIGHT, cell % HEIGHT));
+        }
+        return new PathQuery(attacker, target, units);
+    }
+
+    /** Шаблоны по одному на тип — то, что игра передаёт в {@code GeneratePreset.generate}. */
+    static List<Unit> templates() {
+        List<Unit> list = new ArrayList<>(TYPES.length);
+        for (String type : TYPES) {
+            list.add(unit(type, type, 0, 0));
+        }
+        return list;
+    }
+
+    /** Пара полных армий (11 юнитов каждого типа) с программами игрока и компьютера. */
+    static Army[] fullArmies(long seed) {
+        Random rnd = new Random(seed);
+        Army player = new Army();
+        Army computer = new Army();
+        player.setUnits(deploy(WIDTH - SIDE_WIDTH, rnd));
+        computer.setUnits(deploy(0, rnd));
+
+        GameSpeedUtil speed = new GameSpeedUtil(0);
+        SuitableForAttackUnitsFinderImpl finder = new SuitableForAttackUnitsFinderImpl();
+        UnitTargetPathFinderImpl pathFinder = new UnitTargetPathFinderImpl();
+
+        for (Unit u : player.getUnits()) {
+            u.setProgram(userProgram(u, player, computer, speed, finder, pathFinder));
+        }
+        for (Unit u : computer.getUnits()) {
+            u.setProgram(computerProgram(u, computer, player, speed, finder, pathFinder));
+        }
+        return new Army[]{player, computer};
+    }
+
+    /** Юниты армии, сгруппированные по x — так их видит {@code SuitableForAttackUnitsFinder}. */
+    static List<List<Unit>> rows(Army army, int fromX) {
+        List<List<Unit>> rows = new ArrayList<>(SIDE_WIDTH);
+        for (int x = fromX; x < fromX + SIDE_WIDTH; x++) {
+            List<Unit> row = new ArrayList<>();
+            for (Unit u : army.getUnits()) {
+                if (u.getxCoordinate() == x) row.add(u);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<Unit> deploy(int fromX, Random rnd) {
+        List<int[]> cells = new ArrayList<>(SIDE_WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int dx = 0; dx < SIDE_WIDTH; dx++) {
+                cells.add(new int[]{fromX + dx, y});
+            }
+        }
+        Collections.shuffle(cells, rnd);
+
+        List<Unit> units = new ArrayList<>(TYPES.length * MAX_UNITS_PER_TYPE);
+        int cellIndex = 0;
+        for (String type : TYPES) {
+            for (int i = 1; i <= MAX_UNITS_PER_TYPE; i++) {
+                int[] cell = cells.get(cellIndex++);
+                units.add(unit(type, type + " " + i, cell[0], cell[1]));
+            }
+        }
+        return units;
+    }
+
+    static Unit unit(String type, String name, int x, int y) {
+        int health;
+        int attack;
+        int cost;
+        String attackType;
+        switch (type) {
+            case "Knight" -> {
+                health = 110;
+                attack = 50;
+                cost = 40;
+                attackType = "Melee";
+            }
+            case "Swordsman" -> {
+                health = 95;
+                attack = 40;
+                cost = 30;
+                attackType = "Melee";
+            }
+            case "Pikeman" -> {
+                health = 80;
+                attack = 35;
+                cost = 25;
+                attackType = "Melee";
+            }
+            default -> {
+                health = 50;
+                attack = 30;
+                cost = 20;
+                attackType = "Ranged";
+            }
+        }
+        Map<String, Double> attackBonuses = new HashMap<>();
+        Map<String, Double> defenceBonuses = new HashMap<>();
+        for (String other : TYPES) {
+            attackBonuses.put(other, 1.0);
+            defenceBonuses.put(other, 1.0);
+        }
+        return new Unit(name, type, health, attack, cost, attackType, attackBonuses, defenceBonuses, x, y);
+    }
+
+    private static Program userProgram(Unit u, Army ally, Army enemy, GameSpeedUtil speed,
+                                       SuitableForAttackUnitsFinderImpl finder,
+                                       UnitTargetPathFinderImpl pathFinder) {
+        return switch (u.getUnitType()) {
+            case "Knight" -> new UserKnightProgram(u, ally, enemy, speed, finder, pathFinder);
+            case "Swordsman" -> new UserSwordsmanProgram(u, ally, enemy, speed, finder, pathFinder);
+            case "Pikeman" -> new UserPikemanProgram(u, ally, enemy, speed, finder, pathFinder);
+            default -> new UserArcherProgram(u, ally, enemy, speed);
+        };
+    }
+
+    private static Program computerProgram(Unit u, Army ally, Army enemy, GameSpeedUtil speed,
+                                           SuitableForAttackUnitsFinderImpl finder,
+                                           UnitTargetPathFinderImpl pathFinder) {
+        return switch (u.getUnitType()) {
+            case "Knight" -> new ComputerKnightProgram(u, ally, enemy, speed, finder, pathFinder);
+            case "Swordsman" -> new ComputerSwordsmanProgram(u, ally, enemy, speed, finder, pathFinder);
+            case "Pikeman" -> new ComputerPikemanProgram(u, ally, enemy, speed, finder, pathFinder);
+            default -> new ComputerArcherProgram(u, ally, enemy, speed);
+        };
+    }
+}
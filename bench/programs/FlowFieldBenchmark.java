@@ -0,0 +1,57 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.UnitTargetPathFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * «Раунд» пути: каждый юнит армии компьютера ищет путь к одной из целей фронта армии игрока.
+ * Сравнивает отдельный BFS на каждого атакующего с общими полями расстояний.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowFieldBenchmark {
+
+    @Param({"BFS", "FLOW_FIELD"})
+    public String finder;
+
+    private UnitTargetPathFinder pathFinder;
+    private List<Unit> attackers;
+    private List<Unit> targets;
+    private List<Unit> units;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Army[] armies = BenchFixtures.fullArmies(11L);
+        attackers = armies[1].getUnits();
+        targets = new SuitableForAttackUnitsFinderImpl().getSuitableUnits(
+                BenchFixtures.rows(armies[0], BenchFixtures.WIDTH - BenchFixtures.SIDE_WIDTH), false);
+        units = new ArrayList<>(armies[0].getUnits());
+        units.addAll(armies[1].getUnits());
+    }
+
+    @Setup(Level.Invocation)
+    public void newRound() {
+        // поля живут в пределах раунда: новый раунд — новый finder
+        pathFinder = "BFS".equals(finder) ? new UnitTargetPathFinderImpl() : new FlowFieldPathFinder();
+    }
+
+    @Benchmark
+    public int round() {
+        int steps = 0;
+        for (int i = 0; i < attackers.size(); i++) {
+            Unit target = targets.get(i % targets.size());
+            steps += pathFinder.getTargetPath(attackers.get(i), target, units).size();
+        }
+        return steps;
+    }
+}
@@ -0,0 +1,41 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GeneratePresetImpl#generate}: типичный бюджет игры и бюджет, при котором
+ * упираемся в лимит 11 юнитов на тип; точный рюкзак и жадный выбор.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratePresetBenchmark {
+
+    @Param({"1500", "10000"})
+    public int maxPoints;
+
+    @Param({"EXACT", "GREEDY"})
+    public GeneratePresetImpl.Mode mode;
+
+    private GeneratePresetImpl generator;
+    private List<Unit> templates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        generator = new GeneratePresetImpl(mode);
+        templates = BenchFixtures.templates();
+    }
+
+    @Benchmark
+    public Army generate() {
+        return generator.generate(templates, maxPoints);
+    }
+}
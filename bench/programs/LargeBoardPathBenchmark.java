@@ -0,0 +1,71 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UnitTargetPathFinderImpl#getTargetPath} на доске 500x500 с тысячами юнитов: A* против
+ * {@link UnitTargetPathFinderImpl.Mode#HIERARCHICAL}. Перед каждым запросом несколько юнитов переходят на случайные
+ * свободные клетки ({@link OccupancyGrid#onUnitMoved}), так что в замер входит и инкрементальная перестройка
+ * абстракции. Запрос — между двумя случайными юнитами, то есть в среднем через полдоски.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LargeBoardPathBenchmark {
+
+    private static final BoardConfig BOARD = new BoardConfig(500, 500, 20);
+    private static final int MOVES_PER_QUERY = 2;
+
+    @Param({"10", "25"})
+    public int density;
+
+    @Param({"A_STAR", "HIERARCHICAL"})
+    public UnitTargetPathFinderImpl.Mode mode;
+
+    private final Random rnd = new Random(42);
+    private List<Unit> units;
+    private OccupancyGrid grid;
+    private UnitTargetPathFinderImpl pathFinder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        units = new ArrayList<>();
+        grid = new OccupancyGrid(BOARD);
+        for (int y = 0; y < BOARD.getHeight(); y++) {
+            for (int x = 0; x < BOARD.getWidth(); x++) {
+                if (rnd.nextInt(100) >= density) continue;
+                Unit u = BenchFixtures.unit("Archer", "Archer " + units.size(), x, y);
+                units.add(u);
+                grid.add(u);
+            }
+        }
+        pathFinder = new UnitTargetPathFinderImpl(mode, BOARD);
+        pathFinder.getTargetPath(units.get(0), units.get(1), grid.snapshot());
+    }
+
+    @Benchmark
+    public List<Edge> moveAndQuery() {
+        for (int m = 0; m < MOVES_PER_QUERY; m++) {
+            Unit u = units.get(rnd.nextInt(units.size()));
+            int x = rnd.nextInt(BOARD.getWidth());
+            int y = rnd.nextInt(BOARD.getHeight());
+            if (grid.isOccupied(x, y)) continue;
+            u.setxCoordinate(x);
+            u.setyCoordinate(y);
+            grid.onUnitMoved(u);
+        }
+        Unit from = units.get(rnd.nextInt(units.size()));
+        Unit to = units.get(rnd.nextInt(units.size()));
+        return pathFinder.getTargetPath(from, to, grid.snapshot());
+    }
+}
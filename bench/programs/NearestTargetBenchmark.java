@@ -0,0 +1,57 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор ближайшей цели фронта для атакующего: {@code getTargetPath} на каждого кандидата
+ * против одного {@link UnitTargetPathFinderImpl#findNearestTarget}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestTargetBenchmark {
+
+    private UnitTargetPathFinderImpl pathFinder;
+    private List<Unit> attackers;
+    private List<Unit> candidates;
+    private List<Unit> units;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pathFinder = new UnitTargetPathFinderImpl();
+        Army[] armies = BenchFixtures.fullArmies(13L);
+        attackers = armies[1].getUnits();
+        candidates = new SuitableForAttackUnitsFinderImpl().getSuitableUnits(
+                BenchFixtures.rows(armies[0], BenchFixtures.WIDTH - BenchFixtures.SIDE_WIDTH), false);
+        units = new ArrayList<>(armies[0].getUnits());
+        units.addAll(armies[1].getUnits());
+    }
+
+    @Benchmark
+    public List<Edge> perCandidate() {
+        Unit attacker = attackers.get(next++ % attackers.size());
+        List<Edge> best = null;
+        for (Unit c : candidates) {
+            List<Edge> path = pathFinder.getTargetPath(attacker, c, units);
+            if (!path.isEmpty() && (best == null || path.size() < best.size())) best = path;
+        }
+        return best;
+    }
+
+    @Benchmark
+    public NearestTargetPath multiTarget() {
+        Unit attacker = attackers.get(next++ % attackers.size());
+        return pathFinder.findNearestTarget(attacker, candidates, units);
+    }
+}
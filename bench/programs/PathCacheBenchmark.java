@@ -0,0 +1,60 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.UnitTargetPathFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Повторяющиеся запросы пути на неизменной доске: каждый юнит армии компьютера ищет путь к одной
+ * из целей фронта игрока, и так раунд за раундом. Сравнивает BFS на каждый запрос
+ * с {@link CachingUnitTargetPathFinder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathCacheBenchmark {
+
+    @Param({"BFS", "CACHED"})
+    public String finder;
+
+    private UnitTargetPathFinder pathFinder;
+    private List<Unit> attackers;
+    private List<Unit> targets;
+    private List<Unit> units;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pathFinder = "BFS".equals(finder) ? new UnitTargetPathFinderImpl() : new CachingUnitTargetPathFinder();
+        Army[] armies = BenchFixtures.fullArmies(17L);
+        attackers = armies[1].getUnits();
+        targets = new SuitableForAttackUnitsFinderImpl().getSuitableUnits(
+                BenchFixtures.rows(armies[0], BenchFixtures.WIDTH - BenchFixtures.SIDE_WIDTH), false);
+        units = new ArrayList<>(armies[0].getUnits());
+        units.addAll(armies[1].getUnits());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pathFinder instanceof CachingUnitTargetPathFinder cached) {
+            System.out.println("path cache: " + cached.stats());
+        }
+    }
+
+    @Benchmark
+    public int round() {
+        int steps = 0;
+        for (int i = 0; i < attackers.size(); i++) {
+            Unit target = targets.get(i % targets.size());
+            steps += pathFinder.getTargetPath(attackers.get(i), target, units).size();
+        }
+        return steps;
+    }
+}
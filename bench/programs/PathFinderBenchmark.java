@@ -0,0 +1,77 @@
+package programs;
+
+import com.battle.heroes.army.programs.Edge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UnitTargetPathFinderImpl#getTargetPath} на досках 27x21 разной плотности во всех режимах поиска.
+ * Каждая итерация перебирает {@link #QUERIES} заранее построенных запросов, чтобы JIT
+ * не подстроился под один конкретный маршрут.
+ * <p>
+ * Счётчик {@code :expanded} в отчёте — раскрытые узлы в секунду; делённый на ops/s основного
+ * результата даёт среднее число раскрытых узлов на запрос.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFinderBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"0", "50", "90"})
+    public int density;
+
+    @Param({"BFS", "A_STAR", "JUMP_POINT"})
+    public UnitTargetPathFinderImpl.Mode mode;
+
+    private BenchFixtures.PathQuery[] queries;
+    private OccupancyGrid.Snapshot[] snapshots;
+    private UnitTargetPathFinderImpl pathFinder;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pathFinder = new UnitTargetPathFinderImpl(mode);
+        queries = new BenchFixtures.PathQuery[QUERIES];
+        snapshots = new OccupancyGrid.Snapshot[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = BenchFixtures.pathQuery(density, 42L + i);
+            snapshots[i] = OccupancyGrid.of(queries[i].units()).snapshot();
+        }
+    }
+
+    @Benchmark
+    public List<Edge> getTargetPath(Expansions expansions) {
+        BenchFixtures.PathQuery q = queries[next++ & (QUERIES - 1)];
+        List<Edge> path = pathFinder.getTargetPath(q.attacker(), q.target(), q.units());
+        expansions.expanded += GridSearch.local(BenchFixtures.WIDTH, BenchFixtures.HEIGHT).expanded();
+        return path;
+    }
+
+    /** Тот же запрос, но занятость — готовый снимок {@link OccupancyGrid}, а не список юнитов. */
+    @Benchmark
+    public List<Edge> getTargetPathFromGrid(Expansions expansions) {
+        int i = next++ & (QUERIES - 1);
+        BenchFixtures.PathQuery q = queries[i];
+        List<Edge> path = pathFinder.getTargetPath(q.attacker(), q.target(), snapshots[i]);
+        expansions.expanded += GridSearch.local(BenchFixtures.WIDTH, BenchFixtures.HEIGHT).expanded();
+        return path;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Expansions {
+        public long expanded;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            expanded = 0;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный бой двух армий по 11 юнитов каждого типа без лога: обычный ({@code threads = 0}) против боя с планами
+ * ходов ({@link SimulateBattleImpl#setPlanningThreads}) на 1, 2 и 4 рабочих потоках. Выигрыш виден только при
+ * свободных ядрах: на одном ядре рабочие потоки лишь отнимают время у потока боя.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlannedBattleBenchmark {
+
+    @Param({"0", "1", "2", "4"})
+    public int threads;
+
+    private SimulateBattleImpl simulator;
+    private Army[] armies;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulator = new SimulateBattleImpl();
+        simulator.setLogSink(BattleLogSink.NONE);
+        simulator.setPlanningThreads(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void newArmies() {
+        armies = BenchFixtures.fullArmies(seed++);
+    }
+
+    @Benchmark
+    public Army[] simulate() throws InterruptedException {
+        simulator.simulate(armies[0], armies[1]);
+        return armies;
+    }
+}
@@ -0,0 +1,48 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.util.GameSpeedUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProgramCloner}: копия программы для нового юнита — то, что делается для каждого юнита
+ * в {@code generate} и для каждого юнита каждого боя в {@link BattleBatchRunner}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramClonerBenchmark {
+
+    private Program template;
+    private Unit unit;
+    private Army ally;
+    private Army enemy;
+    private GameSpeedUtil speed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Army[] armies = BenchFixtures.fullArmies(1);
+        template = armies[0].getUnits().get(0).getProgram();
+        unit = BenchFixtures.unit("Knight", "copy", 0, 0);
+        ally = new Army();
+        enemy = new Army();
+        speed = new GameSpeedUtil(0);
+    }
+
+    @Benchmark
+    public Program cloneForUnit() {
+        return ProgramCloner.cloneFor(template, unit);
+    }
+
+    @Benchmark
+    public Program cloneForBattle() {
+        return ProgramCloner.cloneFor(template, unit, ally, enemy, speed);
+    }
+}
@@ -0,0 +1,72 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.programs.PrintBattleLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный бой {@link SimulateBattleImpl#simulate} двух армий по 11 юнитов каждого типа.
+ * Скорость игры 0, консоль на время замера направлена в «никуда».
+ * <p>
+ * {@code log}: {@code DIRECT} — синхронный лог (строка на атаку через {@code PrintBattleLog} плюс итоги раундов),
+ * {@code ASYNC} — тот же лог через {@link AsyncBattleLogSink}, {@code NONE} — {@link BattleLogSink#NONE}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulateBattleBenchmark {
+
+    @Param({"DIRECT", "ASYNC", "NONE"})
+    public String log;
+
+    private SimulateBattleImpl simulator;
+    private AsyncBattleLogSink async;
+    private PrintStream stdout;
+    private Army[] armies;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        PrintBattleLog printBattleLog = (attacker, target) -> System.out.println(
+                attacker.getName() + " (" + attacker.getHealth() + " hp) attacks "
+                        + (target == null ? "nobody" : target.getName() + " (" + target.getHealth() + " hp)"));
+        simulator = new SimulateBattleImpl();
+        simulator.setPrintBattleLog(printBattleLog);
+        switch (log) {
+            case "ASYNC" -> {
+                async = new AsyncBattleLogSink(new DirectBattleLogSink(printBattleLog, System.out, true));
+                simulator.setLogSink(async);
+            }
+            case "NONE" -> simulator.setLogSink(BattleLogSink.NONE);
+            default -> {
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (async != null) async.close();
+        System.setOut(stdout);
+    }
+
+    @Setup(Level.Invocation)
+    public void newArmies() {
+        armies = BenchFixtures.fullArmies(seed++);
+    }
+
+    @Benchmark
+    public Army[] simulate() throws InterruptedException {
+        simulator.simulate(armies[0], armies[1]);
+        return armies;
+    }
+}
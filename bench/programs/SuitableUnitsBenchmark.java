@@ -0,0 +1,68 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * {@link SuitableForAttackUnitsFinderImpl#getSuitableUnits} на полных армиях (11 юнитов каждого типа).
+ * {@code leftArmyTarget}/{@code rightArmyTarget} — списки столбцов, как их собирает {@code Program.getUnitsByRow}.
+ * {@code boardRows*} — другая задача, фронт по рядам доски ({@code y}): фильтр армии на каждый ряд и перебор
+ * против готового {@link FrontierIndex}; обе пары сравнивают одно и то же вычисление.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuitableUnitsBenchmark {
+
+    private SuitableForAttackUnitsFinderImpl finder;
+    private List<List<Unit>> leftRows;
+    private List<List<Unit>> rightRows;
+    private Army leftArmy;
+    private FrontierIndex leftFrontier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        finder = new SuitableForAttackUnitsFinderImpl();
+        Army[] armies = BenchFixtures.fullArmies(7L);
+        rightRows = BenchFixtures.rows(armies[0], BenchFixtures.WIDTH - BenchFixtures.SIDE_WIDTH);
+        leftRows = BenchFixtures.rows(armies[1], 0);
+        leftArmy = armies[1];
+        leftFrontier = FrontierIndex.of(leftArmy.getUnits());
+    }
+
+    @Benchmark
+    public List<Unit> leftArmyTarget() {
+        return finder.getSuitableUnits(leftRows, true);
+    }
+
+    @Benchmark
+    public List<Unit> rightArmyTarget() {
+        return finder.getSuitableUnits(rightRows, false);
+    }
+
+    @Benchmark
+    public List<Unit> boardRowsScan() {
+        List<List<Unit>> rows = new ArrayList<>(BenchFixtures.HEIGHT);
+        for (int y = 0; y < BenchFixtures.HEIGHT; y++) {
+            int row = y;
+            rows.add(leftArmy.getUnits().stream()
+                    .filter(u -> u.getyCoordinate() == row)
+                    .collect(Collectors.toList()));
+        }
+        return finder.getSuitableUnits(rows, true);
+    }
+
+    @Benchmark
+    public List<Unit> boardRowsFrontierIndex() {
+        return finder.getSuitableUnits(leftFrontier, true);
+    }
+}
@@ -0,0 +1,275 @@
+package programs;
+
+/**
+ * Точный подбор состава армии: ограниченный рюкзак по типам юнитов.
+ * <p>
+ * Ограничения — бюджет очков, не больше {@code cap[t]} юнитов типа {@code t} и не больше {@code maxUnits}
+ * юнитов всего (клеток на стороне поля). Цель — максимальная суммарная атака, при равенстве —
+ * максимальное суммарное здоровье.
+ * <p>
+ * Лимит на тип раскладывается двоично (11 = 1 + 2 + 4 + 4), и задача сводится к рюкзаку 0/1 по «пачкам».
+ * Таблица {@code dp[k][b]} — лучший результат при не более чем {@code k} юнитах и не более чем {@code b}
+ * очках, хранится одним {@code long[]}: атака и здоровье упакованы в {@code attack · scale + health}, где
+ * {@code scale} больше любого суммарного здоровья, так что сравнение чисел — это сравнение по атаке, затем
+ * по здоровью. Размер таблицы уменьшается:
+ * <ul>
+ *     <li>бюджет и стоимости делятся на НОД стоимостей;</li>
+ *     <li>бюджет обрезается сверху: больше, чем стоят все юниты по лимиту (и чем {@code maxUnits} самых
+ *     дорогих), потратить нельзя;</li>
+ *     <li>измерение числа юнитов убирается, если лимит клеток заведомо не достигается, а в строке
+ *     {@code k} хранятся только бюджеты до {@code k · (самая дорогая стоимость)};</li>
+ *     <li>типы, заведомо хуже других с запасом по лимиту, выбрасываются до расчёта.</li>
+ * </ul>
+ * Какая пачка взята в каком состоянии, запоминается в битовой таблице, поэтому состав восстанавливается
+ * для любого бюджета до расчётного за {@code O(пачек)} — таблица считается один раз.
+ */
+final class ArmyKnapsack {
+
+    /** Предел битовой таблицы выбора (бит); больше — {@link #solve} отказывается. */
+    static final long MAX_CHOICE_BITS = 1L << 28;
+
+    private final int types;
+    private final int budgetLimit;
+    private final int gcd;
+    private final int layers;
+    private final int width;
+    private final int rowCost;
+    // пачки: тип, сколько юнитов, стоимость (уже делённая на НОД)
+    private final int[] pieceType;
+    private final int[] pieceCount;
+    private final int[] pieceCost;
+    private final long scale;
+    private final long[] choice;
+    private final long[] best;
+
+    private ArmyKnapsack(int types, int budgetLimit, int gcd, int layers, int width, int rowCost, long scale,
+                         int[] pieceType, int[] pieceCount, int[] pieceCost, long[] choice, long[] best) {
+        this.types = types;
+        this.budgetLimit = budgetLimit;
+        this.gcd = gcd;
+        this.layers = layers;
+        this.width = width;
+        this.rowCost = rowCost;
+        this.pieceType = pieceType;
+        this.pieceCount = pieceCount;
+        this.pieceCost = pieceCost;
+        this.scale = scale;
+        this.choice = choice;
+        this.best = best;
+    }
+
+    /**
+     * Считает таблицу для бюджетов {@code 0..maxPoints}. Стоимости должны быть неотрицательными.
+     * Возвращает {@code null}, если таблица выбора вышла бы больше {@link #MAX_CHOICE_BITS}, или у выбираемого
+     * типа отрицательные атака/здоровье, или суммы не помещаются в упакованное значение.
+     */
+    static ArmyKnapsack solve(int[] cost, int[] attack, int[] health, int[] cap, int maxUnits, int maxPoints) {
+        int n = cost.length;
+        int budget = Math.max(0, maxPoints);
+        cap = pruneDominated(cost, attack, health, cap, maxUnits, budget);
+
+        // НОД стоимостей и верхняя граница полезного бюджета
+        int gcd = 0;
+        int maxCost = 0;
+        int minCost = Integer.MAX_VALUE;
+        long capTotal = 0;
+        long capCost = 0;
+        for (int t = 0; t < n; t++) {
+            if (cost[t] < 0) throw new IllegalArgumentException("Negative cost: " + cost[t]);
+            if (cap[t] <= 0) continue;
+            gcd = gcd(gcd, cost[t]);
+            maxCost = Math.max(maxCost, cost[t]);
+            minCost = Math.min(minCost, cost[t]);
+            capTotal += cap[t];
+            capCost += (long) cap[t] * cost[t];
+        }
+        if (gcd == 0) gcd = 1;
+        long useful = Math.min(capCost, (long) maxUnits * maxCost);
+        int scaled = (int) (Math.min(budget, useful) / gcd);
+
+        // лимит клеток может сработать, только если юнитов можно набрать больше maxUnits
+        boolean countBinds = capTotal > maxUnits
+                && (minCost == 0 || (long) scaled * gcd / minCost > maxUnits);
+        int layers = countBinds ? maxUnits + 1 : 1;
+        int width = scaled + 1;
+        // k юнитов не потратят больше k самых дорогих: в строке k дальше этой границы значения не растут
+        int rowCost = countBinds ? maxCost / gcd : -1;
+
+        // двоичное разбиение лимита каждого типа на пачки
+        int pieces = 0;
+        for (int t = 0; t < n; t++) {
+            pieces += Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(0, cap[t]));
+        }
+        int[] pieceType = new int[pieces];
+        int[] pieceCount = new int[pieces];
+        int[] pieceCost = new int[pieces];
+        int p = 0;
+        for (int t = 0; t < n; t++) {
+            int left = Math.max(0, cap[t]);
+            for (int m = 1; left > 0; m <<= 1) {
+                int take = Math.min(m, left);
+                pieceType[p] = t;
+                pieceCount[p] = take;
+                pieceCost[p] = cost[t] / gcd * take;
+                left -= take;
+                p++;
+            }
+        }
+
+        long states = (long) layers * width;
+        if (states * pieces > MAX_CHOICE_BITS) return null;
+
+        // атака и здоровье упакованы в одно число: attack * scale + health — одно сравнение на состояние
+        long maxHealth = 0;
+        long maxAttack = 0;
+        for (int t = 0; t < n; t++) {
+            if (cap[t] <= 0) continue;
+            if (attack[t] < 0 || health[t] < 0) return null;
+            maxAttack += (long) Math.min(cap[t], maxUnits) * attack[t];
+            maxHealth += (long) Math.min(cap[t], maxUnits) * health[t];
+        }
+        long scale = maxHealth + 1;
+        if (maxAttack > (Long.MAX_VALUE - maxHealth) / scale) return null;
+
+        long[] choice = new long[(int) ((states * pieces + 63) >>> 6)];
+        long[] best = new long[(int) states];
+
+        // ответ всегда читается из строки maxUnits: после пачки i нужны только строки, из которых
+        // оставшиеся пачки ещё могут до неё дотянуться
+        int unitsAfter = 0;
+        for (int i = 0; i < pieces; i++) {
+            unitsAfter += pieceCount[i];
+        }
+
+        for (int i = 0; i < pieces; i++) {
+            int m = pieceCount[i];
+            int c = pieceCost[i];
+            long v = ((long) attack[pieceType[i]] * scale + health[pieceType[i]]) * m;
+            unitsAfter -= m;
+            int kFrom = countBinds ? Math.max(m, layers - 1 - unitsAfter) : 0;
+            int dk = countBinds ? m : 0;
+            long base = (long) i * states;
+
+            // рюкзак 0/1: идём от больших k и b к меньшим, чтобы пачка бралась не больше одного раза
+            for (int k = layers - 1; k >= kFrom; k--) {
+                int row = k * width;
+                int prevRow = (k - dk) * width;
+                int prevLast = rowLast(k - dk, rowCost, width);
+                int last = rowLast(k, rowCost, width);
+                for (int b = last; b >= c; b--) {
+                    long nv = best[prevRow + Math.min(b - c, prevLast)] + v;
+                    int to = row + b;
+                    if (nv > best[to]) {
+                        best[to] = nv;
+                        long bit = base + to;
+                        choice[(int) (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+            }
+        }
+
+        return new ArmyKnapsack(n, scaled, gcd, layers, width, rowCost, scale, pieceType, pieceCount, pieceCost,
+                choice, best);
+    }
+
+    /** Последний бюджет, который имеет смысл хранить в строке {@code k} ({@code rowCost < 0} — без границы). */
+    private static int rowLast(int k, int rowCost, int width) {
+        if (rowCost < 0) return width - 1;
+        return (int) Math.min(width - 1, (long) k * rowCost);
+    }
+
+    /**
+     * Убирает типы, которые никогда не нужны: если у типа есть «лучшие» типы (не дороже, атака не меньше,
+     * при равной атаке здоровье не меньше) с суммарным лимитом не меньше, чем юнитов вообще можно набрать,
+     * то в любом составе с этим типом один из лучших не добран до лимита — замена не ухудшит результат.
+     */
+    private static int[] pruneDominated(int[] cost, int[] attack, int[] health, int[] cap, int maxUnits, int budget) {
+        int n = cost.length;
+        long capTotal = 0;
+        int minCost = Integer.MAX_VALUE;
+        for (int t = 0; t < n; t++) {
+            if (cap[t] <= 0) continue;
+            capTotal += cap[t];
+            minCost = Math.min(minCost, cost[t]);
+        }
+        long reachable = Math.min(maxUnits, capTotal);
+        if (minCost > 0) reachable = Math.min(reachable, budget / minCost);
+
+        int[] pruned = cap.clone();
+        for (int b = 0; b < n; b++) {
+            if (cap[b] <= 0) continue;
+            long better = 0;
+            for (int a = 0; a < n && better < reachable; a++) {
+                if (a != b && cap[a] > 0 && dominates(a, b, cost, attack, health)) better += cap[a];
+            }
+            if (better >= reachable) pruned[b] = 0;
+        }
+        return pruned;
+    }
+
+    private static boolean dominates(int a, int b, int[] cost, int[] attack, int[] health) {
+        if (cost[a] > cost[b] || attack[a] < attack[b]) return false;
+        if (attack[a] == attack[b] && health[a] < health[b]) return false;
+        // одинаковые типы: «лучше» тот, что раньше, иначе убрали бы оба
+        return cost[a] != cost[b] || attack[a] != attack[b] || health[a] != health[b] || a < b;
+    }
+
+    int types() {
+        return types;
+    }
+
+    /** Шаг бюджета: составы меняются только на кратных ему значениях. */
+    int gcd() {
+        return gcd;
+    }
+
+    /** Бюджет, дальше которого оптимальный состав уже не меняется (или расчётный, если он меньше). */
+    int maxPoints() {
+        return budgetLimit * gcd;
+    }
+
+    /** Оптимальное число юнитов каждого типа при бюджете {@code points} (не больше расчётного). */
+    int[] counts(int points) {
+        int b = Math.min(Math.max(0, points) / gcd, budgetLimit);
+        int k = layers - 1;
+        long states = (long) layers * width;
+        boolean countBinds = layers > 1;
+
+        int[] counts = new int[types];
+        for (int i = pieceType.length - 1; i >= 0; i--) {
+            b = Math.min(b, rowLast(k, rowCost, width));
+            long bit = i * states + (long) k * width + b;
+            if ((choice[(int) (bit >>> 6)] & (1L << bit)) != 0) {
+                counts[pieceType[i]] += pieceCount[i];
+                b -= pieceCost[i];
+                if (countBinds) k -= pieceCount[i];
+            }
+        }
+        return counts;
+    }
+
+    /** Суммарная атака оптимального состава при бюджете {@code points}. */
+    long attack(int points) {
+        return best[finalState(points)] / scale;
+    }
+
+    /** Суммарное здоровье оптимального состава при бюджете {@code points}. */
+    long health(int points) {
+        return best[finalState(points)] % scale;
+    }
+
+    private int finalState(int points) {
+        int k = layers - 1;
+        int b = Math.min(Math.min(Math.max(0, points) / gcd, budgetLimit), rowLast(k, rowCost, width));
+        return k * width + b;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+}
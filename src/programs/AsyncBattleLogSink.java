@@ -0,0 +1,249 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Лог боя в отдельном потоке: бой только кладёт событие в ограниченный кольцевой буфер,
+ * а единственный поток-потребитель отдаёт события следующему получателю пачками и делает
+ * один {@link BattleLogSink#flush()} на пачку.
+ * <p>
+ * Буфер — lock-free очередь Вьюкова: у каждой ячейки свой номер последовательности, производители
+ * занимают ячейки CAS-ом по хвосту (их может быть несколько), потребитель читает голову без CAS.
+ * Порядок событий — порядок, в котором их заняли, поэтому вывод одного боя совпадает с синхронным.
+ * Юниты в событии — снимки на момент атаки ({@link #snapshot}): к моменту вывода настоящие юниты
+ * уже могли получить урон или погибнуть. У снимка нет программы, карты бонусов общие с оригиналом.
+ * <p>
+ * Если буфер заполнен, поведение задаёт {@link Backpressure}. {@link #flush()} ждёт, пока потребитель
+ * выведет всё принятое до вызова — его вызывает {@link SimulateBattleImpl} в конце боя, так что после
+ * {@code simulate} лог уже выведен. {@code PrintBattleLog} при этом вызывается из потока-потребителя.
+ */
+public final class AsyncBattleLogSink implements BattleLogSink, AutoCloseable {
+
+    /** Что делать, когда буфер заполнен. */
+    public enum Backpressure {
+        /** Бой ждёт свободного места — ни одно событие не теряется. */
+        BLOCK,
+        /** Событие отбрасывается. */
+        DROP,
+        /**
+         * Пока буфер заполнен больше чем на 3/4, проходит только каждая {@link #SAMPLE_EVERY}-я атака,
+         * в полном буфере атаки отбрасываются. Итоги раундов не теряются — для них как {@link #BLOCK}.
+         */
+        SAMPLE
+    }
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int SAMPLE_EVERY = 8;
+
+    private static final int BATCH_SIZE = 256;
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final int ATTACK = 0;
+    private static final int ROUND_OVER = 1;
+
+    private final BattleLogSink downstream;
+    private final Backpressure backpressure;
+    private final int mask;
+    private final Event[] slots;
+    private final AtomicLongArray sequence;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampled = new AtomicLong();
+    private final Thread consumer;
+
+    // голова — только поток-потребитель; flushed — до какого номера всё выведено и сброшено
+    private long head;
+    private volatile long flushed;
+    private volatile boolean consumerParked;
+    private volatile boolean closed;
+
+    /** {@link Backpressure#BLOCK}, буфер на {@link #DEFAULT_CAPACITY} событий. */
+    public AsyncBattleLogSink(BattleLogSink downstream) {
+        this(downstream, DEFAULT_CAPACITY, Backpressure.BLOCK);
+    }
+
+    /** {@code capacity} округляется вверх до степени двойки. */
+    public AsyncBattleLogSink(BattleLogSink downstream, int capacity, Backpressure backpressure) {
+        if (downstream == null || backpressure == null) {
+            throw new IllegalArgumentException("downstream and backpressure are required");
+        }
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be in [2, 2^30]: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.downstream = downstream;
+        this.backpressure = backpressure;
+        this.mask = size - 1;
+        this.slots = new Event[size];
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            sequence.set(i, i);
+        }
+
+        consumer = new Thread(this::consume, "battle-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void onAttack(Unit attacker, Unit target) {
+        if (backpressure == Backpressure.SAMPLE && size() >= (slots.length >> 2) * 3
+                && sampled.getAndIncrement() % SAMPLE_EVERY != 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Backpressure whenFull = backpressure == Backpressure.BLOCK ? Backpressure.BLOCK : Backpressure.DROP;
+        publish(ATTACK, snapshot(attacker), snapshot(target), 0, 0, 0, whenFull);
+    }
+
+    @Override
+    public void onRoundOver(int round, int playerAlive, int computerAlive) {
+        Backpressure whenFull = backpressure == Backpressure.DROP ? Backpressure.DROP : Backpressure.BLOCK;
+        publish(ROUND_OVER, null, null, round, playerAlive, computerAlive, whenFull);
+    }
+
+    /** Ждёт, пока всё принятое до вызова будет выведено и сброшено получателем. */
+    @Override
+    public void flush() {
+        long target = tail.get();
+        while (flushed < target && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /** Выводит оставшееся и останавливает поток-потребитель. */
+    @Override
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Сколько событий отброшено ({@link Backpressure#DROP}, {@link Backpressure#SAMPLE}). */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /** Сколько событий принято, но ещё не выведено (оценка сверху). */
+    public int size() {
+        return (int) Math.max(0, tail.get() - flushed);
+    }
+
+    private void publish(int kind, Unit attacker, Unit target, int round, int playerAlive, int computerAlive,
+                         Backpressure whenFull) {
+        if (closed) {
+            throw new IllegalStateException("Battle log sink is closed");
+        }
+        long pos;
+        while (true) {
+            pos = tail.get();
+            int idx = (int) pos & mask;
+            long dif = sequence.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (dif < 0) {
+                // буфер полон
+                if (whenFull == Backpressure.DROP) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+        }
+
+        int idx = (int) pos & mask;
+        Event e = slots[idx];
+        e.kind = kind;
+        e.attacker = attacker;
+        e.target = target;
+        e.round = round;
+        e.playerAlive = playerAlive;
+        e.computerAlive = computerAlive;
+        sequence.set(idx, pos + 1);
+
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume() {
+        while (true) {
+            int drained = 0;
+            while (drained < BATCH_SIZE && pollOne()) {
+                drained++;
+            }
+            if (drained > 0) {
+                try {
+                    downstream.flush();
+                } catch (RuntimeException ignored) {
+                }
+                flushed = head;
+                continue;
+            }
+            if (closed) return;
+
+            // сначала объявляем, что засыпаем, потом перепроверяем — иначе можно проспать событие
+            consumerParked = true;
+            if (!hasNext()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            consumerParked = false;
+        }
+    }
+
+    private boolean hasNext() {
+        return sequence.get((int) head & mask) == head + 1;
+    }
+
+    private boolean pollOne() {
+        if (!hasNext()) return false;
+        int idx = (int) head & mask;
+        Event e = slots[idx];
+        try {
+            if (e.kind == ATTACK) {
+                downstream.onAttack(e.attacker, e.target);
+            } else {
+                downstream.onRoundOver(e.round, e.playerAlive, e.computerAlive);
+            }
+        } catch (RuntimeException ignored) {
+            // ошибка вывода одного события не должна останавливать лог
+        }
+        e.attacker = null;
+        e.target = null;
+        sequence.set(idx, head + slots.length);
+        head++;
+        return true;
+    }
+
+    /** Неизменный на время вывода снимок юнита (без программы, карты бонусов общие). */
+    static Unit snapshot(Unit u) {
+        if (u == null) return null;
+        Unit copy = new Unit(u.getName(), u.getUnitType(), u.getHealth(), u.getBaseAttack(), u.getCost(),
+                u.getAttackType(), u.getAttackBonuses(), u.getDefenceBonuses(),
+                u.getxCoordinate(), u.getyCoordinate());
+        copy.setAlive(u.isAlive());
+        return copy;
+    }
+
+    private static final class Event {
+        int kind;
+        Unit attacker;
+        Unit target;
+        int round;
+        int playerAlive;
+        int computerAlive;
+    }
+}
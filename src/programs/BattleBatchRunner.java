@@ -0,0 +1,404 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.util.GameSpeedUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Пакетный прогон боёв без вывода в консоль — для балансировки армий.
+ * <p>
+ * Каждый бой идёт на своей копии армий: юниты копируются, программы клонируются
+ * ({@link ProgramCloner}) и привязываются к новому юниту, новым армиям и скорости 0 — исходные армии
+ * не меняются. Остальные поля программ (поиск целей и путей) копии делят с исходником, поэтому
+ * они должны быть потокобезопасны — реализации этого пакета такие.
+ * <p>
+ * Бои раскладываются по {@link ForkJoinPool}: диапазон номеров боёв делится пополам, каждый лист
+ * гоняет свои бои последовательно одним {@link SimulateBattleImpl} и копит частичную статистику,
+ * которая сливается по дереву задач — общих изменяемых счётчиков нет, поэтому пропускная
+ * способность растёт почти линейно с числом ядер.
+ * <p>
+ * У каждого боя свой seed ({@code seed} пакета, перемешанный с номером боя); он передаётся
+ * фабрике армий ({@link MatchupFactory}). Выбор целей внутри программ библиотеки использует
+ * несидируемый {@code Collections.shuffle}, поэтому повтор seed воспроизводит расстановку, но не ход боя.
+ * <p>
+ * С журналом ({@link #setJournal}) каждый бой записывается ({@link BattleRecorder}) и дописывается в
+ * {@link BattleJournal} — в порядке окончания боёв, а не их номеров.
+ */
+public final class BattleBatchRunner {
+
+    /** Армии одного боя по его seed: {@code {playerArmy, computerArmy}}. */
+    @FunctionalInterface
+    public interface MatchupFactory {
+        Army[] create(long seed);
+    }
+
+    public enum Winner {PLAYER, COMPUTER, DRAW}
+
+    private final int parallelism;
+    private BattleJournal journal;
+
+    public BattleBatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BattleBatchRunner(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** Куда записывать бои ({@code null} — не записывать, по умолчанию). После {@code run} журнал сброшен в файл. */
+    public void setJournal(BattleJournal journal) {
+        this.journal = journal;
+    }
+
+    /** {@code battles} боёв одной и той же пары армий (каждый — на свежей копии). */
+    public Summary run(Army playerArmy, Army computerArmy, int battles) {
+        return run(seed -> new Army[]{playerArmy, computerArmy}, battles, 0L, null);
+    }
+
+    public Summary run(MatchupFactory factory, int battles, long seed) {
+        return run(factory, battles, seed, null);
+    }
+
+    /**
+     * Прогоняет {@code battles} боёв; {@code listener} (если не {@code null}) получает результат
+     * каждого боя сразу по его окончании — из рабочих потоков, в произвольном порядке.
+     */
+    public Summary run(MatchupFactory factory, int battles, long seed, Consumer<BattleResult> listener) {
+        Objects.requireNonNull(factory, "factory");
+        if (battles < 0) {
+            throw new IllegalArgumentException("Battle count must be non-negative: " + battles);
+        }
+        if (battles == 0) return new Summary();
+
+        // листьев в несколько раз больше потоков — чтобы длинные бои не оставляли ядра без работы
+        int leafSize = Math.max(1, battles / (parallelism * 8));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Summary summary = pool.invoke(new BattlesTask(factory, seed, 0, battles, leafSize, listener, journal));
+            if (journal != null) journal.flush();
+            return summary;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Battle journal not written", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Бой номер {@code index} пакета с seed {@code batchSeed} — то же, что делает {@link #run}. */
+    static BattleResult runOne(SimulateBattleImpl simulator, MatchupFactory factory, long batchSeed, int index) {
+        return runOne(simulator, factory, batchSeed, index, null);
+    }
+
+    /** {@link #runOne(SimulateBattleImpl, MatchupFactory, long, int)} с записью боя в {@code journal}, если он есть. */
+    static BattleResult runOne(SimulateBattleImpl simulator, MatchupFactory factory, long batchSeed, int index,
+                               BattleJournal journal) {
+        long seed = battleSeed(batchSeed, index);
+        Army[] source = factory.create(seed);
+        Army[] armies = (journal == null)
+                ? copyPair(source[0], source[1])
+                : copyPair(source[0], source[1], BattleRecorder.RecordingUnit::new);
+        try {
+            if (journal == null) {
+                simulator.simulate(armies[0], armies[1]);
+            } else {
+                journal.append(BattleRecorder.record(simulator, armies));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Battle " + index + " interrupted", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Battle " + index + " not journaled", e);
+        }
+        return BattleResult.of(seed, simulator.getRounds(), armies[0], armies[1]);
+    }
+
+    /**
+     * Глубокая копия пары армий: новые юниты (бонусы — общие неизменяемые {@link BonusTable}) и клоны программ,
+     * привязанные к новым юнитам и армиям и к скорости игры 0.
+     */
+    static Army[] copyPair(Army playerArmy, Army computerArmy) {
+        return copyPair(playerArmy, computerArmy, BattleBatchRunner::copyUnit);
+    }
+
+    /** {@link #copyPair(Army, Army)}, где копию каждого юнита делает {@code copyUnit}. */
+    static Army[] copyPair(Army playerArmy, Army computerArmy, UnaryOperator<Unit> copyUnit) {
+        Army player = new Army();
+        Army computer = new Army();
+        player.setPoints(playerArmy.getPoints());
+        computer.setPoints(computerArmy.getPoints());
+        List<Unit> playerSource = units(playerArmy);
+        List<Unit> computerSource = units(computerArmy);
+        player.setUnits(copyUnits(playerSource, copyUnit));
+        computer.setUnits(copyUnits(computerSource, copyUnit));
+
+        GameSpeedUtil speed = new GameSpeedUtil(0);
+        bindPrograms(playerSource, player, computer, speed);
+        bindPrograms(computerSource, computer, player, speed);
+        return new Army[]{player, computer};
+    }
+
+    private static List<Unit> units(Army army) {
+        return (army == null || army.getUnits() == null) ? Collections.emptyList() : army.getUnits();
+    }
+
+    private static List<Unit> copyUnits(List<Unit> source, UnaryOperator<Unit> copyUnit) {
+        List<Unit> copies = new ArrayList<>(source.size());
+        for (Unit u : source) {
+            copies.add((u == null) ? null : copyUnit.apply(u));
+        }
+        return copies;
+    }
+
+    private static Unit copyUnit(Unit u) {
+        Unit copy = new Unit(u.getName(), u.getUnitType(), u.getHealth(), u.getBaseAttack(), u.getCost(),
+                u.getAttackType(), BonusTable.intern(u.getAttackBonuses()),
+                BonusTable.intern(u.getDefenceBonuses()), u.getxCoordinate(), u.getyCoordinate());
+        copy.setAlive(u.isAlive());
+        return copy;
+    }
+
+    private static void bindPrograms(List<Unit> source, Army ally, Army enemy, GameSpeedUtil speed) {
+        List<Unit> copies = ally.getUnits();
+        for (int i = 0; i < source.size(); i++) {
+            Unit original = source.get(i);
+            if (original == null) continue;
+            Unit copy = copies.get(i);
+            copy.setProgram(ProgramCloner.cloneFor(original.getProgram(), copy, ally, enemy, speed));
+        }
+    }
+
+    private static long battleSeed(long batchSeed, int index) {
+        // SplitMix64: соседние номера боёв дают несвязанные seed
+        return SplitMix.mix(batchSeed + (index + 1) * SplitMix.GAMMA);
+    }
+
+    private static final class BattlesTask extends RecursiveTask<Summary> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MatchupFactory factory;
+        private final long seed;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final Consumer<BattleResult> listener;
+        private final BattleJournal journal;
+
+        BattlesTask(MatchupFactory factory, long seed, int from, int to, int leafSize,
+                    Consumer<BattleResult> listener, BattleJournal journal) {
+            this.factory = factory;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.listener = listener;
+            this.journal = journal;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= leafSize) {
+                SimulateBattleImpl simulator = new SimulateBattleImpl();
+                simulator.setLogSink(BattleLogSink.NONE);
+                Summary summary = new Summary();
+                for (int i = from; i < to; i++) {
+                    BattleResult result = runOne(simulator, factory, seed, i, journal);
+                    summary.add(result);
+                    if (listener != null) listener.accept(result);
+                }
+                return summary;
+            }
+
+            int mid = (from + to) >>> 1;
+            BattlesTask left = new BattlesTask(factory, seed, from, mid, leafSize, listener, journal);
+            BattlesTask right = new BattlesTask(factory, seed, mid, to, leafSize, listener, journal);
+            left.fork();
+            Summary summary = right.compute();
+            summary.merge(left.join());
+            return summary;
+        }
+    }
+
+    /** Итог одного боя. */
+    public static final class BattleResult {
+
+        private final long seed;
+        private final int rounds;
+        private final Winner winner;
+        private final Map<String, Integer> playerSurvivors;
+        private final Map<String, Integer> computerSurvivors;
+
+        private BattleResult(long seed, int rounds, Winner winner,
+                             Map<String, Integer> playerSurvivors, Map<String, Integer> computerSurvivors) {
+            this.seed = seed;
+            this.rounds = rounds;
+            this.winner = winner;
+            this.playerSurvivors = playerSurvivors;
+            this.computerSurvivors = computerSurvivors;
+        }
+
+        static BattleResult of(long seed, int rounds, Army player, Army computer) {
+            Map<String, Integer> playerAlive = survivors(player);
+            Map<String, Integer> computerAlive = survivors(computer);
+            Winner winner;
+            if (!playerAlive.isEmpty() && computerAlive.isEmpty()) {
+                winner = Winner.PLAYER;
+            } else if (playerAlive.isEmpty() && !computerAlive.isEmpty()) {
+                winner = Winner.COMPUTER;
+            } else {
+                winner = Winner.DRAW;
+            }
+            return new BattleResult(seed, rounds, winner, playerAlive, computerAlive);
+        }
+
+        private static Map<String, Integer> survivors(Army army) {
+            Map<String, Integer> byType = new TreeMap<>();
+            for (Unit u : units(army)) {
+                if (u != null && u.isAlive()) byType.merge(u.getUnitType(), 1, Integer::sum);
+            }
+            return Collections.unmodifiableMap(byType);
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getRounds() {
+            return rounds;
+        }
+
+        public Winner getWinner() {
+            return winner;
+        }
+
+        /** Выжившие юниты армии игрока по типам (типы без выживших отсутствуют). */
+        public Map<String, Integer> getPlayerSurvivors() {
+            return playerSurvivors;
+        }
+
+        public Map<String, Integer> getComputerSurvivors() {
+            return computerSurvivors;
+        }
+    }
+
+    /** Сводка по пакету боёв. */
+    public static final class Summary {
+
+        private long battles;
+        private long playerWins;
+        private long computerWins;
+        private long draws;
+        private long totalRounds;
+        private int minRounds = Integer.MAX_VALUE;
+        private int maxRounds;
+        private final Map<String, Long> playerSurvivors = new TreeMap<>();
+        private final Map<String, Long> computerSurvivors = new TreeMap<>();
+
+        private Summary() {
+        }
+
+        private void add(BattleResult r) {
+            battles++;
+            switch (r.getWinner()) {
+                case PLAYER -> playerWins++;
+                case COMPUTER -> computerWins++;
+                default -> draws++;
+            }
+            totalRounds += r.getRounds();
+            minRounds = Math.min(minRounds, r.getRounds());
+            maxRounds = Math.max(maxRounds, r.getRounds());
+            r.getPlayerSurvivors().forEach((type, n) -> playerSurvivors.merge(type, (long) n, Long::sum));
+            r.getComputerSurvivors().forEach((type, n) -> computerSurvivors.merge(type, (long) n, Long::sum));
+        }
+
+        private void merge(Summary other) {
+            battles += other.battles;
+            playerWins += other.playerWins;
+            computerWins += other.computerWins;
+            draws += other.draws;
+            totalRounds += other.totalRounds;
+            minRounds = Math.min(minRounds, other.minRounds);
+            maxRounds = Math.max(maxRounds, other.maxRounds);
+            other.playerSurvivors.forEach((type, n) -> playerSurvivors.merge(type, n, Long::sum));
+            other.computerSurvivors.forEach((type, n) -> computerSurvivors.merge(type, n, Long::sum));
+        }
+
+        public long getBattles() {
+            return battles;
+        }
+
+        public long getPlayerWins() {
+            return playerWins;
+        }
+
+        public long getComputerWins() {
+            return computerWins;
+        }
+
+        public long getDraws() {
+            return draws;
+        }
+
+        public double getPlayerWinRate() {
+            return battles == 0 ? 0.0 : (double) playerWins / battles;
+        }
+
+        public double getComputerWinRate() {
+            return battles == 0 ? 0.0 : (double) computerWins / battles;
+        }
+
+        public double getAverageRounds() {
+            return battles == 0 ? 0.0 : (double) totalRounds / battles;
+        }
+
+        public int getMinRounds() {
+            return battles == 0 ? 0 : minRounds;
+        }
+
+        public int getMaxRounds() {
+            return maxRounds;
+        }
+
+        /** Среднее число выживших юнитов игрока данного типа на бой. */
+        public double getAveragePlayerSurvivors(String unitType) {
+            return battles == 0 ? 0.0 : (double) playerSurvivors.getOrDefault(unitType, 0L) / battles;
+        }
+
+        public double getAverageComputerSurvivors(String unitType) {
+            return battles == 0 ? 0.0 : (double) computerSurvivors.getOrDefault(unitType, 0L) / battles;
+        }
+
+        /** Суммарное число выживших юнитов игрока по типам за весь пакет. */
+        public Map<String, Long> getPlayerSurvivors() {
+            return Collections.unmodifiableMap(playerSurvivors);
+        }
+
+        public Map<String, Long> getComputerSurvivors() {
+            return Collections.unmodifiableMap(computerSurvivors);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "battles=%d, player=%.1f%%, computer=%.1f%%, draws=%d, rounds avg=%.2f [%d..%d], "
+                            + "player survivors=%s, computer survivors=%s",
+                    battles, 100 * getPlayerWinRate(), 100 * getComputerWinRate(), draws,
+                    getAverageRounds(), getMinRounds(), maxRounds, playerSurvivors, computerSurvivors);
+        }
+    }
+}
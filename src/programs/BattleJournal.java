@@ -0,0 +1,185 @@
+package programs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Журнал боёв: записанные бои ({@link BattleTimeline}) в компактном двоичном виде, в файлах-сегментах, которые
+ * только дописываются. Читает журнал {@link BattleJournalReader}.
+ * <p>
+ * Запись — 12 байт фиксированной ширины: {@code int} «тип << 24 | первая колонка» и ещё две {@code int}-колонки.
+ * События боя — записи с типом {@link BattleTimeline.Kind#ordinal()} и колонками как в {@link BattleTimeline}: шаг
+ * (юнит, x, y) — каждая клетка пути, урон (юнит, здоровье), гибель, атака (юнит, цель), итог раунда. Перед событиями
+ * боя — заголовок из двух записей, так что итог боя читается без разбора событий. Формат сегмента (big-endian):
+ * <pre>
+ * int  magic 'HBJ1'      int  версия формата     int  байт в записи      int  0
+ * бой: BATTLE (юнитов игрока, юнитов компьютера, событий)  RESULT (раундов, живых игрока, живых компьютера)  события
+ * </pre>
+ * Сегменты — {@code battles-000000.hbj}, {@code battles-000001.hbj}, ...: открытый журнал начинает новый сегмент
+ * после последнего в каталоге, старые файлы не трогаются. Сегмент закрывается, когда следующий бой в него не
+ * помещается ({@code segmentBytes}); бой между сегментами не делится.
+ * <p>
+ * Запись буферизована: бой кодируется в буфер на 256 КБ, в файл буфер уходит, когда заполнен, и в
+ * {@link #flush()}/{@link #close()} — на бой приходится доля системного вызова. {@link #append} потокобезопасен.
+ * Недописанный при падении процесса последний бой читатель пропускает.
+ */
+public final class BattleJournal implements AutoCloseable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    static final int FORMAT_VERSION = 1;
+    static final int MAGIC = 0x48424A31; // 'HBJ1'
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 12;
+
+    /** Типы записей заголовка боя; типы событий — {@code 0..Kind.values().length - 1}. */
+    static final int BATTLE = 0x40;
+    static final int RESULT = 0x41;
+
+    /** Первая колонка записи — 24 бита. */
+    static final int MAX_VALUE = (1 << 24) - 1;
+
+    static final String PREFIX = "battles-";
+    static final String SUFFIX = ".hbj";
+
+    private static final int BUFFER_BYTES = 256 << 10;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    // текущий сегмент открывается при первом бое — пустой журнал не оставляет файлов
+    private FileChannel channel;
+    private int nextSegment;
+    private long segmentSize;
+    private long battles;
+    private boolean closed;
+
+    public BattleJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * {@code segmentBytes} — размер, после которого начинается новый сегмент (не больше 2 ГБ: сегмент отображается
+     * целиком).
+     */
+    public BattleJournal(Path directory, long segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_BYTES + 2 * RECORD_BYTES || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size out of range: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        this.nextSegment = lastSegment(directory) + 1;
+    }
+
+    /** Дописывает бой. Юнитов в бою и раундов — не больше {@link #MAX_VALUE}. */
+    public synchronized void append(BattleTimeline timeline) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        int units = timeline.getPlayerCount() + timeline.getComputerCount();
+        if (units > MAX_VALUE || timeline.getRounds() > MAX_VALUE) {
+            throw new IllegalArgumentException("Battle does not fit the journal: " + units + " units, "
+                    + timeline.getRounds() + " rounds");
+        }
+        long bytes = (2L + timeline.size()) * RECORD_BYTES;
+        if (HEADER_BYTES + bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Battle does not fit a segment: " + timeline.size() + " events");
+        }
+        if (channel == null || (segmentSize > HEADER_BYTES && segmentSize + bytes > segmentBytes)) {
+            openSegment();
+        }
+
+        put(BATTLE, timeline.getPlayerCount(), timeline.getComputerCount(), timeline.size());
+        put(RESULT, timeline.getRounds(), timeline.getPlayerAlive(), timeline.getComputerAlive());
+        for (int i = 0; i < timeline.size(); i++) {
+            put(timeline.kind(i).ordinal(), timeline.a(i), timeline.b(i), timeline.c(i));
+        }
+        segmentSize += bytes;
+        battles++;
+    }
+
+    /** Сколько боёв записал этот экземпляр. */
+    public synchronized long getBattles() {
+        return battles;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /** Отдаёт буфер в файл (без {@code fsync}). */
+    public synchronized void flush() throws IOException {
+        if (channel != null) drain();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (channel != null) {
+            try {
+                drain();
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    static String segmentName(int segment) {
+        return String.format("%s%06d%s", PREFIX, segment, SUFFIX);
+    }
+
+    /** Номер сегмента по имени файла; {@code -1}, если это не сегмент журнала. */
+    static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int lastSegment(Path directory) throws IOException {
+        int last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                last = Math.max(last, segmentNumber(file));
+            }
+        }
+        return last;
+    }
+
+    private void openSegment() throws IOException {
+        if (channel != null) {
+            drain();
+            channel.close();
+            channel = null;
+        }
+        channel = FileChannel.open(directory.resolve(segmentName(nextSegment++)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(RECORD_BYTES).putInt(0);
+        segmentSize = HEADER_BYTES;
+    }
+
+    private void put(int kind, int a, int b, int c) throws IOException {
+        if (buffer.remaining() < RECORD_BYTES) drain();
+        buffer.putInt(kind << 24 | a).putInt(b).putInt(c);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,233 @@
+package programs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Чтение журнала боёв ({@link BattleJournal}) без повторного расчёта боёв.
+ * <p>
+ * Сегменты каталога отображаются в память ({@link FileChannel#map}) целиком и читаются абсолютными {@code getInt}
+ * без копирования: {@link Cursor} идёт по боям в порядке записи, итог боя берётся из заголовка, события — по номеру,
+ * как в {@link BattleTimeline}. Для сводок по миллионам боёв события можно не трогать вовсе — переход к следующему
+ * бою идёт по числу событий из заголовка. {@link Cursor#timeline()} собирает бой в {@link BattleTimeline}, например
+ * для показа через {@link BattlePlayback}.
+ * <p>
+ * Читатель видит сегменты, которые были в каталоге при {@link #open}, в том размере, какой у них был. Недописанный
+ * последний бой сегмента (процесс упал посреди записи) пропускается. Курсоров может быть сколько угодно, в том
+ * числе в разных потоках; сам курсор не потокобезопасен.
+ */
+public final class BattleJournalReader {
+
+    private static final BattleTimeline.Kind[] KINDS = BattleTimeline.Kind.values();
+
+    private final List<ByteBuffer> segments;
+
+    private BattleJournalReader(List<ByteBuffer> segments) {
+        this.segments = segments;
+    }
+
+    /** Отображает все сегменты каталога; файл с чужим заголовком — {@link IOException}. */
+    public static BattleJournalReader open(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                BattleJournal.PREFIX + "*" + BattleJournal.SUFFIX)) {
+            for (Path file : stream) {
+                if (BattleJournal.segmentNumber(file) >= 0) files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingInt(BattleJournal::segmentNumber));
+
+        List<ByteBuffer> segments = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < BattleJournal.HEADER_BYTES) continue; // сегмент только что создан
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Journal segment too large: " + file);
+                }
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (data.getInt(0) != BattleJournal.MAGIC || data.getInt(4) != BattleJournal.FORMAT_VERSION
+                        || data.getInt(8) != BattleJournal.RECORD_BYTES) {
+                    throw new IOException("Not a battle journal segment: " + file);
+                }
+                segments.add(data);
+            }
+        }
+        return new BattleJournalReader(segments);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Новый курсор перед первым боем журнала. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Текущий бой при проходе по журналу. Пока {@link #next()} не вернул {@code true}, боя нет. */
+    public final class Cursor {
+
+        private int segment = -1;
+        private ByteBuffer data;
+        // начало следующего боя и первого события текущего, в байтах сегмента
+        private int next;
+        private int events;
+        private long battle = -1;
+
+        private int playerCount;
+        private int computerCount;
+        private int size;
+        private int rounds;
+        private int playerAlive;
+        private int computerAlive;
+
+        private Cursor() {
+        }
+
+        /** Переходит к следующему бою; {@code false} — боёв больше нет. */
+        public boolean next() {
+            while (true) {
+                if (data == null || data.limit() - next < 2 * BattleJournal.RECORD_BYTES) {
+                    if (++segment >= segments.size()) {
+                        data = null;
+                        return false;
+                    }
+                    data = segments.get(segment);
+                    next = BattleJournal.HEADER_BYTES;
+                    continue;
+                }
+                int head = data.getInt(next);
+                int count = data.getInt(next + 8);
+                long end = next + (2L + count) * BattleJournal.RECORD_BYTES;
+                if (head >>> 24 != BattleJournal.BATTLE || count < 0 || end > data.limit()) {
+                    // хвост недописанного боя
+                    next = data.limit();
+                    continue;
+                }
+                playerCount = head & BattleJournal.MAX_VALUE;
+                computerCount = data.getInt(next + 4);
+                size = count;
+                rounds = data.getInt(next + 12) & BattleJournal.MAX_VALUE;
+                playerAlive = data.getInt(next + 16);
+                computerAlive = data.getInt(next + 20);
+                events = next + 2 * BattleJournal.RECORD_BYTES;
+                next = (int) end;
+                battle++;
+                return true;
+            }
+        }
+
+        /** Номер текущего боя от начала журнала, с 0. */
+        public long getBattle() {
+            return battle;
+        }
+
+        public int getPlayerCount() {
+            return playerCount;
+        }
+
+        public int getComputerCount() {
+            return computerCount;
+        }
+
+        public int getRounds() {
+            return rounds;
+        }
+
+        public int getPlayerAlive() {
+            return playerAlive;
+        }
+
+        public int getComputerAlive() {
+            return computerAlive;
+        }
+
+        public BattleBatchRunner.Winner getWinner() {
+            if (playerAlive > 0 && computerAlive == 0) return BattleBatchRunner.Winner.PLAYER;
+            if (computerAlive > 0 && playerAlive == 0) return BattleBatchRunner.Winner.COMPUTER;
+            return BattleBatchRunner.Winner.DRAW;
+        }
+
+        /** Число событий текущего боя; колонки событий — как в {@link BattleTimeline}. */
+        public int size() {
+            return size;
+        }
+
+        public BattleTimeline.Kind kind(int event) {
+            return KINDS[data.getInt(offset(event)) >>> 24];
+        }
+
+        public int unit(int event) {
+            return a(event);
+        }
+
+        public boolean isPlayerUnit(int unit) {
+            return unit < playerCount;
+        }
+
+        public int target(int event) {
+            return b(event);
+        }
+
+        public int x(int event) {
+            return b(event);
+        }
+
+        public int y(int event) {
+            return c(event);
+        }
+
+        public int health(int event) {
+            return b(event);
+        }
+
+        public int round(int event) {
+            return a(event);
+        }
+
+        public int playerAlive(int event) {
+            return b(event);
+        }
+
+        public int computerAlive(int event) {
+            return c(event);
+        }
+
+        /** Текущий бой как {@link BattleTimeline}. */
+        public BattleTimeline timeline() {
+            BattleTimeline.Builder timeline = new BattleTimeline.Builder(playerCount, computerCount);
+            for (int i = 0; i < size; i++) {
+                timeline.add(kind(i), a(i), b(i), c(i));
+            }
+            return timeline.build(rounds, playerAlive, computerAlive);
+        }
+
+        private int a(int event) {
+            return data.getInt(offset(event)) & BattleJournal.MAX_VALUE;
+        }
+
+        private int b(int event) {
+            return data.getInt(offset(event) + 4);
+        }
+
+        private int c(int event) {
+            return data.getInt(offset(event) + 8);
+        }
+
+        private int offset(int event) {
+            if (event < 0 || event >= size) {
+                throw new IndexOutOfBoundsException("Event " + event + " of " + size);
+            }
+            return events + event * BattleJournal.RECORD_BYTES;
+        }
+    }
+}
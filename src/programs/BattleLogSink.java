@@ -0,0 +1,34 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+/**
+ * Получатель событий боя: атаки (для {@code PrintBattleLog}) и итогов раундов.
+ * <p>
+ * {@link SimulateBattleImpl} по умолчанию пишет через {@link DirectBattleLogSink} — синхронно, как раньше;
+ * {@link AsyncBattleLogSink} выносит форматирование и вывод в отдельный поток, {@link #NONE} — для
+ * пакетных прогонов без логов.
+ */
+public interface BattleLogSink {
+
+    /** Ничего не делает. */
+    BattleLogSink NONE = new BattleLogSink() {
+        @Override
+        public void onAttack(Unit attacker, Unit target) {
+        }
+
+        @Override
+        public void onRoundOver(int round, int playerAlive, int computerAlive) {
+        }
+    };
+
+    /** Юнит {@code attacker} сходил; {@code target} — кого атаковал ({@code null}, если цели не нашлось). */
+    void onAttack(Unit attacker, Unit target);
+
+    /** Раунд {@code round} закончен, у армий осталось столько живых юнитов. */
+    void onRoundOver(int round, int playerAlive, int computerAlive);
+
+    /** Дописать всё принятое до этого момента; вызывается в конце боя. */
+    default void flush() {
+    }
+}
@@ -0,0 +1,128 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.util.GameSpeedUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Показ записанного боя ({@link BattleTimeline}) на настоящих армиях в темпе игры.
+ * <p>
+ * Каждое событие применяется к исходным юнитам (координаты, здоровье, гибель), атаки и итоги раундов уходят
+ * в {@link BattleLogSink} — то есть в {@code PrintBattleLog}, как при обычном бое. Паузы те же, что делают
+ * программы библиотеки: {@code gameSpeed} мс после каждого шага и после удара; возврат на место сразу перед
+ * атакой идёт без паузы. Скорость читается перед каждой паузой, поэтому её можно менять во время показа.
+ * <p>
+ * {@link #skipToEnd()} (из любого потока) прерывает текущую паузу: оставшиеся события применяются сразу, без
+ * пауз и без вывода атак, итоги раундов по-прежнему выводятся. После {@link #play()} армии в том же состоянии,
+ * что и в конце записанного боя.
+ */
+public final class BattlePlayback {
+
+    private final BattleTimeline timeline;
+    private final List<Unit> units;
+    private final BattleLogSink log;
+    private final GameSpeedUtil speed;
+    private final Object pause = new Object();
+
+    private volatile boolean skipping;
+    private volatile int position;
+
+    /** {@code speed == null} — без пауз. Армии должны быть те же (и в том же порядке), что были записаны. */
+    public BattlePlayback(BattleTimeline timeline, Army playerArmy, Army computerArmy, BattleLogSink log,
+                          GameSpeedUtil speed) {
+        if (timeline == null) {
+            throw new IllegalArgumentException("timeline is required");
+        }
+        this.timeline = timeline;
+        this.units = new ArrayList<>(timeline.getPlayerCount() + timeline.getComputerCount());
+        addUnits(playerArmy, timeline.getPlayerCount());
+        addUnits(computerArmy, timeline.getComputerCount());
+        this.log = (log != null) ? log : BattleLogSink.NONE;
+        this.speed = speed;
+    }
+
+    public BattleTimeline getTimeline() {
+        return timeline;
+    }
+
+    /** Сколько событий уже показано. */
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean isFinished() {
+        return position == timeline.size();
+    }
+
+    /** Досрочно довести показ до конца. */
+    public void skipToEnd() {
+        skipping = true;
+        synchronized (pause) {
+            pause.notifyAll();
+        }
+    }
+
+    /** Показывает бой с текущей позиции до конца (в вызывающем потоке). */
+    public void play() throws InterruptedException {
+        int size = timeline.size();
+        for (int i = position; i < size; i++) {
+            switch (timeline.kind(i)) {
+                case MOVE -> {
+                    Unit u = unit(timeline.unit(i));
+                    if (u != null) {
+                        u.setxCoordinate(timeline.x(i));
+                        u.setyCoordinate(timeline.y(i));
+                    }
+                    boolean returnBeforeAttack = i + 1 < size
+                            && timeline.kind(i + 1) == BattleTimeline.Kind.ATTACK
+                            && timeline.unit(i + 1) == timeline.unit(i);
+                    if (!returnBeforeAttack) pause();
+                }
+                case DAMAGE -> {
+                    Unit u = unit(timeline.unit(i));
+                    if (u != null) u.setHealth(timeline.health(i));
+                    pause();
+                }
+                case DEATH -> {
+                    Unit u = unit(timeline.unit(i));
+                    if (u != null) u.setAlive(false);
+                }
+                case ATTACK -> {
+                    if (!skipping) log.onAttack(unit(timeline.unit(i)), unit(timeline.target(i)));
+                }
+                case ROUND_OVER -> log.onRoundOver(timeline.round(i), timeline.playerAlive(i),
+                        timeline.computerAlive(i));
+            }
+            position = i + 1;
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        if (skipping || speed == null) return;
+        Integer ms = speed.getGameSpeed();
+        if (ms == null || ms <= 0) return;
+
+        long deadline = System.nanoTime() + ms * 1_000_000L;
+        synchronized (pause) {
+            long left;
+            while (!skipping && (left = deadline - System.nanoTime()) > 0) {
+                pause.wait(Math.max(1, left / 1_000_000L));
+            }
+        }
+    }
+
+    private Unit unit(int id) {
+        return (id < 0 || id >= units.size()) ? null : units.get(id);
+    }
+
+    private void addUnits(Army army, int expected) {
+        List<Unit> list = (army == null || army.getUnits() == null) ? List.of() : army.getUnits();
+        if (list.size() != expected) {
+            throw new IllegalArgumentException("Army has " + list.size() + " units, timeline expects " + expected);
+        }
+        units.addAll(list);
+    }
+}
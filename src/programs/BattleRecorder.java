@@ -0,0 +1,155 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Проигрывает бой без пауз и записывает его в {@link BattleTimeline}.
+ * <p>
+ * Бой идёт на копии армий ({@link BattleBatchRunner#copyPair}) с программами, привязанными к скорости 0, —
+ * исходные армии не меняются. Копии юнитов — {@link RecordingUnit}: программы библиотеки двигают юнитов и наносят
+ * урон через сеттеры {@link Unit}, так что каждый шаг, урон и гибель попадают в запись ровно тогда, когда
+ * происходят. Атаки и итоги раундов записывает {@link BattleLogSink}, через который идёт бой.
+ * <p>
+ * Если программу какого-то юнита скопировать нельзя, {@link #record} бросает {@link IllegalStateException}.
+ */
+final class BattleRecorder {
+
+    private BattleRecorder() {
+    }
+
+    static BattleTimeline record(Army playerArmy, Army computerArmy) throws InterruptedException {
+        Army[] armies = BattleBatchRunner.copyPair(playerArmy, computerArmy, RecordingUnit::new);
+        // бой показывает и учитывает в метриках вызывающий simulate, запись — только расчёт
+        SimulateBattleImpl simulator = new SimulateBattleImpl();
+        simulator.setBattleMetrics(false);
+        return record(simulator, armies);
+    }
+
+    /**
+     * Проигрывает бой на паре копий, сделанных {@code copyPair(..., RecordingUnit::new)}, через {@code simulator}
+     * (его получатель событий на время боя заменяется записью, потом возвращается прежний).
+     */
+    static BattleTimeline record(SimulateBattleImpl simulator, Army[] armies) throws InterruptedException {
+        List<Unit> player = units(armies[0]);
+        List<Unit> computer = units(armies[1]);
+
+        BattleTimeline.Builder timeline = new BattleTimeline.Builder(player.size(), computer.size());
+        for (int i = 0; i < player.size(); i++) {
+            start(player.get(i), timeline, i);
+        }
+        for (int i = 0; i < computer.size(); i++) {
+            start(computer.get(i), timeline, player.size() + i);
+        }
+
+        BattleLogSink previous = simulator.getLogSink();
+        simulator.setLogSink(new RecordingSink(timeline));
+        try {
+            simulator.simulate(armies[0], armies[1]);
+        } finally {
+            simulator.setLogSink(previous);
+        }
+        return timeline.build(simulator.getRounds(), aliveCount(player), aliveCount(computer));
+    }
+
+    private static void start(Unit unit, BattleTimeline.Builder timeline, int id) {
+        if (unit instanceof RecordingUnit recording) recording.start(timeline, id);
+    }
+
+    private static int aliveCount(List<Unit> units) {
+        int alive = 0;
+        for (Unit u : units) {
+            if (u != null && u.isAlive()) alive++;
+        }
+        return alive;
+    }
+
+    private static List<Unit> units(Army army) {
+        return (army.getUnits() == null) ? Collections.emptyList() : army.getUnits();
+    }
+
+    /**
+     * Копия юнита, которая пишет свои изменения в запись боя. Шаг записывается на {@code setyCoordinate}
+     * (программы ставят x, затем y); сдвиг только по x дописывается перед атакой ({@link #flushMove()}).
+     * Воскрешение ({@code setAlive(true)} погибшего) не записывается — программы его не делают.
+     */
+    static final class RecordingUnit extends Unit {
+
+        private BattleTimeline.Builder timeline;
+        private int id;
+        private int lastX;
+        private int lastY;
+
+        RecordingUnit(Unit source) {
+            super(source.getName(), source.getUnitType(), source.getHealth(), source.getBaseAttack(),
+                    source.getCost(), source.getAttackType(), BonusTable.intern(source.getAttackBonuses()),
+                    BonusTable.intern(source.getDefenceBonuses()), source.getxCoordinate(),
+                    source.getyCoordinate());
+            setAlive(source.isAlive());
+        }
+
+        void start(BattleTimeline.Builder timeline, int id) {
+            this.timeline = timeline;
+            this.id = id;
+            this.lastX = getxCoordinate();
+            this.lastY = getyCoordinate();
+        }
+
+        int id() {
+            return id;
+        }
+
+        @Override
+        public void setyCoordinate(int y) {
+            super.setyCoordinate(y);
+            flushMove();
+        }
+
+        @Override
+        public void setHealth(int health) {
+            int before = getHealth();
+            super.setHealth(health);
+            if (timeline != null && health != before) timeline.damage(id, health);
+        }
+
+        @Override
+        public void setAlive(boolean alive) {
+            boolean before = isAlive();
+            super.setAlive(alive);
+            if (timeline != null && before && !alive) timeline.death(id);
+        }
+
+        void flushMove() {
+            int x = getxCoordinate();
+            int y = getyCoordinate();
+            if (timeline == null || (x == lastX && y == lastY)) return;
+            lastX = x;
+            lastY = y;
+            timeline.move(id, x, y);
+        }
+    }
+
+    private static final class RecordingSink implements BattleLogSink {
+
+        private final BattleTimeline.Builder timeline;
+
+        RecordingSink(BattleTimeline.Builder timeline) {
+            this.timeline = timeline;
+        }
+
+        @Override
+        public void onAttack(Unit attacker, Unit target) {
+            RecordingUnit from = (RecordingUnit) attacker;
+            from.flushMove();
+            timeline.attack(from.id(), (target instanceof RecordingUnit to) ? to.id() : -1);
+        }
+
+        @Override
+        public void onRoundOver(int round, int playerAlive, int computerAlive) {
+            timeline.roundOver(round, playerAlive, computerAlive);
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.util.*;
+
+/**
+ * Состояние боя в виде параллельных массивов — основа для быстрых «а что если»: снимок или ответвление
+ * ({@link #fork()}) — это копия нескольких {@code int[]} за O(n), без объектов {@link Unit}, карт бонусов
+ * и клонирования программ.
+ * <p>
+ * Юнит {@code i} — это {@code health[i]}, {@code attack[i]}, {@code x[i]}, {@code y[i]} и номер типа
+ * {@code type[i]} в общем реестре {@link UnitTypes}; живость и сторона — битсеты {@code long[]}.
+ * Тип здесь — не просто название: юниты с одним названием, но разными бонусами или типом атаки получают
+ * разные номера, поэтому карты бонусов восстанавливаются точно. Бонусы каждой пары типов лежат
+ * в матрице реестра; реестр, имена, стоимости, типы и стороны неизменяемы и общие для всех ответвлений.
+ * <p>
+ * Порядок юнитов — армия игрока, затем армия компьютера, в порядке списков армий. Программы поведения
+ * в состояние не входят: {@link #toArmies()} создаёт юнитов без программ, а {@link #applyTo} переносит
+ * здоровье, координаты и живость обратно на исходные {@link Unit}. Класс не потокобезопасен; ответвления
+ * независимы и могут жить в разных потоках.
+ */
+public final class BattleState {
+
+    // общие для всех ответвлений
+    private final UnitTypes types;
+    private final String[] names;
+    private final int[] cost;
+    private final int[] type;
+    private final long[] playerSide;
+    private final int playerCount;
+
+    // свои у каждого ответвления
+    private final int[] health;
+    private final int[] attack;
+    private final int[] x;
+    private final int[] y;
+    private final long[] alive;
+
+    private BattleState(UnitTypes types, String[] names, int[] cost, long[] playerSide, int playerCount,
+                        int[] health, int[] attack, int[] x, int[] y, int[] type, long[] alive) {
+        this.types = types;
+        this.names = names;
+        this.cost = cost;
+        this.playerSide = playerSide;
+        this.playerCount = playerCount;
+        this.health = health;
+        this.attack = attack;
+        this.x = x;
+        this.y = y;
+        this.type = type;
+        this.alive = alive;
+    }
+
+    /** Состояние по текущим юнитам армий ({@code null}-юниты пропускаются). */
+    public static BattleState of(Army playerArmy, Army computerArmy) {
+        List<Unit> player = units(playerArmy);
+        List<Unit> computer = units(computerArmy);
+        int n = player.size() + computer.size();
+
+        UnitTypes.Builder registry = new UnitTypes.Builder();
+        String[] names = new String[n];
+        int[] cost = new int[n];
+        int[] health = new int[n];
+        int[] attack = new int[n];
+        int[] x = new int[n];
+        int[] y = new int[n];
+        int[] type = new int[n];
+        long[] alive = new long[words(n)];
+        long[] playerSide = new long[words(n)];
+
+        for (int i = 0; i < n; i++) {
+            Unit u = (i < player.size()) ? player.get(i) : computer.get(i - player.size());
+            names[i] = u.getName();
+            cost[i] = u.getCost();
+            health[i] = u.getHealth();
+            attack[i] = u.getBaseAttack();
+            x[i] = u.getxCoordinate();
+            y[i] = u.getyCoordinate();
+            type[i] = registry.ordinal(u);
+            if (u.isAlive()) alive[i >>> 6] |= 1L << i;
+            if (i < player.size()) playerSide[i >>> 6] |= 1L << i;
+        }
+        return new BattleState(registry.build(), names, cost, playerSide, player.size(),
+                health, attack, x, y, type, alive);
+    }
+
+    /** Независимая копия: O(n), общие неизменяемые части не копируются. */
+    public BattleState fork() {
+        return new BattleState(types, names, cost, playerSide, playerCount,
+                health.clone(), attack.clone(), x.clone(), y.clone(), type, alive.clone());
+    }
+
+    /** Переписывает текущее состояние из {@code other} (ответвления того же боя) без выделения памяти. */
+    public void copyFrom(BattleState other) {
+        if (other.types != types || other.health.length != health.length) {
+            throw new IllegalArgumentException("State belongs to another battle");
+        }
+        System.arraycopy(other.health, 0, health, 0, health.length);
+        System.arraycopy(other.attack, 0, attack, 0, attack.length);
+        System.arraycopy(other.x, 0, x, 0, x.length);
+        System.arraycopy(other.y, 0, y, 0, y.length);
+        System.arraycopy(other.alive, 0, alive, 0, alive.length);
+    }
+
+    public int size() {
+        return health.length;
+    }
+
+    public UnitTypes getTypes() {
+        return types;
+    }
+
+    public boolean isPlayer(int i) {
+        return (playerSide[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public boolean isAlive(int i) {
+        return (alive[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public String name(int i) {
+        return names[i];
+    }
+
+    public int cost(int i) {
+        return cost[i];
+    }
+
+    public int health(int i) {
+        return health[i];
+    }
+
+    public int attack(int i) {
+        return attack[i];
+    }
+
+    public int x(int i) {
+        return x[i];
+    }
+
+    public int y(int i) {
+        return y[i];
+    }
+
+    /** Номер типа юнита в {@link #getTypes()}. */
+    public int type(int i) {
+        return type[i];
+    }
+
+    /** Живых юнитов стороны — popcount по словам битсетов. */
+    public int aliveCount(boolean player) {
+        int count = 0;
+        for (int w = 0; w < alive.length; w++) {
+            count += Long.bitCount(alive[w] & (player ? playerSide[w] : ~playerSide[w]));
+        }
+        // хвост последнего слова за пределами n в ~playerSide — нули в alive, лишнего не посчитается
+        return count;
+    }
+
+    /** Следующий живой юнит стороны с номером не меньше {@code from}; {@code -1}, если таких нет. */
+    public int nextAlive(int from, boolean player) {
+        for (int w = from >>> 6; w >= 0 && w < alive.length; w++) {
+            long bits = alive[w] & (player ? playerSide[w] : ~playerSide[w]);
+            if (w == from >>> 6) bits &= -1L << from;
+            if (bits != 0) return (w << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        return -1;
+    }
+
+    public void setHealth(int i, int value) {
+        health[i] = value;
+    }
+
+    public void setAlive(int i, boolean value) {
+        if (value) {
+            alive[i >>> 6] |= 1L << i;
+        } else {
+            alive[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    public void moveTo(int i, int newX, int newY) {
+        x[i] = newX;
+        y[i] = newY;
+    }
+
+    /**
+     * Удар {@code attacker} по {@code target} по правилам программ библиотеки: здоровье цели уменьшается
+     * на атаку, при здоровье {@code <= 0} цель погибает. Возвращает {@code true}, если цель погибла.
+     */
+    public boolean strike(int attacker, int target) {
+        health[target] -= attack[attacker];
+        if (health[target] <= 0) {
+            setAlive(target, false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Новые армии по состоянию: новые {@link Unit} с общими таблицами бонусов своего типа, без программ.
+     * Возвращает {@code {playerArmy, computerArmy}}; очки армий — сумма стоимостей её юнитов.
+     */
+    public Army[] toArmies() {
+        List<Unit> player = new ArrayList<>(playerCount);
+        List<Unit> computer = new ArrayList<>(size() - playerCount);
+        int playerPoints = 0;
+        int computerPoints = 0;
+        for (int i = 0; i < size(); i++) {
+            Unit u = toUnit(i);
+            if (i < playerCount) {
+                player.add(u);
+                playerPoints += cost[i];
+            } else {
+                computer.add(u);
+                computerPoints += cost[i];
+            }
+        }
+        Army playerArmy = new Army();
+        playerArmy.setUnits(player);
+        playerArmy.setPoints(playerPoints);
+        Army computerArmy = new Army();
+        computerArmy.setUnits(computer);
+        computerArmy.setPoints(computerPoints);
+        return new Army[]{playerArmy, computerArmy};
+    }
+
+    /** Новый {@link Unit} по юниту {@code i} (без программы). */
+    public Unit toUnit(int i) {
+        int t = type[i];
+        Unit u = new Unit(names[i], types.name(t), health[i], attack[i], cost[i], types.attackType(t),
+                types.attackBonuses(t), types.defenceBonuses(t), x[i], y[i]);
+        u.setAlive(isAlive(i));
+        return u;
+    }
+
+    /**
+     * Переносит здоровье, атаку, координаты и живость на юнитов армий, по которым было построено состояние
+     * (тот же порядок, {@code null}-юниты пропускаются).
+     */
+    public void applyTo(Army playerArmy, Army computerArmy) {
+        List<Unit> player = units(playerArmy);
+        List<Unit> computer = units(computerArmy);
+        if (player.size() != playerCount || player.size() + computer.size() != size()) {
+            throw new IllegalArgumentException("Armies do not match the battle state");
+        }
+        for (int i = 0; i < size(); i++) {
+            Unit u = (i < playerCount) ? player.get(i) : computer.get(i - playerCount);
+            u.setHealth(health[i]);
+            u.setBaseAttack(attack[i]);
+            u.setxCoordinate(x[i]);
+            u.setyCoordinate(y[i]);
+            u.setAlive(isAlive(i));
+        }
+    }
+
+    private static List<Unit> units(Army army) {
+        List<Unit> result = new ArrayList<>();
+        if (army == null || army.getUnits() == null) return result;
+        for (Unit u : army.getUnits()) {
+            if (u != null) result.add(u);
+        }
+        return result;
+    }
+
+    private static int words(int bits) {
+        return Math.max(1, (bits + 63) >>> 6);
+    }
+
+    /**
+     * Неизменяемый реестр типов юнитов боя: название, тип атаки, карты бонусов и матрицы бонусов
+     * «тип против типа». Бонус — множитель, запись ищется по названию типа другой стороны; нет записи — 1.
+     */
+    public static final class UnitTypes {
+
+        private final String[] names;
+        private final String[] attackTypes;
+        private final List<Map<String, Double>> attackBonuses;
+        private final List<Map<String, Double>> defenceBonuses;
+        // [attacker * count + target]: бонус атаки атакующего против типа цели / бонус защиты цели против атакующего
+        private final double[] attackMatrix;
+        private final double[] defenceMatrix;
+
+        private UnitTypes(String[] names, String[] attackTypes,
+                          List<Map<String, Double>> attackBonuses, List<Map<String, Double>> defenceBonuses) {
+            this.names = names;
+            this.attackTypes = attackTypes;
+            this.attackBonuses = attackBonuses;
+            this.defenceBonuses = defenceBonuses;
+            int n = names.length;
+            this.attackMatrix = new double[n * n];
+            this.defenceMatrix = new double[n * n];
+            for (int a = 0; a < n; a++) {
+                for (int t = 0; t < n; t++) {
+                    attackMatrix[a * n + t] = bonus(attackBonuses.get(a), names[t]);
+                    defenceMatrix[a * n + t] = bonus(defenceBonuses.get(t), names[a]);
+                }
+            }
+        }
+
+        private static double bonus(Map<String, Double> bonuses, String against) {
+            Double value = bonuses.get(against);
+            return (value == null) ? 1.0 : value;
+        }
+
+        public int count() {
+            return names.length;
+        }
+
+        public String name(int type) {
+            return names[type];
+        }
+
+        public String attackType(int type) {
+            return attackTypes[type];
+        }
+
+        /** Неизменяемая карта бонусов атаки типа. */
+        public Map<String, Double> attackBonuses(int type) {
+            return attackBonuses.get(type);
+        }
+
+        public Map<String, Double> defenceBonuses(int type) {
+            return defenceBonuses.get(type);
+        }
+
+        /** Бонус атаки типа {@code attacker} против типа {@code target}. */
+        public double attackBonus(int attacker, int target) {
+            return attackMatrix[attacker * names.length + target];
+        }
+
+        /** Бонус защиты типа {@code target} против типа {@code attacker}. */
+        public double defenceBonus(int attacker, int target) {
+            return defenceMatrix[attacker * names.length + target];
+        }
+
+        /** Собирает реестр: одинаковые (название, тип атаки, бонусы) получают один номер. */
+        static final class Builder {
+
+            private final Map<List<Object>, Integer> ordinals = new HashMap<>();
+            private final List<String> names = new ArrayList<>();
+            private final List<String> attackTypes = new ArrayList<>();
+            private final List<Map<String, Double>> attackBonuses = new ArrayList<>();
+            private final List<Map<String, Double>> defenceBonuses = new ArrayList<>();
+
+            int ordinal(Unit u) {
+                Map<String, Double> attack = frozen(u.getAttackBonuses());
+                Map<String, Double> defence = frozen(u.getDefenceBonuses());
+                List<Object> key = Arrays.asList(u.getUnitType(), u.getAttackType(), attack, defence);
+                Integer ordinal = ordinals.get(key);
+                if (ordinal != null) return ordinal;
+
+                ordinal = names.size();
+                ordinals.put(key, ordinal);
+                names.add(u.getUnitType());
+                attackTypes.add(u.getAttackType());
+                attackBonuses.add(attack);
+                defenceBonuses.add(defence);
+                return ordinal;
+            }
+
+            UnitTypes build() {
+                return new UnitTypes(names.toArray(new String[0]), attackTypes.toArray(new String[0]),
+                        List.copyOf(attackBonuses), List.copyOf(defenceBonuses));
+            }
+
+            private static Map<String, Double> frozen(Map<String, Double> map) {
+                Map<String, Double> table = BonusTable.intern(map);
+                return (table instanceof BonusTable) ? table : Collections.unmodifiableMap(table);
+            }
+        }
+    }
+}
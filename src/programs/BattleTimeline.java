@@ -0,0 +1,200 @@
+package programs;
+
+import java.util.Arrays;
+
+/**
+ * Записанный бой — поток событий в порядке, в котором они произошли: шаги, урон, гибели, атаки и итоги раундов.
+ * <p>
+ * Юниты в событиях — номера: {@code 0..playerCount-1} — армия игрока в порядке её списка, дальше — армия
+ * компьютера. События лежат колонками фиксированной ширины ({@code kind} и три {@code int}), так что поток
+ * из тысяч событий — несколько массивов без объекта на событие. Что значат колонки, зависит от {@link Kind}.
+ * <p>
+ * Итог боя ({@link #getWinner()}, {@link #getRounds()}, выжившие) известен сразу после записи — до того, как
+ * {@link BattlePlayback} покажет бой. Экземпляр неизменяем.
+ */
+public final class BattleTimeline {
+
+    /** Тип события и значения его колонок. */
+    public enum Kind {
+        /** Юнит {@link #unit} перешёл на клетку ({@link #x}, {@link #y}). */
+        MOVE,
+        /** У юнита {@link #unit} стало {@link #health} здоровья. */
+        DAMAGE,
+        /** Юнит {@link #unit} погиб. */
+        DEATH,
+        /** Ход юнита {@link #unit} закончен атакой по {@link #target} ({@code -1} — цели не нашлось). */
+        ATTACK,
+        /** Раунд {@link #round} закончен, живых: {@link #playerAlive} и {@link #computerAlive}. */
+        ROUND_OVER
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final int playerCount;
+    private final int computerCount;
+    private final int size;
+    private final byte[] kinds;
+    private final int[] a;
+    private final int[] b;
+    private final int[] c;
+    private final int rounds;
+    private final int playerAlive;
+    private final int computerAlive;
+
+    private BattleTimeline(Builder builder, int rounds, int playerAlive, int computerAlive) {
+        this.playerCount = builder.playerCount;
+        this.computerCount = builder.computerCount;
+        this.size = builder.size;
+        this.kinds = Arrays.copyOf(builder.kinds, size);
+        this.a = Arrays.copyOf(builder.a, size);
+        this.b = Arrays.copyOf(builder.b, size);
+        this.c = Arrays.copyOf(builder.c, size);
+        this.rounds = rounds;
+        this.playerAlive = playerAlive;
+        this.computerAlive = computerAlive;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getComputerCount() {
+        return computerCount;
+    }
+
+    /** Число раундов боя (включая недоигранный последний) — как {@link SimulateBattleImpl#getRounds()}. */
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int getPlayerAlive() {
+        return playerAlive;
+    }
+
+    public int getComputerAlive() {
+        return computerAlive;
+    }
+
+    public BattleBatchRunner.Winner getWinner() {
+        if (playerAlive > 0 && computerAlive == 0) return BattleBatchRunner.Winner.PLAYER;
+        if (computerAlive > 0 && playerAlive == 0) return BattleBatchRunner.Winner.COMPUTER;
+        return BattleBatchRunner.Winner.DRAW;
+    }
+
+    /** Число событий. */
+    public int size() {
+        return size;
+    }
+
+    public Kind kind(int event) {
+        return KINDS[kinds[event]];
+    }
+
+    /** Юнит события (для всех типов, кроме {@link Kind#ROUND_OVER}). */
+    public int unit(int event) {
+        return a[event];
+    }
+
+    public boolean isPlayerUnit(int unit) {
+        return unit < playerCount;
+    }
+
+    /** Цель {@link Kind#ATTACK}, {@code -1} — цели не нашлось. */
+    public int target(int event) {
+        return b[event];
+    }
+
+    public int x(int event) {
+        return b[event];
+    }
+
+    public int y(int event) {
+        return c[event];
+    }
+
+    public int health(int event) {
+        return b[event];
+    }
+
+    public int round(int event) {
+        return a[event];
+    }
+
+    public int playerAlive(int event) {
+        return b[event];
+    }
+
+    public int computerAlive(int event) {
+        return c[event];
+    }
+
+    // колонки как есть, без толкования по типу события — для BattleJournal
+
+    int a(int event) {
+        return a[event];
+    }
+
+    int b(int event) {
+        return b[event];
+    }
+
+    int c(int event) {
+        return c[event];
+    }
+
+    /** Запись событий одного боя; не потокобезопасна. */
+    static final class Builder {
+
+        private final int playerCount;
+        private final int computerCount;
+        private int size;
+        private byte[] kinds = new byte[256];
+        private int[] a = new int[256];
+        private int[] b = new int[256];
+        private int[] c = new int[256];
+
+        Builder(int playerCount, int computerCount) {
+            this.playerCount = playerCount;
+            this.computerCount = computerCount;
+        }
+
+        void move(int unit, int x, int y) {
+            add(Kind.MOVE, unit, x, y);
+        }
+
+        void damage(int unit, int health) {
+            add(Kind.DAMAGE, unit, health, 0);
+        }
+
+        void death(int unit) {
+            add(Kind.DEATH, unit, 0, 0);
+        }
+
+        void attack(int unit, int target) {
+            add(Kind.ATTACK, unit, target, 0);
+        }
+
+        void roundOver(int round, int playerAlive, int computerAlive) {
+            add(Kind.ROUND_OVER, round, playerAlive, computerAlive);
+        }
+
+        BattleTimeline build(int rounds, int playerAlive, int computerAlive) {
+            return new BattleTimeline(this, rounds, playerAlive, computerAlive);
+        }
+
+        void add(Kind kind, int va, int vb, int vc) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                a = Arrays.copyOf(a, capacity);
+                b = Arrays.copyOf(b, capacity);
+                c = Arrays.copyOf(c, capacity);
+            }
+            kinds[size] = (byte) kind.ordinal();
+            a[size] = va;
+            b[size] = vb;
+            c[size] = vc;
+            size++;
+        }
+    }
+}
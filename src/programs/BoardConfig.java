@@ -0,0 +1,92 @@
+package programs;
+
+/**
+ * Размеры поля боя: ширина и высота доски и ширина зоны расстановки каждой армии.
+ * <p>
+ * Армия компьютера стоит в столбцах {@code 0..sideWidth-1}, армия игрока — в последних {@code sideWidth} столбцах.
+ * {@link #DEFAULT} — доска игры 27x21 с зонами по 3 столбца; другие размеры — для больших режимов (например,
+ * 500x500 с тысячами юнитов). Клетка кодируется как в {@link OccupancyGrid}: {@code y * width + x}.
+ * Экземпляр неизменяем.
+ */
+public final class BoardConfig {
+
+    /** Самая большая доска: номер клетки и битсеты занятости должны помещаться в {@code int}. */
+    public static final int MAX_CELLS = 1 << 26;
+
+    public static final BoardConfig DEFAULT = new BoardConfig(27, 21, 3);
+
+    private final int width;
+    private final int height;
+    private final int sideWidth;
+
+    public BoardConfig(int width, int height, int sideWidth) {
+        if (width <= 0 || height <= 0 || sideWidth <= 0) {
+            throw new IllegalArgumentException("Board size must be positive: " + width + "x" + height
+                    + ", side " + sideWidth);
+        }
+        if ((long) width * height > MAX_CELLS) {
+            throw new IllegalArgumentException("Board " + width + "x" + height + " has more than " + MAX_CELLS
+                    + " cells");
+        }
+        if (2L * sideWidth > width) {
+            throw new IllegalArgumentException("Deployment zones of width " + sideWidth + " overlap on a board "
+                    + width + " wide");
+        }
+        this.width = width;
+        this.height = height;
+        this.sideWidth = sideWidth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Ширина зоны расстановки армии (в столбцах). */
+    public int getSideWidth() {
+        return sideWidth;
+    }
+
+    public int getCells() {
+        return width * height;
+    }
+
+    /** Клеток в зоне расстановки одной армии. */
+    public int getSideCells() {
+        return sideWidth * height;
+    }
+
+    /** Первый столбец зоны компьютера. */
+    public int getComputerX() {
+        return 0;
+    }
+
+    /** Первый столбец зоны игрока. */
+    public int getPlayerX() {
+        return width - sideWidth;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BoardConfig other)) return false;
+        return width == other.width && height == other.height && sideWidth == other.sideWidth;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + sideWidth;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " (side " + sideWidth + ")";
+    }
+}
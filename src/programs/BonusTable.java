@@ -0,0 +1,148 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Неизменяемая общая карта бонусов ({@code attackBonuses}/{@code defenceBonuses} юнита).
+ * <p>
+ * Названия типов юнитов получают глобальные номера ({@link #ordinal}), а таблица хранит бонусы плотным
+ * {@code double[]} по номеру типа, так что {@link #bonus(int, double)} — чтение массива без хэширования строк.
+ * Для {@link Unit} таблица — обычная {@code Map<String, Double>} (только для чтения).
+ * <p>
+ * Таблицы интернируются ({@link #intern}): одинаковые по содержимому карты — один объект, поэтому все юниты
+ * одного типа делят две таблицы вместо двух своих {@code HashMap}. Изменять бонусы юнита через
+ * {@code getAttackBonuses().put(...)} больше нельзя — нужно задать новую карту сеттером.
+ */
+public final class BonusTable extends AbstractMap<String, Double> {
+
+    private static final Map<String, Integer> ORDINALS = new ConcurrentHashMap<>();
+    private static final List<String> TYPE_NAMES = new CopyOnWriteArrayList<>();
+    private static final Map<BonusTable, BonusTable> INTERNED = new ConcurrentHashMap<>();
+
+    public static final BonusTable EMPTY = intern(new double[0], new int[0]);
+
+    // values[ordinal] — бонус против типа с этим номером, NaN — записи нет
+    private final double[] values;
+    // номера типов, для которых есть запись, по возрастанию
+    private final int[] present;
+    private final int hash;
+    // строится сразу: таблица общая для потоков, а final-поле публикуется безопасно
+    private final Set<Entry<String, Double>> entries;
+
+    private BonusTable(double[] values, int[] present) {
+        this.values = values;
+        this.present = present;
+        int h = 0;
+        Set<Entry<String, Double>> set = new LinkedHashSet<>(present.length * 2);
+        for (int t : present) {
+            String name = TYPE_NAMES.get(t);
+            // как AbstractMap.hashCode: сумма hash(ключ) ^ hash(значение) — таблица равна HashMap с тем же содержимым
+            h += name.hashCode() ^ Double.hashCode(values[t]);
+            set.add(new SimpleImmutableEntry<>(name, values[t]));
+        }
+        this.hash = h;
+        this.entries = Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Глобальный номер типа юнита (по названию); новые названия получают следующий номер.
+     * Номера не переиспользуются и одинаковы для всех боёв процесса.
+     */
+    public static int ordinal(String unitType) {
+        Integer known = ORDINALS.get(unitType);
+        if (known != null) return known;
+        synchronized (TYPE_NAMES) {
+            return ORDINALS.computeIfAbsent(unitType, name -> {
+                TYPE_NAMES.add(name);
+                return TYPE_NAMES.size() - 1;
+            });
+        }
+    }
+
+    /** Название типа с номером {@code ordinal}. */
+    public static String typeName(int ordinal) {
+        return TYPE_NAMES.get(ordinal);
+    }
+
+    /**
+     * Общая неизменяемая таблица с тем же содержимым, что {@code map}. Таблица возвращается как есть;
+     * {@code null} — пустая таблица. Карты с {@code null}-ключами или значениями не интернируются —
+     * возвращается их копия.
+     */
+    public static Map<String, Double> intern(Map<String, Double> map) {
+        if (map instanceof BonusTable table) return table;
+        if (map == null || map.isEmpty()) return EMPTY;
+
+        int[] present = new int[map.size()];
+        int size = 0;
+        int max = -1;
+        for (Entry<String, Double> e : map.entrySet()) {
+            if (e.getKey() == null || e.getValue() == null) return new HashMap<>(map);
+            int t = ordinal(e.getKey());
+            present[size++] = t;
+            max = Math.max(max, t);
+        }
+        double[] values = new double[max + 1];
+        Arrays.fill(values, Double.NaN);
+        for (Entry<String, Double> e : map.entrySet()) {
+            values[ORDINALS.get(e.getKey())] = e.getValue();
+        }
+        Arrays.sort(present);
+        return intern(values, present);
+    }
+
+    private static BonusTable intern(double[] values, int[] present) {
+        BonusTable table = new BonusTable(values, present);
+        BonusTable known = INTERNED.putIfAbsent(table, table);
+        return (known != null) ? known : table;
+    }
+
+    /** Бонус против типа с номером {@code ordinal}; {@code absent}, если записи нет. */
+    public double bonus(int ordinal, double absent) {
+        if (ordinal < 0 || ordinal >= values.length) return absent;
+        double v = values[ordinal];
+        return (v != v) ? absent : v;
+    }
+
+    @Override
+    public Double get(Object key) {
+        if (!(key instanceof String name)) return null;
+        Integer t = ORDINALS.get(name);
+        if (t == null || t >= values.length || Double.isNaN(values[t])) return null;
+        return values[t];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return present.length;
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        return entries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof BonusTable other) {
+            // NaN на местах без записи: сравниваем биты, а не ==
+            return hash == other.hash && Arrays.equals(present, other.present) && Arrays.equals(values, other.values);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,198 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import com.battle.heroes.army.programs.UnitTargetPathFinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Ограниченный LRU-кэш путей перед {@link UnitTargetPathFinderImpl}. Включается явно: программе вместо
+ * обычного поиска ставят эту обёртку; бой и генератор её сами не используют.
+ * <p>
+ * Доска между раундами почти не меняется, и одни и те же пары атакующий/цель спрашиваются снова
+ * и снова. Ключ — (клетка старта, клетка цели, Zobrist-хэш множества занятых клеток): для запроса
+ * со списком юнитов хэш считается за O(юнитов) без поиска, для снимка {@link OccupancyGrid} он уже
+ * готов. При переполнении вытесняется давно не использованный путь.
+ * <p>
+ * В кэше путь хранится клетками ({@code int[]}), а каждый вызов получает неизменяемый список своих новых
+ * {@link Edge}: изменить закэшированный путь вызывающий не может, а свои клетки может менять как угодно.
+ * Кэш потокобезопасен; при гонке один и тот же путь может быть посчитан дважды — это безвредно.
+ */
+public class CachingUnitTargetPathFinder implements UnitTargetPathFinder {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final UnitTargetPathFinderImpl delegate;
+    // размер доски — как у delegate
+    private final int width;
+    private final int height;
+    private final int capacity;
+    // путь — номера клеток y * width + x от атакующего до цели
+    private final Map<Key, int[]> cache;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CachingUnitTargetPathFinder() {
+        this(new UnitTargetPathFinderImpl(), DEFAULT_CAPACITY);
+    }
+
+    public CachingUnitTargetPathFinder(UnitTargetPathFinderImpl delegate, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.width = delegate.getBoard().getWidth();
+        this.height = delegate.getBoard().getHeight();
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                if (size() <= CachingUnitTargetPathFinder.this.capacity) return false;
+                evictions++;
+                if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.PATH_CACHE_EVICTIONS);
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public List<Edge> getTargetPath(Unit attackUnit, Unit targetUnit, List<Unit> existingUnitList) {
+        if (!inBoard(attackUnit) || !inBoard(targetUnit)) {
+            return Collections.unmodifiableList(delegate.getTargetPath(attackUnit, targetUnit, existingUnitList));
+        }
+
+        GridSearch search = GridSearch.local(width, height);
+        search.begin();
+        Key key = key(attackUnit, targetUnit, search.zobristOf(existingUnitList));
+
+        int[] cells = lookup(key);
+        if (cells == null) {
+            cells = store(key, delegate.getTargetPath(attackUnit, targetUnit, existingUnitList));
+        }
+        return edges(cells);
+    }
+
+    /** Запрос по снимку доски: хэш занятости уже посчитан доской, ключ строится за O(1). */
+    public List<Edge> getTargetPath(Unit attackUnit, Unit targetUnit, OccupancyGrid.Snapshot occupancy) {
+        if (!inBoard(attackUnit) || !inBoard(targetUnit)) {
+            return Collections.unmodifiableList(delegate.getTargetPath(attackUnit, targetUnit, occupancy));
+        }
+
+        Key key = key(attackUnit, targetUnit, occupancy.zobristHash());
+        int[] cells = lookup(key);
+        if (cells == null) {
+            cells = store(key, delegate.getTargetPath(attackUnit, targetUnit, occupancy));
+        }
+        return edges(cells);
+    }
+
+    /** Счётчики попаданий, промахов и вытеснений — чтобы подобрать размер кэша. */
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, cache.size(), capacity);
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    private synchronized int[] lookup(Key key) {
+        int[] path = cache.get(key);
+        if (path != null) {
+            hits++;
+            if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.PATH_CACHE_HITS);
+        } else {
+            misses++;
+            if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.PATH_CACHE_MISSES);
+        }
+        return path;
+    }
+
+    private synchronized int[] store(Key key, List<Edge> computed) {
+        int[] cells = new int[computed.size()];
+        for (int i = 0; i < cells.length; i++) {
+            Edge e = computed.get(i);
+            cells[i] = e.getY() * width + e.getX();
+        }
+        cache.put(key, cells);
+        return cells;
+    }
+
+    /** Новые клетки пути на каждый вызов — закэшированный путь наружу не отдаётся. */
+    private List<Edge> edges(int[] cells) {
+        List<Edge> path = new ArrayList<>(cells.length);
+        for (int c : cells) {
+            path.add(new Edge(c % width, c / width));
+        }
+        return Collections.unmodifiableList(path);
+    }
+
+    private Key key(Unit attackUnit, Unit targetUnit, long occupancyHash) {
+        int start = attackUnit.getyCoordinate() * width + attackUnit.getxCoordinate();
+        int end = targetUnit.getyCoordinate() * width + targetUnit.getxCoordinate();
+        return new Key(occupancyHash, start, end);
+    }
+
+    private boolean inBoard(Unit u) {
+        return u != null
+                && u.getxCoordinate() >= 0 && u.getxCoordinate() < width
+                && u.getyCoordinate() >= 0 && u.getyCoordinate() < height;
+    }
+
+    private record Key(long occupancyHash, int start, int end) {
+    }
+
+    /** Снимок счётчиков кэша. */
+    public static final class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final int capacity;
+
+        Stats(long hits, long misses, long evictions, int size, int capacity) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.capacity = capacity;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                    + ", size=" + size + "/" + capacity;
+        }
+    }
+}
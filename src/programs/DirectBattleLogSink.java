@@ -0,0 +1,77 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.PrintBattleLog;
+
+import java.io.PrintStream;
+
+/**
+ * Вывод лога боя в вызывающем потоке — то, что {@link SimulateBattleImpl} делал всегда:
+ * атака уходит в {@link PrintBattleLog}, итоги раундов и «не нашёл цель» — в консоль.
+ * <p>
+ * В буферизованном режиме консольный текст копится и пишется одним вызовом в {@link #flush()}
+ * (перед каждым вызовом {@code PrintBattleLog} буфер тоже сбрасывается, чтобы не нарушить порядок строк).
+ * Так его использует {@link AsyncBattleLogSink}: один flush на пачку событий.
+ */
+public final class DirectBattleLogSink implements BattleLogSink {
+
+    private static final String LINE = System.lineSeparator();
+
+    private final PrintBattleLog printBattleLog;
+    private final PrintStream out;
+    private final StringBuilder buffer;
+
+    /** Небуферизованный вывод; {@code out == null} — без консоли. */
+    public DirectBattleLogSink(PrintBattleLog printBattleLog, PrintStream out) {
+        this(printBattleLog, out, false);
+    }
+
+    public DirectBattleLogSink(PrintBattleLog printBattleLog, PrintStream out, boolean buffered) {
+        this.printBattleLog = printBattleLog;
+        this.out = out;
+        this.buffer = buffered ? new StringBuilder(4096) : null;
+    }
+
+    @Override
+    public void onAttack(Unit attacker, Unit target) {
+        if (printBattleLog != null) {
+            flush();
+            try {
+                printBattleLog.printBattleLog(attacker, target);
+                return;
+            } catch (RuntimeException ignored) {
+            }
+        }
+
+        // Если нет логгера или он “не принял” target == null
+        if (target == null) {
+            println("Unit can not find target for attack!");
+        }
+    }
+
+    @Override
+    public void onRoundOver(int round, int playerAlive, int computerAlive) {
+        println("\nRound " + round + " is over!");
+        println("Player army has " + playerAlive + " units");
+        println("Computer army has " + computerAlive + " units\n");
+    }
+
+    @Override
+    public void flush() {
+        if (buffer == null || buffer.length() == 0) return;
+        if (out != null) {
+            out.print(buffer);
+            out.flush();
+        }
+        buffer.setLength(0);
+    }
+
+    private void println(String line) {
+        if (out == null) return;
+        if (buffer == null) {
+            out.println(line);
+        } else {
+            buffer.append(line).append(LINE);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import com.battle.heroes.army.programs.UnitTargetPathFinder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поиск пути через поля расстояний (flow field), общие для всех атакующих.
+ * <p>
+ * Для каждой цели один раз строится обратный BFS от её клетки по текущей занятости доски.
+ * Дальше путь любого атакующего к этой цели — жадный спуск по полю за O(длина пути).
+ * В раунде, где много юнитов идут к нескольким целям с фронта, стоимость падает
+ * с O(атакующие × клетки) до O(цели × клетки).
+ * <p>
+ * Поля сбрасываются, когда меняется занятость доски: любой юнит сдвинулся или погиб.
+ * Если finder привязан к {@link OccupancyGrid} боя, изменение определяется по её версии,
+ * а занятость берётся из её снимка — список юнитов не просматривается вовсе. Без доски
+ * изменение определяется по сигнатуре живых юнитов из {@code existingUnitList}. Владелец
+ * боя может сбросить кэш и явно — {@link #invalidate()}.
+ * <p>
+ * Длина пути такая же, как у {@link UnitTargetPathFinderImpl}, но при нескольких кратчайших
+ * путях клетки могут отличаться от BFS.
+ */
+public class FlowFieldPathFinder implements UnitTargetPathFinder {
+
+    private final int width;
+    private final int height;
+    private final OccupancyGrid grid;
+    private final Map<Unit, Field> fields = new IdentityHashMap<>();
+    private final ArrayDeque<int[]> freeArrays = new ArrayDeque<>();
+
+    private long boardSignature;
+    private int boardUnits = -1;
+    private long gridVersion = -1;
+
+    private long fieldBuilds;
+    private long fieldHits;
+
+    private static final class Field {
+        final int targetCell;
+        final int[] dist;
+
+        Field(int targetCell, int[] dist) {
+            this.targetCell = targetCell;
+            this.dist = dist;
+        }
+    }
+
+    public FlowFieldPathFinder() {
+        this(BoardConfig.DEFAULT);
+    }
+
+    /** Finder без доски боя для поля {@code board}. */
+    public FlowFieldPathFinder(BoardConfig board) {
+        this.width = board.getWidth();
+        this.height = board.getHeight();
+        this.grid = null;
+    }
+
+    /** Finder, который берёт занятость, размер поля и момент инвалидации из доски боя. */
+    public FlowFieldPathFinder(OccupancyGrid grid) {
+        this.width = (grid != null) ? grid.getWidth() : BoardConfig.DEFAULT.getWidth();
+        this.height = (grid != null) ? grid.getHeight() : BoardConfig.DEFAULT.getHeight();
+        this.grid = grid;
+    }
+
+    @Override
+    public synchronized List<Edge> getTargetPath(Unit attackUnit, Unit targetUnit, List<Unit> existingUnitList) {
+        if (attackUnit == null || targetUnit == null) return new ArrayList<>();
+
+        int startX = attackUnit.getxCoordinate();
+        int startY = attackUnit.getyCoordinate();
+        if (!inBounds(startX, startY) || !inBounds(targetUnit.getxCoordinate(), targetUnit.getyCoordinate())) {
+            return new ArrayList<>();
+        }
+
+        Field field = field(targetUnit, existingUnitList);
+        GridSearch search = GridSearch.local(width, height);
+        int start = search.cell(startX, startY);
+        if (start == field.targetCell) {
+            List<Edge> path = new ArrayList<>(1);
+            path.add(new Edge(startX, startY));
+            return path;
+        }
+        return search.descend(start, field.dist);
+    }
+
+    /** Длина кратчайшего пути (в ходах) от атакующего до цели; -1 — цель недостижима. */
+    public synchronized int distance(Unit attackUnit, Unit targetUnit, List<Unit> existingUnitList) {
+        if (attackUnit == null || targetUnit == null) return -1;
+
+        int startX = attackUnit.getxCoordinate();
+        int startY = attackUnit.getyCoordinate();
+        if (!inBounds(startX, startY) || !inBounds(targetUnit.getxCoordinate(), targetUnit.getyCoordinate())) {
+            return -1;
+        }
+
+        Field field = field(targetUnit, existingUnitList);
+        GridSearch search = GridSearch.local(width, height);
+        return search.distanceFromField(search.cell(startX, startY), field.dist);
+    }
+
+    /** Сбрасывает все поля (юнит сдвинулся или погиб). */
+    public synchronized void invalidate() {
+        for (Field f : fields.values()) {
+            freeArrays.push(f.dist);
+        }
+        fields.clear();
+        boardUnits = -1;
+        gridVersion = -1;
+    }
+
+    /** Сколько полей было построено (промахи кэша). */
+    public synchronized long fieldBuilds() {
+        return fieldBuilds;
+    }
+
+    /** Сколько запросов обслужено уже готовым полем. */
+    public synchronized long fieldHits() {
+        return fieldHits;
+    }
+
+    private Field field(Unit targetUnit, List<Unit> existingUnitList) {
+        checkBoard(existingUnitList);
+
+        GridSearch search = GridSearch.local(width, height);
+        int targetCell = search.cell(targetUnit.getxCoordinate(), targetUnit.getyCoordinate());
+
+        Field field = fields.get(targetUnit);
+        if (field != null && field.targetCell == targetCell) {
+            fieldHits++;
+            return field;
+        }
+
+        search.begin();
+        if (grid != null) {
+            // клетка цели в снимке занята, но она — источник поля, на результат это не влияет
+            search.useOccupancy(grid.snapshot());
+        } else if (existingUnitList != null) {
+            for (Unit u : existingUnitList) {
+                if (u == null || !u.isAlive() || u == targetUnit) continue;
+                search.block(u.getxCoordinate(), u.getyCoordinate());
+            }
+        }
+
+        int[] dist = freeArrays.isEmpty() ? new int[width * height] : freeArrays.pop();
+        search.distanceField(targetCell, dist);
+        if (field != null) {
+            freeArrays.push(field.dist);
+        }
+        field = new Field(targetCell, dist);
+        fields.put(targetUnit, field);
+        fieldBuilds++;
+        return field;
+    }
+
+    /**
+     * Версия доски боя либо, без доски, сигнатура — набор клеток живых юнитов (порядок списка не важен).
+     * Если она изменилась с прошлого запроса, все поля устарели.
+     */
+    private void checkBoard(List<Unit> existingUnitList) {
+        if (grid != null) {
+            if (grid.version() != gridVersion) {
+                invalidate();
+                gridVersion = grid.version();
+            }
+            return;
+        }
+
+        long signature = 0;
+        int count = 0;
+        if (existingUnitList != null) {
+            for (Unit u : existingUnitList) {
+                if (u == null || !u.isAlive()) continue;
+                signature += SplitMix.mix(u.getxCoordinate() * 0x10000L + u.getyCoordinate());
+                count++;
+            }
+        }
+        if (count != boardUnits || signature != boardSignature) {
+            invalidate();
+            boardSignature = signature;
+            boardUnits = count;
+        }
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
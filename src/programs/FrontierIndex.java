@@ -0,0 +1,214 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Фронт армии по рядам доски, который ведётся инкрементально: для каждого ряда {@code y} —
+ * самый правый (max x) и самый левый (min x) живой юнит. Это то же, что
+ * {@link SuitableForAttackUnitsFinderImpl#getSuitableUnits(List, boolean)} по спискам юнитов, сгруппированным
+ * по {@code y} в порядке армии.
+ * <p>
+ * Программы библиотеки группируют иначе: {@code Program.getUnitsByRow(i)} — юниты с {@code x == i}, то есть
+ * столбцы зоны армии, и списочный поиск даёт первого живого юнита каждого столбца. Для них индекс не подходит,
+ * поэтому бой его не ведёт; он для кода, который сам владеет состоянием боя и считает ряды по {@code y}.
+ * <p>
+ * В каждом ряду — битсет занятых x ({@code long} на 64 клетки), плюс битсет непустых рядов, так что
+ * запрос фронта — O(непустых рядов) при ширине до 64 (иначе O(ширина/64) на ряд), без обхода армии.
+ * {@link #onUnitDied} и {@link #onUnitMoved} — O(1): снять/поставить бит и поправить список юнитов клетки.
+ * Высота доски не ограничена 21 рядом.
+ * <p>
+ * Если на одной клетке несколько юнитов, во фронт попадает добавленный в индекс раньше (для {@link #of} —
+ * раньше по списку армии), в том числе после ходов — так же, как перебор по списку, где при равном x
+ * выигрывает первый. Класс не потокобезопасен.
+ */
+public final class FrontierIndex {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] cells;
+    private final long[] nonEmptyRows;
+    private final Map<Unit, Integer> cellByUnit = new IdentityHashMap<>();
+    // порядковый номер добавления — порядок юнитов на общей клетке не зависит от того, кто пришёл на неё раньше
+    private final Map<Unit, Integer> orderByUnit = new IdentityHashMap<>();
+    // юниты каждой клетки по порядку добавления; массив создаётся при первом юните на клетке
+    private final List<List<Unit>> unitsByCell;
+
+    public FrontierIndex() {
+        this(OccupancyGrid.DEFAULT_WIDTH, OccupancyGrid.DEFAULT_HEIGHT);
+    }
+
+    public FrontierIndex(BoardConfig board) {
+        this(board.getWidth(), board.getHeight());
+    }
+
+    public FrontierIndex(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Board size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.cells = new long[wordsPerRow * height];
+        this.nonEmptyRows = new long[(height + 63) >>> 6];
+        this.unitsByCell = new ArrayList<>(width * height);
+        for (int i = 0; i < width * height; i++) {
+            unitsByCell.add(null);
+        }
+    }
+
+    /** Индекс доски 27x21 по всем живым юнитам из {@code units}. */
+    public static FrontierIndex of(Iterable<Unit> units) {
+        return of(BoardConfig.DEFAULT, units);
+    }
+
+    public static FrontierIndex of(BoardConfig board, Iterable<Unit> units) {
+        FrontierIndex index = new FrontierIndex(board);
+        if (units != null) {
+            for (Unit u : units) {
+                index.add(u);
+            }
+        }
+        return index;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Отмечает живого юнита на его текущей клетке (повторное добавление игнорируется). */
+    public void add(Unit u) {
+        if (u == null || !u.isAlive() || cellByUnit.containsKey(u)) return;
+        int x = u.getxCoordinate();
+        int y = u.getyCoordinate();
+        if (!inBounds(x, y)) return;
+
+        int c = y * width + x;
+        cellByUnit.put(u, c);
+        orderByUnit.putIfAbsent(u, orderByUnit.size());
+        place(u, c);
+    }
+
+    /**
+     * Юнит ушёл со своей прежней клетки на текущую ({@code getxCoordinate/getyCoordinate}).
+     * Юниты, которых нет в индексе (другая армия, погибшие), игнорируются.
+     */
+    public void onUnitMoved(Unit u) {
+        Integer from = cellByUnit.get(u);
+        if (from == null) return;
+        int x = u.getxCoordinate();
+        int y = u.getyCoordinate();
+        int to = inBounds(x, y) ? y * width + x : -1;
+        if (to == from) return;
+
+        remove(u, from);
+        if (to < 0) {
+            cellByUnit.remove(u);
+        } else {
+            cellByUnit.put(u, to);
+            place(u, to);
+        }
+    }
+
+    /** Юнит погиб — он больше не во фронте (повторный вызов ничего не делает). */
+    public void onUnitDied(Unit u) {
+        Integer c = cellByUnit.remove(u);
+        if (c == null) return;
+        remove(u, c);
+    }
+
+    /**
+     * Фронт в порядке рядов сверху вниз: в каждом непустом ряду — самый правый юнит, если атакуют левую
+     * армию ({@code isLeftArmyTarget}), иначе самый левый.
+     */
+    public List<Unit> frontier(boolean isLeftArmyTarget) {
+        List<Unit> result = new ArrayList<>();
+        for (int w = 0; w < nonEmptyRows.length; w++) {
+            for (long bits = nonEmptyRows[w]; bits != 0; bits &= bits - 1) {
+                int y = (w << 6) + Long.numberOfTrailingZeros(bits);
+                result.add(unitAt(y * width + extremeX(y, isLeftArmyTarget)));
+            }
+        }
+        return result;
+    }
+
+    /** Юнит фронта в ряду {@code y}; {@code null}, если в ряду нет живых юнитов. */
+    public Unit frontierUnit(int y, boolean isLeftArmyTarget) {
+        if (y < 0 || y >= height || (nonEmptyRows[y >>> 6] & (1L << y)) == 0) return null;
+        return unitAt(y * width + extremeX(y, isLeftArmyTarget));
+    }
+
+    private int extremeX(int y, boolean max) {
+        int base = y * wordsPerRow;
+        if (max) {
+            for (int w = wordsPerRow - 1; w >= 0; w--) {
+                long bits = cells[base + w];
+                if (bits != 0) return (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+        } else {
+            for (int w = 0; w < wordsPerRow; w++) {
+                long bits = cells[base + w];
+                if (bits != 0) return (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        throw new IllegalStateException("Row " + y + " is empty");
+    }
+
+    private Unit unitAt(int c) {
+        return unitsByCell.get(c).get(0);
+    }
+
+    private void place(Unit u, int c) {
+        List<Unit> units = unitsByCell.get(c);
+        if (units == null) {
+            units = new ArrayList<>(1);
+            unitsByCell.set(c, units);
+        }
+        int order = orderByUnit.get(u);
+        int i = units.size();
+        while (i > 0 && orderByUnit.get(units.get(i - 1)) > order) {
+            i--;
+        }
+        units.add(i, u);
+        if (units.size() == 1) {
+            int y = c / width;
+            int x = c - y * width;
+            cells[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+            nonEmptyRows[y >>> 6] |= 1L << y;
+        }
+    }
+
+    private void remove(Unit u, int c) {
+        List<Unit> units = unitsByCell.get(c);
+        for (int i = 0; i < units.size(); i++) {
+            if (units.get(i) == u) {
+                units.remove(i);
+                break;
+            }
+        }
+        if (units.isEmpty()) {
+            int y = c / width;
+            int x = c - y * width;
+            int base = y * wordsPerRow;
+            cells[base + (x >>> 6)] &= ~(1L << x);
+            boolean rowEmpty = true;
+            for (int w = 0; w < wordsPerRow && rowEmpty; w++) {
+                rowEmpty = cells[base + w] == 0;
+            }
+            if (rowEmpty) nonEmptyRows[y >>> 6] &= ~(1L << y);
+        }
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
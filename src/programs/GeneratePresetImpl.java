@@ -5,22 +5,112 @@ import com.battle.heroes.army.Unit;
 import com.battle.heroes.army.programs.GeneratePreset;
 import com.battle.heroes.army.programs.Program;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class GeneratePresetImpl implements GeneratePreset {
 
-    private static final int MAX_UNITS_PER_TYPE = 11;
-
-    private static final int HEIGHT = 21;
-    private static final int SIDE_WIDTH = 3;
-    private static final int COMPUTER_X_OFFSET = 0; // враг слева: x=0..2
+    /** Лимит юнитов одного типа по правилам игры; для больших досок — {@link #setMaxUnitsPerType}. */
+    public static final int DEFAULT_MAX_UNITS_PER_TYPE = 11;
 
     private static final boolean DEBUG = false;
 
+    /** Как выбирается состав армии. */
+    public enum Mode {
+        /** Точный рюкзак: максимум суммарной атаки, при равенстве — здоровья. */
+        EXACT,
+        /** Жадный выбор по атаке/стоимости и здоровью/стоимости — историческое поведение, режим по умолчанию. */
+        GREEDY,
+        /**
+         * Начиная с точного состава, ищет состав и расстановку, лучше всего выигрывающие у эталонной армии
+         * игрока ({@link #setReferenceArmy}), по симуляции боёв ({@link PresetSearch}). Без эталона — как
+         * {@link #EXACT}.
+         */
+        SEARCH
+    }
+
+    /** Сколько боёв играет каждый кандидат в режиме {@link Mode#SEARCH}. */
+    public static final int DEFAULT_SEARCH_BATTLES = 32;
+    public static final long DEFAULT_SEARCH_BUDGET_MILLIS = 2000;
+
+    /**
+     * Каталог для файлов {@link PresetTable}, если их хранить на диске ({@link #GeneratePresetImpl(Mode, Path)}).
+     * По умолчанию таблицы только в памяти: каталог во временной папке общий для всех пользователей машины.
+     */
+    public static final Path DEFAULT_PRESET_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "heroes-presets");
+
+    private final Mode mode;
+    private final Path presetDir;
+    // армия компьютера стоит слева: x = 0..sideWidth-1
+    private final BoardConfig board;
+    private final int cells;
+    private int maxUnitsPerType = DEFAULT_MAX_UNITS_PER_TYPE;
+
+    // таблица составов для последнего набора шаблонов; строится (или читается с диска) при первом generate
+    private PresetTable presetTable;
+
+    private Army referenceArmy;
+    private int searchBattles = DEFAULT_SEARCH_BATTLES;
+    private long searchBudgetMillis = DEFAULT_SEARCH_BUDGET_MILLIS;
+    private int searchParallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Жадный режим — армия компьютера та же, что до появления режимов. */
+    public GeneratePresetImpl() {
+        this(Mode.GREEDY);
+    }
+
+    /** Таблицы составов только в памяти. */
+    public GeneratePresetImpl(Mode mode) {
+        this(mode, null);
+    }
+
+    /**
+     * {@code presetDir} — где хранить таблицы составов между запусками ({@code null} — только в памяти).
+     * Прочитанная таблица проверяется по шаблонам, лимитам и бюджету каждой строки, чужой файл не используется.
+     */
+    public GeneratePresetImpl(Mode mode, Path presetDir) {
+        this(mode, presetDir, BoardConfig.DEFAULT);
+    }
+
+    /** Расстановка в зоне компьютера доски {@code board} ({@code sideWidth x height} клеток). */
+    public GeneratePresetImpl(Mode mode, Path presetDir, BoardConfig board) {
+        this.mode = (mode == null) ? Mode.GREEDY : mode;
+        this.presetDir = presetDir;
+        this.board = (board == null) ? BoardConfig.DEFAULT : board;
+        this.cells = this.board.getSideCells();
+    }
+
+    /**
+     * Сколько юнитов одного типа может быть в армии. На доске игры — {@value #DEFAULT_MAX_UNITS_PER_TYPE}; в больших
+     * режимах (тысячи юнитов на доске 500x500) лимит поднимают, иначе зону расстановки не заполнить.
+     */
+    public void setMaxUnitsPerType(int maxUnitsPerType) {
+        if (maxUnitsPerType <= 0) {
+            throw new IllegalArgumentException("Max units per type must be positive: " + maxUnitsPerType);
+        }
+        this.maxUnitsPerType = maxUnitsPerType;
+    }
+
+    /** Армия игрока, против которой {@link Mode#SEARCH} оценивает кандидатов; не меняется. */
+    public void setReferenceArmy(Army referenceArmy) {
+        this.referenceArmy = referenceArmy;
+    }
+
+    /** Сколько времени на поиск в режиме {@link Mode#SEARCH}, сколько боёв на кандидата и сколько потоков. */
+    public void setSearchLimits(long budgetMillis, int battles, int parallelism) {
+        if (battles <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Battles and parallelism must be positive");
+        }
+        this.searchBudgetMillis = budgetMillis;
+        this.searchBattles = battles;
+        this.searchParallelism = parallelism;
+    }
+
     @Override
     public Army generate(List<Unit> unitList, int maxPoints) {
+        long start = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
         List<Unit> templates = (unitList == null) ? Collections.emptyList() : new ArrayList<>(unitList);
 
         // 1) baseAttack / cost (desc)
@@ -41,46 +131,118 @@ public class GeneratePresetImpl implements GeneratePreset {
             return String.valueOf(a.getUnitType()).compareTo(String.valueOf(b.getUnitType()));
         });
 
-        // Клетки на стороне врага (3*21=63) — перемешиваем только размещение
-        List<int[]> cells = new ArrayList<>(SIDE_WIDTH * HEIGHT);
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int dx = 0; dx < SIDE_WIDTH; dx++) {
-                cells.add(new int[]{COMPUTER_X_OFFSET + dx, y});
-            }
+        int[] counts = null;
+        if (mode != Mode.GREEDY) {
+            PresetTable table = presetTable(templates);
+            counts = (table != null) ? table.counts(maxPoints)
+                    : exactCounts(templates, maxUnitsPerType, cells, maxPoints);
+        }
+        if (counts == null) {
+            counts = greedyCounts(templates, maxUnitsPerType, cells, maxPoints);
+        }
+
+        // Клетки зоны компьютера (на доске 27x21 — 3*21=63): нужны только первые клетки случайной перестановки,
+        // поэтому она частичная — O(юнитов) случайных чисел и O(клеток) на массив, без упаковки в Integer.
+        // Юниты занимают клетки по кругу: на каждом проходе по одному каждого шаблона, пока не набрано его число.
+        // Для жадного режима это в точности прежний порядок добавления.
+        Random rnd = new Random(System.nanoTime());
+        int units = 0;
+        for (int count : counts) {
+            units += count;
+        }
+        int[] order = new int[cells];
+        for (int c = 0; c < cells; c++) {
+            order[c] = c;
         }
-        Collections.shuffle(cells, new Random(System.nanoTime()));
+        for (int i = 0, n = Math.min(units, cells); i < n; i++) {
+            int j = i + rnd.nextInt(cells - i);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        int[] owner = new int[cells];
+        Arrays.fill(owner, -1);
         int cellIndex = 0;
+        for (int pass = 0, placed = 1; placed > 0 && cellIndex < cells; pass++) {
+            placed = 0;
+            for (int j = 0; j < templates.size() && cellIndex < cells; j++) {
+                if (counts[j] <= pass) continue;
+                owner[order[cellIndex++]] = j;
+                placed++;
+            }
+        }
+
+        if (mode == Mode.SEARCH && referenceArmy != null && searchable(templates, referenceArmy)) {
+            PresetSearch search = new PresetSearch(referenceArmy, searchBattles, searchBudgetMillis,
+                    searchParallelism);
+            try {
+                PresetSearch.Result result = search.search(templates, firstOfType(templates), maxUnitsPerType,
+                        maxPoints, owner, o -> buildArmy(templates, o), rnd.nextLong());
+                owner = result.owner;
+                if (DEBUG) {
+                    System.out.println("Search: score " + result.score + ", generations " + result.generations
+                            + ", candidates " + result.evaluated + ", cut " + result.cut);
+                }
+            } catch (IllegalStateException e) {
+                // бой кандидата не сыграть (программа упала или не копируется) — остаётся состав без поиска
+                if (DEBUG) System.out.println("Search failed: " + e.getCause());
+            }
+        }
+        Army army = buildArmy(templates, owner);
+        if (HeroesMetrics.ENABLED) {
+            HeroesMetrics.presetGenerated(start, mode.name(), maxPoints, army.getUnits().size());
+        }
+        return army;
+    }
+
+    /**
+     * Армия по владельцам клеток ({@code owner[клетка]} — номер шаблона или {@code -1}; клетка {@code c} —
+     * это {@code x = board.getComputerX() + c % board.getSideWidth()}, {@code y = c / board.getSideWidth()}).
+     * Юниты создаются по кругу по шаблонам, у каждого шаблона клетки берутся в порядке номеров.
+     */
+    private Army buildArmy(List<Unit> templates, int[] owner) {
+        int[][] cellsOf = new int[templates.size()][];
+        int[] filled = new int[templates.size()];
+        for (int o : owner) {
+            if (o >= 0) filled[o]++;
+        }
+        for (int j = 0; j < cellsOf.length; j++) {
+            cellsOf[j] = new int[filled[j]];
+            filled[j] = 0;
+        }
+        for (int c = 0; c < owner.length; c++) {
+            if (owner[c] >= 0) cellsOf[owner[c]][filled[owner[c]]++] = c;
+        }
+
+        // бонусы — общие неизменяемые таблицы: одна пара на шаблон, а не две HashMap на юнита
+        List<Map<String, Double>> attackTables = new ArrayList<>(templates.size());
+        List<Map<String, Double>> defenceTables = new ArrayList<>(templates.size());
+        for (int j = 0; j < templates.size(); j++) {
+            Unit t = templates.get(j);
+            boolean used = cellsOf[j].length > 0;
+            attackTables.add(used ? BonusTable.intern(t.getAttackBonuses()) : null);
+            defenceTables.add(used ? BonusTable.intern(t.getDefenceBonuses()) : null);
+        }
 
-        Map<String, Integer> countByType = new HashMap<>();
         List<Unit> result = new ArrayList<>();
         int points = 0;
         int unitIndex = 1;
 
         boolean added;
+        int pass = 0;
         do {
             added = false;
 
-            for (Unit t : templates) {
-                if (t == null) continue;
+            for (int j = 0; j < templates.size(); j++) {
+                if (cellsOf[j].length <= pass) continue;
+                Unit t = templates.get(j);
 
                 String type = t.getUnitType();
-                int count = countByType.getOrDefault(type, 0);
-                if (count >= MAX_UNITS_PER_TYPE) continue;
-
                 int cost = t.getCost();
-                if (points + cost > maxPoints) continue;
-
-                if (cellIndex >= cells.size()) {
-                    // места больше нет
-                    break;
-                }
-
-                int[] cell = cells.get(cellIndex++);
-                int x = cell[0];
-                int y = cell[1];
 
-                Map<String, Double> attackBonuses = readMapFieldOrEmpty(t, "attackBonuses");
-                Map<String, Double> defenceBonuses = readMapFieldOrEmpty(t, "defenceBonuses");
+                int cell = cellsOf[j][pass];
+                int x = board.getComputerX() + cell % board.getSideWidth();
+                int y = cell / board.getSideWidth();
 
                 Unit newUnit = new Unit(
                         type + " " + unitIndex++,
@@ -89,27 +251,25 @@ public class GeneratePresetImpl implements GeneratePreset {
                         t.getBaseAttack(),
                         cost,
                         String.valueOf(t.getAttackType()),
-                        attackBonuses,
-                        defenceBonuses,
+                        attackTables.get(j),
+                        defenceTables.get(j),
                         x,
                         y
                 );
 
-                Program newProgram = cloneProgramForUnit(t.getProgram(), newUnit);
+                Program newProgram = ProgramCloner.cloneFor(t.getProgram(), newUnit);
                 newUnit.setProgram(newProgram);
 
                 result.add(newUnit);
-                countByType.put(type, count + 1);
                 points += cost;
                 added = true;
 
                 if (DEBUG) {
                     System.out.println("Added " + result.size() + " unit");
                 }
-
-                if (cellIndex >= cells.size()) break;
             }
-        } while (added && points < maxPoints && cellIndex < cells.size());
+            pass++;
+        } while (added);
 
         if (DEBUG) {
             System.out.println("Used points: " + points);
@@ -121,86 +281,173 @@ public class GeneratePresetImpl implements GeneratePreset {
         return army;
     }
 
-    private static double attackEff(Unit u) {
-        int cost = u.getCost();
-        return cost <= 0 ? Double.NEGATIVE_INFINITY : (double) u.getBaseAttack() / cost;
+    /**
+     * Поиск имеет смысл, только если у выбираемых шаблонов есть программы — иначе бой не сыграть, — и программы
+     * шаблонов и эталона копируются: каждый бой кандидата идёт на копиях армий.
+     */
+    private static boolean searchable(List<Unit> templates, Army referenceArmy) {
+        boolean[] allowed = firstOfType(templates);
+        for (int j = 0; j < allowed.length; j++) {
+            Program program = allowed[j] ? templates.get(j).getProgram() : null;
+            if (allowed[j] && (program == null || !ProgramCloner.canCopy(program))) return false;
+        }
+        if (referenceArmy.getUnits() != null) {
+            for (Unit u : referenceArmy.getUnits()) {
+                if (u != null && !ProgramCloner.canCopy(u.getProgram())) return false;
+            }
+        }
+        return true;
     }
 
-    private static double healthEff(Unit u) {
-        int cost = u.getCost();
-        return cost <= 0 ? Double.NEGATIVE_INFINITY : (double) u.getHealth() / cost;
+    /** Какие шаблоны можно брать: первый шаблон каждого типа с неотрицательной стоимостью. */
+    private static boolean[] firstOfType(List<Unit> templates) {
+        boolean[] allowed = new boolean[templates.size()];
+        Set<String> seenTypes = new HashSet<>();
+        for (int j = 0; j < allowed.length; j++) {
+            Unit t = templates.get(j);
+            allowed[j] = t != null && seenTypes.add(t.getUnitType()) && t.getCost() >= 0;
+        }
+        return allowed;
     }
 
     /**
-     * Создаёт новый Program того же класса, копирует в него поля (кроме unit),
-     * затем привязывает unit к newUnit.
-     * <p>
-     * Если создать/скопировать невозможно — возвращает исходный program (fallback).
+     * Жадный выбор: по кругу по отсортированным шаблонам добавляем по одному юниту,
+     * пока тип не достиг лимита и юнит помещается в оставшиеся очки и клетки.
      */
-    private static Program cloneProgramForUnit(Program templateProgram, Unit newUnit) {
-        if (templateProgram == null) return null;
+    private static int[] greedyCounts(List<Unit> templates, int maxPerType, int cells, int maxPoints) {
+        int[] counts = new int[templates.size()];
+        Map<String, Integer> countByType = new HashMap<>();
+        int points = 0;
+        int placed = 0;
 
-        try {
-            Class<?> clazz = templateProgram.getClass();
+        boolean added;
+        do {
+            added = false;
 
-            // 1) Создать новый экземпляр Program через no-arg конструктор
-            Constructor<?> ctor = clazz.getDeclaredConstructor();
-            ctor.setAccessible(true);
-            Object newProgObj = ctor.newInstance();
+            for (int j = 0; j < templates.size(); j++) {
+                Unit t = templates.get(j);
+                if (t == null) continue;
 
-            // 2) Скопировать все поля кроме "unit"
-            copyAllFields(templateProgram, newProgObj, "unit");
+                String type = t.getUnitType();
+                int count = countByType.getOrDefault(type, 0);
+                if (count >= maxPerType) continue;
 
-            // 3) Установить unit = newUnit (если такое поле есть)
-            setFieldIfExists(newProgObj, "unit", newUnit);
+                int cost = t.getCost();
+                if (points + cost > maxPoints) continue;
 
-            return (Program) newProgObj;
-        } catch (Exception ignored) {
-            // fallback: если невозможно создать копию — возвращаем исходный program
-            return templateProgram;
-        }
+                if (placed >= cells) {
+                    // места больше нет
+                    break;
+                }
+
+                placed++;
+                counts[j]++;
+                countByType.put(type, count + 1);
+                points += cost;
+                added = true;
+
+                if (placed >= cells) break;
+            }
+        } while (added && points < maxPoints && placed < cells);
+
+        return counts;
     }
 
-    private static void copyAllFields(Object src, Object dst, String... excludedNames) throws IllegalAccessException {
-        Set<String> excluded = new HashSet<>(Arrays.asList(excludedNames));
+    /**
+     * Таблица составов для этих (уже отсортированных) шаблонов: та же, что в прошлый раз, если шаблоны
+     * не менялись, иначе — из файла в {@code presetDir}, иначе — новый расчёт (и запись файла).
+     * {@code null}, если шаблоны не подходят для точного режима или лимит на тип больше, чем помещается в строку
+     * таблицы (большие доски) — тогда состав считается без таблицы.
+     */
+    private synchronized PresetTable presetTable(List<Unit> templates) {
+        if (maxUnitsPerType > PresetTable.MAX_COUNT) return null;
+        long key = PresetTable.keyOf(templates, maxUnitsPerType, cells);
+        if (presetTable != null && presetTable.key() == key) {
+            return presetTable;
+        }
 
-        Class<?> c = src.getClass();
-        while (c != null && c != Object.class) {
-            for (Field f : c.getDeclaredFields()) {
-                if (excluded.contains(f.getName())) continue;
-                f.setAccessible(true);
-                Object v = f.get(src);
-                f.set(dst, v);
+        Path file = (presetDir == null) ? null : presetDir.resolve(String.format("preset-%016x.bin", key));
+        PresetTable table = (file == null) ? null : PresetTable.load(file, key, templates.size());
+        if (table != null && !table.fits(costs(templates), caps(templates, maxUnitsPerType), cells)) {
+            // файл совпал по ключу, но составы нарушают правила — не доверяем ему
+            table = null;
+        }
+        if (table != null) {
+            if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.PRESET_TABLE_LOADS);
+        } else {
+            ArmyKnapsack knapsack = exactKnapsack(templates, maxUnitsPerType, cells, Integer.MAX_VALUE);
+            if (knapsack == null) return null;
+            table = PresetTable.build(key, knapsack);
+            if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.PRESET_TABLE_BUILDS);
+            if (file != null) {
+                try {
+                    table.save(file);
+                } catch (IOException | RuntimeException ignored) {
+                    // нет доступа к диску — таблица остаётся в памяти
+                }
             }
-            c = c.getSuperclass();
         }
+        presetTable = table;
+        return table;
     }
 
-    private static void setFieldIfExists(Object obj, String fieldName, Object value) {
-        Class<?> c = obj.getClass();
-        while (c != null && c != Object.class) {
-            try {
-                Field f = c.getDeclaredField(fieldName);
-                f.setAccessible(true);
-                f.set(obj, value);
-                return;
-            } catch (Exception ignored) {
-                c = c.getSuperclass();
-            }
+    private static int[] costs(List<Unit> templates) {
+        int[] cost = new int[templates.size()];
+        for (int j = 0; j < cost.length; j++) {
+            Unit t = templates.get(j);
+            cost[j] = (t == null) ? 0 : t.getCost();
         }
+        return cost;
     }
 
-    @SuppressWarnings("unchecked")
-    private static Map<String, Double> readMapFieldOrEmpty(Unit u, String fieldName) {
-        try {
-            Field f = u.getClass().getDeclaredField(fieldName);
-            f.setAccessible(true);
-            Object v = f.get(u);
-            if (v instanceof Map<?, ?> map) {
-                return new HashMap<>((Map<String, Double>) map);
-            }
-        } catch (Exception ignored) {
+    /** Лимит юнитов на шаблон: {@code maxPerType} у первого шаблона типа, 0 у повторов и {@code null}. */
+    private static int[] caps(List<Unit> templates, int maxPerType) {
+        int[] cap = new int[templates.size()];
+        Set<String> seenTypes = new HashSet<>();
+        for (int j = 0; j < cap.length; j++) {
+            Unit t = templates.get(j);
+            if (t != null && seenTypes.add(t.getUnitType())) cap[j] = maxPerType;
+        }
+        return cap;
+    }
+
+    /** Точный выбор без таблицы — когда таблица на все бюджеты слишком велика. */
+    private static int[] exactCounts(List<Unit> templates, int maxPerType, int cells, int maxPoints) {
+        ArmyKnapsack knapsack = exactKnapsack(templates, maxPerType, cells, maxPoints);
+        return knapsack == null ? null : knapsack.counts(maxPoints);
+    }
+
+    /**
+     * Точный выбор ({@link ArmyKnapsack}): максимум суммарной атаки, затем здоровья.
+     * Если тип встречается в шаблонах несколько раз, берётся первый (самый эффективный) шаблон.
+     * {@code null}, если задача не для точного режима (отрицательная стоимость, слишком большая таблица).
+     */
+    private static ArmyKnapsack exactKnapsack(List<Unit> templates, int maxPerType, int cells, int maxPoints) {
+        int n = templates.size();
+        int[] cost = new int[n];
+        int[] attack = new int[n];
+        int[] health = new int[n];
+        int[] cap = new int[n];
+        Set<String> seenTypes = new HashSet<>();
+        for (int j = 0; j < n; j++) {
+            Unit t = templates.get(j);
+            if (t == null || !seenTypes.add(t.getUnitType())) continue;
+            if (t.getCost() < 0) return null;
+            cost[j] = t.getCost();
+            attack[j] = t.getBaseAttack();
+            health[j] = t.getHealth();
+            cap[j] = maxPerType;
         }
-        return new HashMap<>();
+        return ArmyKnapsack.solve(cost, attack, health, cap, cells, maxPoints);
+    }
+
+    private static double attackEff(Unit u) {
+        int cost = u.getCost();
+        return cost <= 0 ? Double.NEGATIVE_INFINITY : (double) u.getBaseAttack() / cost;
+    }
+
+    private static double healthEff(Unit u) {
+        int cost = u.getCost();
+        return cost <= 0 ? Double.NEGATIVE_INFINITY : (double) u.getHealth() / cost;
     }
 }
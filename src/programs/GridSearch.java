@@ -0,0 +1,596 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Примитивное ядро поиска пути на сетке.
+ * <p>
+ * Клетка кодируется одним int: {@code cell = y * width + x}. Все буферы (метки, предки, очередь)
+ * переиспользуются между вызовами: «очистка» делается увеличением эпохи — клетка считается
+ * посещённой/занятой, только если её метка равна текущей эпохе. Экземпляр не потокобезопасен,
+ * поэтому берётся через {@link #local(int, int)} — по одному на поток.
+ * <p>
+ * Все ходы (и прямые, и диагональные) стоят 1, поэтому длина кратчайшего пути на пустом поле —
+ * расстояние Чебышёва. Оно же служит допустимой и монотонной эвристикой для A* и JPS.
+ */
+final class GridSearch {
+
+    // 8 направлений (включая диагонали) — тот же порядок, что был у BFS в UnitTargetPathFinderImpl
+    private static final int[] DX = {-1, 1, 0, 0, -1, -1, 1, 1};
+    private static final int[] DY = {0, 0, -1, 1, -1, 1, -1, 1};
+
+    private static final ThreadLocal<GridSearch> LOCAL = new ThreadLocal<>();
+
+    final int width;
+    final int height;
+
+    private final int[] visitStamp;
+    private final int[] blockStamp;
+    private final int[] prev;
+    private final int[] queue;
+    private final int[] pathBuffer;
+    private final int[] gScore;
+    private final int[] closedStamp;
+    private final int[] goalStamp;
+    private int epoch;
+
+    // если задан — занятость берётся из битсета OccupancyGrid, а не из blockStamp
+    private long[] occupiedBits;
+
+    // открытый список A*/JPS: бинарная куча ключей (f, h, порядковый номер) и клеток
+    private long[] heapKeys = new long[64];
+    private int[] heapCells = new int[64];
+    private int heapSize;
+    private int pushSeq;
+
+    // число раскрытых узлов в последнем поиске (для бенчмарков и метрик)
+    private int expanded;
+
+    private GridSearch(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int cells = width * height;
+        this.visitStamp = new int[cells];
+        this.blockStamp = new int[cells];
+        this.prev = new int[cells];
+        this.queue = new int[cells];
+        this.pathBuffer = new int[cells];
+        this.gScore = new int[cells];
+        this.closedStamp = new int[cells];
+        this.goalStamp = new int[cells];
+    }
+
+    /** Буферы текущего потока для доски {@code width x height}. */
+    static GridSearch local(int width, int height) {
+        GridSearch s = LOCAL.get();
+        if (s == null || s.width != width || s.height != height) {
+            s = new GridSearch(width, height);
+            LOCAL.set(s);
+        }
+        return s;
+    }
+
+    int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /** Начинает новый поиск: все метки прошлых поисков становятся недействительными за O(1). */
+    void begin() {
+        if (++epoch == 0) {
+            // переполнение счётчика раз в 2^32 поисков — тогда честно чистим метки
+            Arrays.fill(visitStamp, 0);
+            Arrays.fill(blockStamp, 0);
+            Arrays.fill(closedStamp, 0);
+            Arrays.fill(goalStamp, 0);
+            epoch = 1;
+        }
+        expanded = 0;
+        occupiedBits = null;
+    }
+
+    /**
+     * Занятость для текущего поиска берётся из снимка доски (вызывать после {@link #begin()}).
+     * Размер доски снимка должен совпадать с размером буферов.
+     */
+    void useOccupancy(OccupancyGrid.Snapshot snapshot) {
+        if (snapshot.getWidth() != width || snapshot.getHeight() != height) {
+            throw new IllegalArgumentException("Snapshot is " + snapshot.getWidth() + "x" + snapshot.getHeight()
+                    + ", search buffers are " + width + "x" + height);
+        }
+        occupiedBits = snapshot.words();
+    }
+
+    /** То же по битсету занятости доски этого размера (например, {@link HierarchicalGrid}). */
+    void useOccupancy(long[] words) {
+        if (words.length != (width * height + 63) >>> 6) {
+            throw new IllegalArgumentException("Occupancy has " + words.length + " words, search buffers are "
+                    + width + "x" + height);
+        }
+        occupiedBits = words;
+    }
+
+    private boolean occupied(int c) {
+        long[] bits = occupiedBits;
+        return bits != null ? (bits[c >>> 6] & (1L << c)) != 0 : blockStamp[c] == epoch;
+    }
+
+    /** Сколько узлов раскрыл последний поиск. */
+    int expanded() {
+        return expanded;
+    }
+
+    void block(int x, int y) {
+        if (inBounds(x, y)) {
+            blockStamp[cell(x, y)] = epoch;
+        }
+    }
+
+    /**
+     * Zobrist-хэш множества клеток живых юнитов списка — тот же, что {@link OccupancyGrid#zobristHash()}
+     * для такой же занятости. Дубликаты клеток отсекаются метками текущей эпохи, поэтому
+     * перед вызовом нужен {@link #begin()}, а после — новый {@link #begin()} перед поиском.
+     */
+    long zobristOf(Iterable<Unit> units) {
+        long hash = 0;
+        if (units == null) return hash;
+        for (Unit u : units) {
+            if (u == null || !u.isAlive()) continue;
+            int x = u.getxCoordinate();
+            int y = u.getyCoordinate();
+            if (!inBounds(x, y)) continue;
+
+            int c = y * width + x;
+            if (blockStamp[c] == epoch) continue;
+            blockStamp[c] = epoch;
+            hash ^= OccupancyGrid.zobristKey(c);
+        }
+        return hash;
+    }
+
+    /**
+     * BFS от {@code start} до {@code end}. Занятые клетки непроходимы, кроме самой цели.
+     * Предок клетки фиксируется в момент её открытия, поэтому поиск можно остановить, как только
+     * открыта цель — путь получается тот же, что и при остановке на её извлечении из очереди.
+     *
+     * @return true, если цель достижима
+     */
+    boolean bfs(int start, int end) {
+        int head = 0;
+        int tail = 0;
+        visitStamp[start] = epoch;
+        queue[tail++] = start;
+
+        while (head != tail) {
+            int cur = queue[head++];
+            expanded++;
+            int x = cur % width;
+            int y = cur / width;
+
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = ny * width + nx;
+                if (visitStamp[next] == epoch) continue;
+
+                // клетка занята, но целевая клетка допускается (там стоит targetUnit)
+                if (occupied(next) && next != end) continue;
+
+                visitStamp[next] = epoch;
+                prev[next] = cur;
+                if (next == end) return true;
+                queue[tail++] = next;
+            }
+        }
+        return false;
+    }
+
+    /** Помечает клетку как одну из целей для {@link #bfsToGoals}. */
+    void goal(int cell) {
+        goalStamp[cell] = epoch;
+    }
+
+    boolean isGoal(int cell) {
+        return goalStamp[cell] == epoch;
+    }
+
+    /**
+     * BFS от {@code start} сразу ко всем клеткам, помеченным {@link #goal}. Цели в очередь
+     * попадают, но не раскрываются — как и в поиске к одной цели, где остальные цели заняты.
+     * Поиск останавливается, когда открыты все {@code goals} целей или доска исчерпана.
+     * <p>
+     * Расстояние до открытой клетки — {@link #distanceTo}, путь — {@link #path}.
+     *
+     * @return клетка ближайшей цели (открытой первой) или -1, если ни одна не достижима
+     */
+    int bfsToGoals(int start, int goals) {
+        int head = 0;
+        int tail = 0;
+        visitStamp[start] = epoch;
+        gScore[start] = 0;
+        if (goalStamp[start] == epoch) return start;
+        queue[tail++] = start;
+
+        int nearest = -1;
+        int found = 0;
+        while (head != tail) {
+            int cur = queue[head++];
+            expanded++;
+            int x = cur % width;
+            int y = cur / width;
+            int nd = gScore[cur] + 1;
+
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = ny * width + nx;
+                if (visitStamp[next] == epoch) continue;
+
+                boolean isGoal = goalStamp[next] == epoch;
+                if (occupied(next) && !isGoal) continue;
+
+                visitStamp[next] = epoch;
+                gScore[next] = nd;
+                prev[next] = cur;
+                if (isGoal) {
+                    if (nearest < 0) nearest = next;
+                    if (++found == goals) return nearest;
+                    continue;
+                }
+                queue[tail++] = next;
+            }
+        }
+        return nearest;
+    }
+
+    /** Расстояние до клетки, открытой последним {@link #bfsToGoals}; -1 — не достигнута. */
+    int distanceTo(int cell) {
+        return visitStamp[cell] == epoch ? gScore[cell] : -1;
+    }
+
+    /** Клетка, из которой последний поиск открыл {@code cell} (для открытых клеток, кроме старта). */
+    int parentOf(int cell) {
+        return prev[cell];
+    }
+
+    /**
+     * Обратный BFS от {@code source} по всей доске: {@code dist[c]} — число ходов от клетки c
+     * до source, -1 для занятых и недостижимых клеток. Ходы симметричны, поэтому это же
+     * расстояние от любой свободной клетки до source.
+     */
+    void distanceField(int source, int[] dist) {
+        Arrays.fill(dist, -1);
+        int head = 0;
+        int tail = 0;
+        dist[source] = 0;
+        queue[tail++] = source;
+
+        while (head != tail) {
+            int cur = queue[head++];
+            expanded++;
+            int x = cur % width;
+            int y = cur / width;
+            int nd = dist[cur] + 1;
+
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = ny * width + nx;
+                if (dist[next] >= 0 || occupied(next)) continue;
+
+                dist[next] = nd;
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    /**
+     * Путь от {@code start} к источнику поля {@code dist} жадным спуском: на каждом шаге —
+     * первый (в порядке направлений) сосед с расстоянием на 1 меньше. O(длина пути).
+     * Стартовая клетка может быть занята (там стоит сам атакующий) — её расстояние
+     * вычисляется по соседям.
+     *
+     * @return путь от start до источника включительно или пустой список, если источник недостижим
+     */
+    List<Edge> descend(int start, int[] dist) {
+        int startDist = distanceFromField(start, dist);
+        if (startDist < 0) return new ArrayList<>();
+
+        List<Edge> path = new ArrayList<>(startDist + 1);
+        int cur = start;
+        int curDist = startDist;
+        path.add(new Edge(cur % width, cur / width));
+        while (curDist > 0) {
+            int x = cur % width;
+            int y = cur / width;
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = ny * width + nx;
+                if (dist[next] == curDist - 1) {
+                    cur = next;
+                    break;
+                }
+            }
+            curDist--;
+            path.add(new Edge(cur % width, cur / width));
+        }
+        return path;
+    }
+
+    /** Расстояние от клетки до источника поля, в том числе если сама клетка занята; -1 — недостижимо. */
+    int distanceFromField(int cell, int[] dist) {
+        if (dist[cell] >= 0) return dist[cell];
+
+        int x = cell % width;
+        int y = cell / width;
+        int best = -1;
+        for (int d = 0; d < DX.length; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+            int nd = dist[ny * width + nx];
+            if (nd >= 0 && (best < 0 || nd < best)) best = nd;
+        }
+        return best < 0 ? -1 : best + 1;
+    }
+
+    /**
+     * A* с эвристикой Чебышёва. При равных f раньше раскрывается узел с меньшим h (ближе к цели),
+     * при равных f и h — открытый раньше, поэтому результат детерминирован.
+     *
+     * @return true, если цель достижима
+     */
+    boolean aStar(int start, int end) {
+        int endX = end % width;
+        int endY = end / width;
+
+        heapSize = 0;
+        pushSeq = 0;
+        visitStamp[start] = epoch;
+        gScore[start] = 0;
+        push(start, 0, chebyshev(start % width, start / width, endX, endY));
+
+        while (heapSize > 0) {
+            int cur = pop();
+            if (closedStamp[cur] == epoch) continue;
+            closedStamp[cur] = epoch;
+            expanded++;
+            if (cur == end) return true;
+
+            int x = cur % width;
+            int y = cur / width;
+            int g = gScore[cur] + 1;
+
+            for (int d = 0; d < DX.length; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = ny * width + nx;
+                if (occupied(next) && next != end) continue;
+                if (closedStamp[next] == epoch) continue;
+                if (visitStamp[next] == epoch && gScore[next] <= g) continue;
+
+                visitStamp[next] = epoch;
+                gScore[next] = g;
+                prev[next] = cur;
+                push(next, g, chebyshev(nx, ny, endX, endY));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Jump point search поверх той же очереди с приоритетами, что и {@link #aStar}.
+     * Вместо соседей в очередь попадают только «точки прыжка» — клетки, где прямолинейное
+     * движение перестаёт быть очевидно оптимальным (рядом препятствие или цель). Предок
+     * точки прыжка — предыдущая точка прыжка, промежуточные клетки достраивает {@link #path}.
+     *
+     * @return true, если цель достижима
+     */
+    boolean jumpPointSearch(int start, int end) {
+        int endX = end % width;
+        int endY = end / width;
+
+        heapSize = 0;
+        pushSeq = 0;
+        visitStamp[start] = epoch;
+        gScore[start] = 0;
+        prev[start] = start;
+        push(start, 0, chebyshev(start % width, start / width, endX, endY));
+
+        while (heapSize > 0) {
+            int cur = pop();
+            if (closedStamp[cur] == epoch) continue;
+            closedStamp[cur] = epoch;
+            expanded++;
+            if (cur == end) return true;
+
+            int x = cur % width;
+            int y = cur / width;
+
+            if (cur == start) {
+                for (int d = 0; d < DX.length; d++) {
+                    jumpFrom(cur, DX[d], DY[d], end, endX, endY);
+                }
+                continue;
+            }
+
+            int p = prev[cur];
+            int dx = Integer.signum(x - p % width);
+            int dy = Integer.signum(y - p / width);
+
+            if (dx != 0 && dy != 0) {
+                // диагональ: естественные соседи + вынужденные, если сзади сбоку препятствие
+                jumpFrom(cur, dx, dy, end, endX, endY);
+                jumpFrom(cur, dx, 0, end, endX, endY);
+                jumpFrom(cur, 0, dy, end, endX, endY);
+                if (blocked(x - dx, y, end)) jumpFrom(cur, -dx, dy, end, endX, endY);
+                if (blocked(x, y - dy, end)) jumpFrom(cur, dx, -dy, end, endX, endY);
+            } else if (dx != 0) {
+                jumpFrom(cur, dx, 0, end, endX, endY);
+                if (blocked(x, y + 1, end)) jumpFrom(cur, dx, 1, end, endX, endY);
+                if (blocked(x, y - 1, end)) jumpFrom(cur, dx, -1, end, endX, endY);
+            } else {
+                jumpFrom(cur, 0, dy, end, endX, endY);
+                if (blocked(x + 1, y, end)) jumpFrom(cur, 1, dy, end, endX, endY);
+                if (blocked(x - 1, y, end)) jumpFrom(cur, -1, dy, end, endX, endY);
+            }
+        }
+        return false;
+    }
+
+    private void jumpFrom(int from, int dx, int dy, int end, int endX, int endY) {
+        int jp = jump(from % width, from / width, dx, dy, end);
+        if (jp < 0 || closedStamp[jp] == epoch) return;
+
+        int jx = jp % width;
+        int jy = jp / width;
+        int g = gScore[from] + chebyshev(from % width, from / width, jx, jy);
+        if (visitStamp[jp] == epoch && gScore[jp] <= g) return;
+
+        visitStamp[jp] = epoch;
+        gScore[jp] = g;
+        prev[jp] = from;
+        push(jp, g, chebyshev(jx, jy, endX, endY));
+    }
+
+    /** Прыжок из (x, y) в направлении (dx, dy); -1, если упёрлись в препятствие или край поля. */
+    private int jump(int x, int y, int dx, int dy, int end) {
+        while (true) {
+            x += dx;
+            y += dy;
+            if (!walkable(x, y, end)) return -1;
+
+            int cur = y * width + x;
+            if (cur == end) return cur;
+
+            if (dx != 0 && dy != 0) {
+                if ((blocked(x - dx, y, end) && walkable(x - dx, y + dy, end))
+                        || (blocked(x, y - dy, end) && walkable(x + dx, y - dy, end))) {
+                    return cur;
+                }
+                // диагональный прыжок останавливается там, откуда есть прямой прыжок
+                if (jump(x, y, dx, 0, end) >= 0 || jump(x, y, 0, dy, end) >= 0) return cur;
+            } else if (dx != 0) {
+                if ((blocked(x, y + 1, end) && walkable(x + dx, y + 1, end))
+                        || (blocked(x, y - 1, end) && walkable(x + dx, y - 1, end))) {
+                    return cur;
+                }
+            } else {
+                if ((blocked(x + 1, y, end) && walkable(x + 1, y + dy, end))
+                        || (blocked(x - 1, y, end) && walkable(x - 1, y + dy, end))) {
+                    return cur;
+                }
+            }
+        }
+    }
+
+    private boolean walkable(int x, int y, int end) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return false;
+        int c = y * width + x;
+        return !occupied(c) || c == end;
+    }
+
+    /** Клетка внутри поля и занята (край поля препятствием не считается). */
+    private boolean blocked(int x, int y, int end) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return false;
+        int c = y * width + x;
+        return occupied(c) && c != end;
+    }
+
+    private static int chebyshev(int x1, int y1, int x2, int y2) {
+        return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
+    }
+
+    private void push(int cell, int g, int h) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+        }
+        long key = ((long) (g + h) << 43) | ((long) h << 22) | (pushSeq++ & 0x3FFFFF);
+
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key) break;
+            heapKeys[i] = heapKeys[parent];
+            heapCells[i] = heapCells[parent];
+            i = parent;
+        }
+        heapKeys[i] = key;
+        heapCells[i] = cell;
+    }
+
+    private int pop() {
+        int top = heapCells[0];
+        int n = --heapSize;
+        if (n > 0) {
+            long key = heapKeys[n];
+            int cell = heapCells[n];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) break;
+                if (child + 1 < n && heapKeys[child + 1] < heapKeys[child]) child++;
+                if (key <= heapKeys[child]) break;
+                heapKeys[i] = heapKeys[child];
+                heapCells[i] = heapCells[child];
+                i = child;
+            }
+            heapKeys[i] = key;
+            heapCells[i] = cell;
+        }
+        return top;
+    }
+
+    /**
+     * Восстанавливает путь {@code start -> end} по предкам последнего поиска (включая обе клетки).
+     * Если предок не соседняя клетка (точки прыжка JPS), промежуточные клетки достраиваются
+     * по прямой/диагонали.
+     */
+    List<Edge> path(int start, int end) {
+        int length = 0;
+        int c = end;
+        while (c != start) {
+            int p = prev[c];
+            int x = c % width;
+            int y = c / width;
+            int dx = Integer.signum(p % width - x);
+            int dy = Integer.signum(p / width - y);
+            // от c шагаем к предку, не включая его самого
+            while (c != p) {
+                pathBuffer[length++] = c;
+                x += dx;
+                y += dy;
+                c = y * width + x;
+            }
+        }
+        pathBuffer[length++] = start;
+
+        List<Edge> path = new ArrayList<>(length);
+        for (int i = length - 1; i >= 0; i--) {
+            int cell = pathBuffer[i];
+            path.add(new Edge(cell % width, cell / width));
+        }
+        return path;
+    }
+}
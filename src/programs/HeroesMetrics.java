@@ -0,0 +1,451 @@
+package programs;
+
+import jdk.jfr.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики и гистограммы задержек горячих путей плюс события JFR.
+ * <p>
+ * Включается свойством {@code -Dheroes.metrics=true}. Флаг {@link #ENABLED} — {@code static final}, и каждое
+ * место замера обёрнуто в {@code if (HeroesMetrics.ENABLED)}: в выключенном режиме JIT выбрасывает замеры
+ * целиком, включая {@code System.nanoTime()}. Во включённом счётчики — {@link LongAdder} (без общей
+ * конкурентной ячейки между потоками), задержки — гистограммы по степеням двойки наносекунд.
+ * <p>
+ * Чтение: {@link #count}, {@link #latency}, {@link #report()}, а также MBean {@code programs:type=HeroesMetrics}
+ * ({@link HeroesMetricsMXBean}), который регистрируется сам при включённых метриках. События JFR
+ * (категория «Heroes») пишутся только во время записи JFR с включёнными событиями.
+ */
+public final class HeroesMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("heroes.metrics");
+
+    public static final String MBEAN_NAME = "programs:type=HeroesMetrics";
+
+    private static final int BUCKETS = 64;
+
+    public enum Counter {
+        /** Бои {@link SimulateBattleImpl}. */
+        BATTLES,
+        /** Сыгранные раунды. */
+        ROUNDS,
+        /** Вызовы {@code Program.attack()}. */
+        ATTACKS,
+        /** Гибели юнитов (удаления из очередей ходов). */
+        UNIT_DEATHS,
+        /** Поиски пути {@link UnitTargetPathFinderImpl} (включая поиск ближайшей цели). */
+        PATH_SEARCHES,
+        /** Клетки, раскрытые поиском пути. */
+        PATH_NODES_EXPANDED,
+        /** Поиски, не нашедшие пути. */
+        PATH_NOT_FOUND,
+        /** Запросы к {@link CachingUnitTargetPathFinder}: из кэша, мимо него и вытесненные пути. */
+        PATH_CACHE_HITS,
+        PATH_CACHE_MISSES,
+        PATH_CACHE_EVICTIONS,
+        /** Пути, взятые из плана хода {@link MovePlanner}, и запросы, которые план не покрыл. */
+        PLANNED_PATH_HITS,
+        PLANNED_PATH_MISSES,
+        /** Копии программ {@link ProgramCloner}. */
+        PROGRAM_CLONES,
+        /** Программы, которые скопировать не удалось (остался шаблон или ошибка). */
+        PROGRAM_CLONE_FAILURES,
+        /** Вызовы {@link GeneratePresetImpl#generate}. */
+        PRESETS_GENERATED,
+        PRESET_TABLE_BUILDS,
+        PRESET_TABLE_LOADS
+    }
+
+    public enum Timer {
+        /** Весь бой {@link SimulateBattleImpl#simulate}. */
+        BATTLE,
+        /** Один {@code Program.attack()}. */
+        PROGRAM_ATTACK,
+        /** Один поиск пути. */
+        PATH_SEARCH,
+        /** Одна копия программы. */
+        PROGRAM_CLONE,
+        /** Один {@link GeneratePresetImpl#generate}. */
+        PRESET_GENERATE
+    }
+
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    private static final Histogram[] TIMERS = new Histogram[Timer.values().length];
+
+    static {
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTERS[i] = new LongAdder();
+        }
+        for (int i = 0; i < TIMERS.length; i++) {
+            TIMERS[i] = new Histogram();
+        }
+        if (ENABLED) {
+            registerMBean();
+        }
+    }
+
+    private HeroesMetrics() {
+    }
+
+    public static void increment(Counter counter) {
+        COUNTERS[counter.ordinal()].increment();
+    }
+
+    public static void add(Counter counter, long delta) {
+        COUNTERS[counter.ordinal()].add(delta);
+    }
+
+    /** Задержка, начавшаяся в {@code startNanos} ({@code System.nanoTime()}) и закончившаяся сейчас. */
+    public static long recordSince(Timer timer, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        TIMERS[timer.ordinal()].record(nanos);
+        return nanos;
+    }
+
+    public static long count(Counter counter) {
+        return COUNTERS[counter.ordinal()].sum();
+    }
+
+    public static Latency latency(Timer timer) {
+        return TIMERS[timer.ordinal()].snapshot();
+    }
+
+    /** Обнуляет все счётчики и гистограммы (не атомарно относительно идущих замеров). */
+    public static void reset() {
+        for (LongAdder c : COUNTERS) {
+            c.reset();
+        }
+        for (Histogram h : TIMERS) {
+            h.reset();
+        }
+    }
+
+    /** Все счётчики и задержки одной строкой на метрику. */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Counter c : Counter.values()) {
+            sb.append(c).append(" = ").append(count(c)).append('\n');
+        }
+        for (Timer t : Timer.values()) {
+            sb.append(t).append(": ").append(latency(t)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** Регистрирует MBean {@link #MBEAN_NAME} (повторный вызов ничего не делает). */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), name);
+            }
+        } catch (JMException | RuntimeException ignored) {
+            // без JMX метрики остаются доступны через статические методы
+        }
+    }
+
+    // --- точки замера; вызываются только под if (ENABLED) ---
+
+    static void battleFinished(long startNanos, int rounds, int playerAlive, int computerAlive) {
+        long nanos = recordSince(Timer.BATTLE, startNanos);
+        increment(Counter.BATTLES);
+        add(Counter.ROUNDS, rounds);
+        BattleEvent event = new BattleEvent();
+        if (event.shouldCommit()) {
+            event.elapsed = nanos;
+            event.rounds = rounds;
+            event.playerAlive = playerAlive;
+            event.computerAlive = computerAlive;
+            event.commit();
+        }
+    }
+
+    static void attackFinished(long startNanos, String unitType, boolean hit) {
+        long nanos = recordSince(Timer.PROGRAM_ATTACK, startNanos);
+        increment(Counter.ATTACKS);
+        ProgramAttackEvent event = new ProgramAttackEvent();
+        if (event.shouldCommit()) {
+            event.elapsed = nanos;
+            event.unitType = unitType;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+
+    static void pathSearchFinished(long startNanos, String mode, int expanded, boolean found) {
+        long nanos = recordSince(Timer.PATH_SEARCH, startNanos);
+        increment(Counter.PATH_SEARCHES);
+        add(Counter.PATH_NODES_EXPANDED, expanded);
+        if (!found) increment(Counter.PATH_NOT_FOUND);
+        PathSearchEvent event = new PathSearchEvent();
+        if (event.shouldCommit()) {
+            event.elapsed = nanos;
+            event.mode = mode;
+            event.expanded = expanded;
+            event.found = found;
+            event.commit();
+        }
+    }
+
+    static void programCloned(long startNanos, boolean copied) {
+        recordSince(Timer.PROGRAM_CLONE, startNanos);
+        increment(copied ? Counter.PROGRAM_CLONES : Counter.PROGRAM_CLONE_FAILURES);
+    }
+
+    static void presetGenerated(long startNanos, String mode, int maxPoints, int units) {
+        long nanos = recordSince(Timer.PRESET_GENERATE, startNanos);
+        increment(Counter.PRESETS_GENERATED);
+        PresetGenerateEvent event = new PresetGenerateEvent();
+        if (event.shouldCommit()) {
+            event.elapsed = nanos;
+            event.mode = mode;
+            event.maxPoints = maxPoints;
+            event.units = units;
+            event.commit();
+        }
+    }
+
+    /** Снимок гистограммы задержек. Перцентили — верхние границы корзин (точность — в пределах ×2). */
+    public static final class Latency {
+
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        private Latency(long count, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0.0 : (double) totalNanos / count;
+        }
+
+        /** Задержка, не меньше которой {@code 1 - p} замеров ({@code p} в [0, 1]). */
+        public long percentileNanos(double p) {
+            long total = 0;
+            for (long b : buckets) {
+                total += b;
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(Math.min(1.0, Math.max(0.0, p)) * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(maxNanos, (i >= 63) ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d, mean=%.0f ns, p50=%d ns, p99=%d ns, max=%d ns",
+                    count, getMeanNanos(), percentileNanos(0.5), percentileNanos(0.99), maxNanos);
+        }
+    }
+
+    private static final class Histogram {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        // корзина i — задержки в [2^i, 2^(i+1)) нс, корзина 0 — ещё и 0
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long v = Math.max(0, nanos);
+            count.increment();
+            total.add(v);
+            max.accumulate(v);
+            buckets[v == 0 ? 0 : 63 - Long.numberOfLeadingZeros(v)].increment();
+        }
+
+        Latency snapshot() {
+            long[] b = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                b[i] = buckets[i].sum();
+            }
+            return new Latency(count.sum(), total.sum(), max.get(), b);
+        }
+
+        void reset() {
+            count.reset();
+            total.reset();
+            max.reset();
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+        }
+    }
+
+    /** Управляющий интерфейс MBean {@link #MBEAN_NAME}. */
+    public interface HeroesMetricsMXBean {
+
+        boolean isEnabled();
+
+        Map<String, Long> getCounters();
+
+        Map<String, Long> getLatencyCounts();
+
+        Map<String, Double> getLatencyMeanMicros();
+
+        Map<String, Double> getLatencyP99Micros();
+
+        Map<String, Double> getLatencyMaxMicros();
+
+        void reset();
+    }
+
+    private static final class MBean implements HeroesMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return ENABLED;
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Counter c : Counter.values()) {
+                result.put(c.name(), count(c));
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getLatencyCounts() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            latencies().forEach((t, l) -> result.put(t.name(), l.getCount()));
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getLatencyMeanMicros() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            latencies().forEach((t, l) -> result.put(t.name(), l.getMeanNanos() / 1000.0));
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getLatencyP99Micros() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            latencies().forEach((t, l) -> result.put(t.name(), l.percentileNanos(0.99) / 1000.0));
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getLatencyMaxMicros() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            latencies().forEach((t, l) -> result.put(t.name(), l.getMaxNanos() / 1000.0));
+            return result;
+        }
+
+        @Override
+        public void reset() {
+            HeroesMetrics.reset();
+        }
+
+        private static Map<Timer, Latency> latencies() {
+            Map<Timer, Latency> result = new EnumMap<>(Timer.class);
+            for (Timer t : Timer.values()) {
+                result.put(t, latency(t));
+            }
+            return result;
+        }
+    }
+
+    // --- события JFR ---
+
+    @Name("programs.Battle")
+    @Label("Battle")
+    @Category("Heroes")
+    @StackTrace(false)
+    static final class BattleEvent extends Event {
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        @Label("Rounds")
+        int rounds;
+        @Label("Player Alive")
+        int playerAlive;
+        @Label("Computer Alive")
+        int computerAlive;
+    }
+
+    @Name("programs.ProgramAttack")
+    @Label("Program Attack")
+    @Category("Heroes")
+    @StackTrace(false)
+    static final class ProgramAttackEvent extends Event {
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        @Label("Unit Type")
+        String unitType;
+        @Label("Hit")
+        boolean hit;
+    }
+
+    @Name("programs.PathSearch")
+    @Label("Path Search")
+    @Category("Heroes")
+    @StackTrace(false)
+    static final class PathSearchEvent extends Event {
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        @Label("Mode")
+        String mode;
+        @Label("Expanded Cells")
+        int expanded;
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("programs.PresetGenerate")
+    @Label("Preset Generate")
+    @Category("Heroes")
+    @StackTrace(false)
+    static final class PresetGenerateEvent extends Event {
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        @Label("Mode")
+        String mode;
+        @Label("Max Points")
+        int maxPoints;
+        @Label("Units")
+        int units;
+    }
+}
@@ -0,0 +1,696 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Иерархическая абстракция доски для поиска пути на больших полях (HPA*).
+ * <p>
+ * Доска делится на квадратные кластеры {@code clusterSize x clusterSize}. На каждой границе соседних кластеров
+ * (включая диагональные углы) свободные клетки вдоль границы образуют отрезки; каждый отрезок, через который
+ * можно перейти на другую сторону, даёт одну точку перехода посередине или две по краям, если он длинный.
+ * Точки перехода — узлы абстрактного графа: между кластерами узлы связаны шагом стоимостью 1, внутри кластера —
+ * кратчайшим расстоянием по клеткам кластера. Путь ищется A* по узлам с эвристикой Чебышёва, затем каждое ребро
+ * внутри кластера разворачивается в клетки обратным ходом по тому же BFS. BFS внутри кластера битовый: фронт волны —
+ * несколько строк кластера в одном {@code long}, шаг волны — сдвиги.
+ * <p>
+ * Абстракция перестраивается инкрементально: {@link #sync} сравнивает новую занятость с прежней по словам битсета
+ * и перестраивает только кластеры с изменившимися клетками, а соседа — только если клетка лежит на общей с ним
+ * границе. Расстояния внутри кластера считаются лениво: строка узла — BFS при первом раскрытии узла поиском.
+ * Один ход юнита стоит O(клеток/64) на сравнение и один-два кластера на перестройку.
+ * <p>
+ * Путь проходит через точки перехода, поэтому он бывает на несколько клеток длиннее кратчайшего. Если старт и цель
+ * в одном кластере или абстрактный граф пути не нашёл (старт или цель стоят на самой границе, и переход возможен
+ * только через их клетку), {@link #findPath} возвращает {@code null} — вызывающий ищет обычным A*.
+ * Экземпляр не потокобезопасен.
+ */
+final class HierarchicalGrid {
+
+    static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    // вход длиннее — две точки перехода по краям вместо одной посередине, как в HPA*
+    private static final int LONG_ENTRANCE = 6;
+    // prev узла, в который пришли прямо из старта
+    private static final int FROM_START = -2;
+    // абстрактный поиск — взвешенный A*: f = g + h * 9/8. Эвристика Чебышёва почти везде занижает путь через точки
+    // перехода на одну-две клетки, и без веса поиск раскрывает всю полосу узлов с равным f; с весом — в разы меньше
+    // узлов ценой нескольких процентов длины пути
+    private static final int HEURISTIC_WEIGHT = 8;
+
+    final int width;
+    final int height;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+
+    // занятость, по которой построена абстракция, и буфер для занятости из списка юнитов
+    private final long[] occupied;
+    private final long[] scratch;
+    private boolean built;
+    private final long[] dirty;
+
+    // узлы кластера (клетки), переходы каждого узла в соседние кластеры, расстояния между узлами внутри кластера
+    // (строка i посчитана, если rowReady[k][i])
+    private final int[][] nodes;
+    private final int[][][] inter;
+    private final int[][] dist;
+    private final boolean[][] rowReady;
+    // номер узла клетки в её кластере, -1 — клетка не узел
+    private final int[] nodeIndex;
+
+    // поиск по абстрактному графу по номерам узлов: кластер << nodeShift | номер узла в кластере; goalId — цель.
+    // Узлы лежат на краю кластера, их не больше 4 * clusterSize — массивы поиска малы и не промахиваются мимо кэша
+    private final int nodeShift;
+    private final int goalId;
+    private final int[] stamp;
+    private final int[] closed;
+    private final int[] gScore;
+    private final int[] hScore;
+    private final int[] prev;
+    private int epoch;
+    private long[] heapKeys = new long[64];
+    private int[] heapNodes = new int[64];
+    private int heapSize;
+    private int expanded;
+
+    // BFS внутри одного кластера по битам: строка кластера — полоса из lane бит (степень двойки не меньше
+    // clusterSize), в одном long — rowsPerWord строк. freeBits/nodeBits — свободные клетки и узлы кластера
+    // loadedCluster, nodeAt — номер узла по номеру бита (слово * 64 + бит)
+    private final int lane;
+    private final int rowsPerWord;
+    private final int clusterWords;
+    private final long laneFirst;
+    private final long laneLast;
+    private final long[] freeBits;
+    private final long[] nodeBits;
+    private final int[] nodeAt;
+    private final long[] front;
+    private final long[] spread;
+    private final long[] visited;
+    private final long[] allowed;
+    private long[] levels;
+    private int loadedCluster = -1;
+
+    // временные буферы перестройки кластера
+    private int[] pairs = new int[64];
+    private int pairCount;
+    private int[] edgeFrom = new int[64];
+    private int[] edgeTo = new int[64];
+
+    HierarchicalGrid(int width, int height, int clusterSize) {
+        if (clusterSize < 2 || clusterSize > 64) {
+            throw new IllegalArgumentException("Cluster size must be in 2..64: " + clusterSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.clusterSize = clusterSize;
+        this.clustersX = (width + clusterSize - 1) / clusterSize;
+        this.clustersY = (height + clusterSize - 1) / clusterSize;
+
+        int cells = width * height;
+        int clusters = clustersX * clustersY;
+        this.occupied = new long[(cells + 63) >>> 6];
+        this.scratch = new long[occupied.length];
+        this.dirty = new long[(clusters + 63) >>> 6];
+        this.nodes = new int[clusters][];
+        this.inter = new int[clusters][][];
+        this.dist = new int[clusters][];
+        this.rowReady = new boolean[clusters][];
+        this.nodeIndex = new int[cells];
+        Arrays.fill(nodeIndex, -1);
+
+        this.nodeShift = 32 - Integer.numberOfLeadingZeros(4 * clusterSize - 1);
+        this.goalId = clusters << nodeShift;
+        this.stamp = new int[goalId + 1];
+        this.closed = new int[goalId + 1];
+        this.gScore = new int[goalId + 1];
+        this.hScore = new int[goalId + 1];
+        this.prev = new int[goalId + 1];
+
+        this.lane = Integer.highestOneBit(clusterSize - 1) << 1;
+        this.rowsPerWord = 64 / lane;
+        this.clusterWords = (clusterSize + rowsPerWord - 1) / rowsPerWord;
+        long first = 0;
+        for (int r = 0; r < rowsPerWord; r++) {
+            first |= 1L << (r * lane);
+        }
+        this.laneFirst = first;
+        this.laneLast = first << (lane - 1);
+        this.freeBits = new long[clusterWords];
+        this.nodeBits = new long[clusterWords];
+        this.nodeAt = new int[clusterWords * 64];
+        this.front = new long[clusterWords];
+        this.spread = new long[clusterWords];
+        this.visited = new long[clusterWords];
+        this.allowed = new long[clusterWords];
+        this.levels = new long[clusterWords * 64];
+    }
+
+    /** Сколько узлов раскрыл последний абстрактный поиск. */
+    int expanded() {
+        return expanded;
+    }
+
+    /** Текущая занятость, по которой построена абстракция (только для чтения). */
+    long[] occupied() {
+        return occupied;
+    }
+
+    int clusterOf(int cell) {
+        return (cell / width / clusterSize) * clustersX + (cell % width) / clusterSize;
+    }
+
+    /** Занятость из живых юнитов списка (во внутреннем буфере — до следующего вызова). */
+    long[] occupancyOf(List<Unit> units) {
+        Arrays.fill(scratch, 0L);
+        if (units != null) {
+            for (Unit u : units) {
+                if (u == null || !u.isAlive()) continue;
+                int x = u.getxCoordinate();
+                int y = u.getyCoordinate();
+                if (x < 0 || x >= width || y < 0 || y >= height) continue;
+                int c = y * width + x;
+                scratch[c >>> 6] |= 1L << c;
+            }
+        }
+        return scratch;
+    }
+
+    /** Приводит абстракцию к занятости {@code words}: перестраивает только затронутые кластеры. */
+    void sync(long[] words) {
+        if (words.length != occupied.length) {
+            throw new IllegalArgumentException("Occupancy has " + words.length + " words, board needs "
+                    + occupied.length);
+        }
+        if (!built) {
+            System.arraycopy(words, 0, occupied, 0, occupied.length);
+            for (int k = 0; k < clustersX * clustersY; k++) {
+                rebuildCluster(k);
+            }
+            built = true;
+            return;
+        }
+
+        boolean changed = false;
+        for (int w = 0; w < occupied.length; w++) {
+            long diff = occupied[w] ^ words[w];
+            if (diff == 0) continue;
+            occupied[w] = words[w];
+            changed = true;
+            for (; diff != 0; diff &= diff - 1) {
+                markChanged((w << 6) + Long.numberOfTrailingZeros(diff));
+            }
+        }
+        if (!changed) return;
+
+        loadedCluster = -1;
+        for (int w = 0; w < dirty.length; w++) {
+            for (long bits = dirty[w]; bits != 0; bits &= bits - 1) {
+                rebuildCluster((w << 6) + Long.numberOfTrailingZeros(bits));
+            }
+            dirty[w] = 0;
+        }
+    }
+
+    /**
+     * Помечает кластер клетки и тех соседей, чьи переходы от неё зависят: переходы через границу считаются по
+     * крайним линиям обоих кластеров, поэтому клетка внутри кластера соседей не касается.
+     */
+    private void markChanged(int cell) {
+        int x = cell % width;
+        int y = cell / width;
+        int cx = x / clusterSize;
+        int cy = y / clusterSize;
+        int dxFrom = (x == x0(cx) && cx > 0) ? -1 : 0;
+        int dxTo = (x == x1(cx) && cx + 1 < clustersX) ? 1 : 0;
+        int dyFrom = (y == y0(cy) && cy > 0) ? -1 : 0;
+        int dyTo = (y == y1(cy) && cy + 1 < clustersY) ? 1 : 0;
+        for (int dy = dyFrom; dy <= dyTo; dy++) {
+            for (int dx = dxFrom; dx <= dxTo; dx++) {
+                int n = (cy + dy) * clustersX + cx + dx;
+                dirty[n >>> 6] |= 1L << n;
+            }
+        }
+    }
+
+    /**
+     * Путь {@code start -> end} (обе клетки включены) по абстракции; клетка цели может быть занята.
+     * {@code null} — пусть ищет обычный поиск (см. описание класса).
+     */
+    List<Edge> findPath(int start, int end) {
+        expanded = 0;
+        int startCluster = clusterOf(start);
+        int endCluster = clusterOf(end);
+        if (startCluster == endCluster) return null;
+
+        int[] startNodes = nodes[startCluster];
+        int[] startDist = nodeDistances(startCluster, start);
+        int[] endDist = nodeDistances(endCluster, end);
+
+        if (++epoch == 0) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(closed, 0);
+            epoch = 1;
+        }
+        heapSize = 0;
+        int endX = end % width;
+        int endY = end / width;
+        for (int i = 0; i < startNodes.length; i++) {
+            if (startDist[i] >= 0) {
+                relax(startCluster << nodeShift | i, startNodes[i], startDist[i], FROM_START, endX, endY);
+            }
+        }
+
+        boolean found = false;
+        int mask = (1 << nodeShift) - 1;
+        while (heapSize > 0) {
+            int cur = pop();
+            if (closed[cur] == epoch) continue;
+            closed[cur] = epoch;
+            expanded++;
+            if (cur == goalId) {
+                found = true;
+                break;
+            }
+
+            int k = cur >>> nodeShift;
+            int i = cur & mask;
+            int g = gScore[cur];
+            int[] clusterNodes = nodes[k];
+            int[] d = dist[k];
+            int n = clusterNodes.length;
+            if (!rowReady[k][i]) distanceRow(k, i);
+            for (int j = 0; j < n; j++) {
+                int step = d[i * n + j];
+                if (step > 0) relax(k << nodeShift | j, clusterNodes[j], g + step, cur, endX, endY);
+            }
+            for (int other : inter[k][i]) {
+                relax(clusterOf(other) << nodeShift | nodeIndex[other], other, g + 1, cur, endX, endY);
+            }
+            if (k == endCluster && endDist[i] >= 0) {
+                relax(goalId, end, g + endDist[i], cur, endX, endY);
+            }
+        }
+        if (!found) return null;
+
+        // клетки пути от цели к старту
+        int count = 0;
+        int[] waypoints = new int[16];
+        waypoints[count++] = end;
+        for (int id = prev[goalId]; id != FROM_START; id = prev[id]) {
+            if (count == waypoints.length) waypoints = Arrays.copyOf(waypoints, count * 2);
+            waypoints[count++] = nodes[id >>> nodeShift][id & mask];
+        }
+        if (count == waypoints.length) waypoints = Arrays.copyOf(waypoints, count + 1);
+        waypoints[count++] = start;
+        return refine(waypoints, count);
+    }
+
+    /**
+     * Соединяет соседние точки пути (от последней к первой). Соседние клетки — один шаг; точки одного кластера —
+     * обратным ходом по волнам BFS внутри кластера, тем же, которым посчитано расстояние между ними.
+     */
+    private List<Edge> refine(int[] waypoints, int count) {
+        List<Edge> path = new ArrayList<>();
+        path.add(new Edge(waypoints[count - 1] % width, waypoints[count - 1] / width));
+        for (int i = count - 1; i > 0; i--) {
+            int from = waypoints[i];
+            int to = waypoints[i - 1];
+            if (Math.max(Math.abs(from % width - to % width), Math.abs(from / width - to / width)) == 1) {
+                path.add(new Edge(to % width, to / width));
+            } else if (!walkInCluster(clusterOf(from), from, to, path)) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Кратчайший путь внутри кластера {@code k}: BFS от {@code to} (её клетка может быть занята) с запоминанием
+     * волн до клетки {@code from}, затем шаги от {@code from} по убывающим волнам. Клетки после {@code from}
+     * дописываются в {@code path}; {@code false} — внутри кластера пути нет.
+     */
+    private boolean walkInCluster(int k, int from, int to, List<Edge> path) {
+        loadCluster(k);
+        int fromBit = localBit(k, from);
+        System.arraycopy(freeBits, 0, allowed, 0, clusterWords);
+        allowed[fromBit >>> 6] |= 1L << fromBit;
+        startWave(localBit(k, to));
+
+        int level = 0;
+        while ((visited[fromBit >>> 6] & (1L << fromBit)) == 0) {
+            if (!expandWave(allowed)) return false;
+            level++;
+            if ((level + 1) * clusterWords > levels.length) levels = Arrays.copyOf(levels, levels.length * 2);
+            System.arraycopy(front, 0, levels, level * clusterWords, clusterWords);
+        }
+
+        int x0 = x0(k % clustersX);
+        int y0 = y0(k / clustersX);
+        int lx = (from % width) - x0;
+        int ly = (from / width) - y0;
+        for (int d = level - 1; d > 0; d--) {
+            boolean stepped = false;
+            for (int dy = -1; dy <= 1 && !stepped; dy++) {
+                for (int dx = -1; dx <= 1 && !stepped; dx++) {
+                    int nx = lx + dx;
+                    int ny = ly + dy;
+                    if (nx < 0 || ny < 0 || nx >= lane || ny >= clusterSize) continue;
+                    int bit = (ny / rowsPerWord) * 64 + (ny % rowsPerWord) * lane + nx;
+                    if ((levels[d * clusterWords + (bit >>> 6)] & (1L << bit)) == 0) continue;
+                    lx = nx;
+                    ly = ny;
+                    stepped = true;
+                }
+            }
+            path.add(new Edge(x0 + lx, y0 + ly));
+        }
+        path.add(new Edge(to % width, to / width));
+        return true;
+    }
+
+    private void relax(int id, int cell, int g, int from, int endX, int endY) {
+        if (closed[id] == epoch) return;
+        int h;
+        if (stamp[id] == epoch) {
+            if (gScore[id] <= g) return;
+            h = hScore[id];
+        } else {
+            h = Math.max(Math.abs(cell % width - endX), Math.abs(cell / width - endY));
+            stamp[id] = epoch;
+            hScore[id] = h;
+        }
+        gScore[id] = g;
+        prev[id] = from;
+        push(id, g * HEURISTIC_WEIGHT + h * (HEURISTIC_WEIGHT + 1), h);
+    }
+
+    /** Расстояния от клетки {@code source} (она может быть занята) до узлов её кластера внутри кластера. */
+    private int[] nodeDistances(int k, int source) {
+        int[] result = new int[nodes[k].length];
+        bfsInCluster(k, source, result, 0);
+        return result;
+    }
+
+    /** Строка {@code i} матрицы расстояний кластера {@code k}: BFS от его узла {@code i}. */
+    private void distanceRow(int k, int i) {
+        bfsInCluster(k, nodes[k][i], dist[k], i * nodes[k].length);
+        rowReady[k][i] = true;
+    }
+
+    // --- перестройка кластера ---
+
+    private void rebuildCluster(int k) {
+        int[] old = nodes[k];
+        if (old != null) {
+            for (int c : old) {
+                nodeIndex[c] = -1;
+            }
+        }
+
+        int cx = k % clustersX;
+        int cy = k / clustersX;
+        // пары (клетка этого кластера, клетка соседа) по всем границам; сосед считает те же пары
+        pairCount = 0;
+        if (cx + 1 < clustersX) verticalBorder(cx, cy, true);
+        if (cx > 0) verticalBorder(cx - 1, cy, false);
+        if (cy + 1 < clustersY) horizontalBorder(cx, cy, true);
+        if (cy > 0) horizontalBorder(cx, cy - 1, false);
+        if (cx + 1 < clustersX && cy + 1 < clustersY) corner(x1(cx), y1(cy), 1, true);
+        if (cx > 0 && cy > 0) corner(x1(cx - 1), y1(cy - 1), 1, false);
+        if (cx > 0 && cy + 1 < clustersY) corner(x0(cx), y1(cy), -1, true);
+        if (cx + 1 < clustersX && cy > 0) corner(x0(cx + 1), y1(cy - 1), -1, false);
+
+        int count = 0;
+        int[] cells = new int[pairCount / 2];
+        int edges = 0;
+        if (edgeFrom.length < pairCount / 2) {
+            edgeFrom = new int[pairCount / 2];
+            edgeTo = new int[pairCount / 2];
+        }
+        for (int p = 0; p < pairCount; p += 2) {
+            int mine = pairs[p];
+            int idx = nodeIndex[mine];
+            if (idx < 0) {
+                idx = count++;
+                nodeIndex[mine] = idx;
+                cells[idx] = mine;
+            }
+            edgeFrom[edges] = idx;
+            edgeTo[edges] = pairs[p + 1];
+            edges++;
+        }
+        cells = Arrays.copyOf(cells, count);
+
+        int[] degree = new int[count];
+        for (int e = 0; e < edges; e++) {
+            degree[edgeFrom[e]]++;
+        }
+        int[][] links = new int[count][];
+        for (int i = 0; i < count; i++) {
+            links[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        for (int e = 0; e < edges; e++) {
+            int i = edgeFrom[e];
+            links[i][degree[i]++] = edgeTo[e];
+        }
+
+        nodes[k] = cells;
+        inter[k] = links;
+        dist[k] = new int[count * count];
+        rowReady[k] = new boolean[count];
+    }
+
+    /** Граница между кластером (cx, cy) и правым соседом; {@code left} — пары нужны левому кластеру. */
+    private void verticalBorder(int cx, int cy, boolean left) {
+        crossings(x1(cx), y0(cy), y1(cy), true, left);
+    }
+
+    /** Граница между кластером (cx, cy) и нижним соседом; {@code upper} — пары нужны верхнему кластеру. */
+    private void horizontalBorder(int cx, int cy, boolean upper) {
+        crossings(y1(cy), x0(cx), x1(cx), false, upper);
+    }
+
+    /**
+     * Переходы через одну границу. Линия A — крайний столбец (строка) первого кластера, линия B — соседняя за
+     * границей; позиции {@code from..to} вдоль границы. Отрезки свободных клеток A и B, которые соприкасаются
+     * (с допуском 1 — ход по диагонали), дают точку перехода посередине общего участка или две по его краям.
+     */
+    private void crossings(int a, int from, int to, boolean vertical, boolean sideA) {
+        int b = a + 1;
+        int runA = from;
+        while (runA <= to) {
+            while (runA <= to && !free(vertical, a, runA)) runA++;
+            if (runA > to) break;
+            int endA = runA;
+            while (endA + 1 <= to && free(vertical, a, endA + 1)) endA++;
+
+            int runB = from;
+            while (runB <= to) {
+                while (runB <= to && !free(vertical, b, runB)) runB++;
+                if (runB > to) break;
+                int endB = runB;
+                while (endB + 1 <= to && free(vertical, b, endB + 1)) endB++;
+
+                int lo = Math.max(runA, runB - 1);
+                int hi = Math.min(endA, endB + 1);
+                if (lo <= hi) {
+                    if (hi - lo + 1 >= LONG_ENTRANCE) {
+                        transition(vertical, a, lo, runB, endB, sideA);
+                        transition(vertical, a, hi, runB, endB, sideA);
+                    } else {
+                        transition(vertical, a, (lo + hi) >>> 1, runB, endB, sideA);
+                    }
+                }
+                runB = endB + 1;
+            }
+            runA = endA + 1;
+        }
+    }
+
+    private void transition(boolean vertical, int a, int posA, int runB, int endB, boolean sideA) {
+        int posB = Math.max(runB, Math.min(endB, posA));
+        int cellA = vertical ? posA * width + a : a * width + posA;
+        int cellB = vertical ? posB * width + a + 1 : (a + 1) * width + posB;
+        addPair(sideA ? cellA : cellB, sideA ? cellB : cellA);
+    }
+
+    /** Угол: клетка (x, y) верхнего кластера и (x + dx, y + 1) нижнего по диагонали. */
+    private void corner(int x, int y, int dx, boolean upper) {
+        int cellA = y * width + x;
+        int cellB = (y + 1) * width + x + dx;
+        if (isOccupied(cellA) || isOccupied(cellB)) return;
+        addPair(upper ? cellA : cellB, upper ? cellB : cellA);
+    }
+
+    private void addPair(int mine, int other) {
+        if (pairCount + 2 > pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        pairs[pairCount++] = mine;
+        pairs[pairCount++] = other;
+    }
+
+    private boolean free(boolean vertical, int line, int pos) {
+        return !isOccupied(vertical ? pos * width + line : line * width + pos);
+    }
+
+    /** Биты занятости клеток {@code c..c+count-1} ({@code count <= 64}), младший — клетка {@code c}. */
+    private long occupiedBits(int c, int count) {
+        int shift = c & 63;
+        long bits = occupied[c >>> 6] >>> shift;
+        if (shift != 0 && shift + count > 64) bits |= occupied[(c >>> 6) + 1] << (64 - shift);
+        return bits;
+    }
+
+    private boolean isOccupied(int c) {
+        return (occupied[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /**
+     * BFS от {@code source} (она может быть занята) по свободным клеткам кластера {@code k}: расстояние до узла
+     * {@code j} пишется в {@code out[offset + j]}, {@code -1} — узел недостижим. Фронт волны — битовые строки:
+     * соседи всех его клеток за один шаг — сдвиги на ±1 внутри полосы и на полосу вверх и вниз (через границу
+     * слова — в соседнее слово). Поиск кончается, когда дошёл до всех узлов.
+     */
+    private void bfsInCluster(int k, int source, int[] out, int offset) {
+        loadCluster(k);
+        int n = nodes[k].length;
+        Arrays.fill(out, offset, offset + n, -1);
+        int bit = localBit(k, source);
+        startWave(bit);
+        int remaining = n;
+        if ((nodeBits[bit >>> 6] & (1L << bit)) != 0) {
+            out[offset + nodeAt[bit]] = 0;
+            remaining--;
+        }
+        for (int d = 1; remaining > 0 && expandWave(freeBits); d++) {
+            for (int w = 0; w < clusterWords; w++) {
+                for (long hit = front[w] & nodeBits[w]; hit != 0; hit &= hit - 1) {
+                    out[offset + nodeAt[(w << 6) + Long.numberOfTrailingZeros(hit)]] = d;
+                    remaining--;
+                }
+            }
+        }
+    }
+
+    private void startWave(int bit) {
+        Arrays.fill(front, 0L);
+        Arrays.fill(visited, 0L);
+        front[bit >>> 6] = 1L << bit;
+        visited[bit >>> 6] = front[bit >>> 6];
+    }
+
+    /** Следующая волна BFS по клеткам {@code allowed}; {@code false} — волна пуста. */
+    private boolean expandWave(long[] allowed) {
+        for (int w = 0; w < clusterWords; w++) {
+            long f = front[w];
+            spread[w] = f | ((f << 1) & ~laneFirst) | ((f >>> 1) & ~laneLast);
+        }
+        int carry = 64 - lane;
+        boolean any = false;
+        for (int w = 0; w < clusterWords; w++) {
+            long s = spread[w];
+            long around = s;
+            if (rowsPerWord > 1) around |= (s << lane) | (s >>> lane);
+            if (w > 0) around |= spread[w - 1] >>> carry;
+            if (w + 1 < clusterWords) around |= spread[w + 1] << carry;
+            long row = around & allowed[w] & ~visited[w];
+            front[w] = row;
+            visited[w] |= row;
+            any |= row != 0;
+        }
+        return any;
+    }
+
+    /** Номер бита клетки {@code cell} кластера {@code k} в битовых строках (слово * 64 + бит). */
+    private int localBit(int k, int cell) {
+        int ly = cell / width - y0(k / clustersX);
+        int lx = cell % width - x0(k % clustersX);
+        return (ly / rowsPerWord) * 64 + (ly % rowsPerWord) * lane + lx;
+    }
+
+    /** Переносит свободные клетки и узлы кластера {@code k} в битовые строки (если там ещё не он). */
+    private void loadCluster(int k) {
+        if (loadedCluster == k) return;
+        Arrays.fill(freeBits, 0L);
+        Arrays.fill(nodeBits, 0L);
+        int x0 = x0(k % clustersX);
+        int y0 = y0(k / clustersX);
+        int w = x1(k % clustersX) - x0 + 1;
+        int h = y1(k / clustersX) - y0 + 1;
+        long mask = (w == 64) ? -1L : (1L << w) - 1;
+        for (int ly = 0; ly < h; ly++) {
+            long row = ~occupiedBits((y0 + ly) * width + x0, w) & mask;
+            freeBits[ly / rowsPerWord] |= row << ((ly % rowsPerWord) * lane);
+        }
+        int[] clusterNodes = nodes[k];
+        for (int i = 0; i < clusterNodes.length; i++) {
+            int bit = localBit(k, clusterNodes[i]);
+            nodeBits[bit >>> 6] |= 1L << bit;
+            nodeAt[bit] = i;
+        }
+        loadedCluster = k;
+    }
+
+    private int x0(int cx) {
+        return cx * clusterSize;
+    }
+
+    private int x1(int cx) {
+        return Math.min(width, (cx + 1) * clusterSize) - 1;
+    }
+
+    private int y0(int cy) {
+        return cy * clusterSize;
+    }
+
+    private int y1(int cy) {
+        return Math.min(height, (cy + 1) * clusterSize) - 1;
+    }
+
+    // --- куча (f, h) как в GridSearch ---
+
+    private void push(int id, int f, int h) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+        }
+        long key = ((long) f << 32) | h;
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key) break;
+            heapKeys[i] = heapKeys[parent];
+            heapNodes[i] = heapNodes[parent];
+            i = parent;
+        }
+        heapKeys[i] = key;
+        heapNodes[i] = id;
+    }
+
+    private int pop() {
+        int top = heapNodes[0];
+        int n = --heapSize;
+        if (n > 0) {
+            long key = heapKeys[n];
+            int id = heapNodes[n];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) break;
+                if (child + 1 < n && heapKeys[child + 1] < heapKeys[child]) child++;
+                if (key <= heapKeys[child]) break;
+                heapKeys[i] = heapKeys[child];
+                heapNodes[i] = heapNodes[child];
+                i = child;
+            }
+            heapKeys[i] = key;
+            heapNodes[i] = id;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,404 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import com.battle.heroes.army.programs.UnitTargetPathFinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Планы ходов боя, рассчитанные заранее в рабочих потоках ({@link SimulateBattleImpl#setPlanningThreads}).
+ * <p>
+ * Перед каждым ходом (значит, и в начале раунда, и после каждой гибели) ближайшие по очереди юниты, у которых нет
+ * верного плана, отдаются рабочим потокам: по неизменяемому снимку доски ({@link OccupancyGrid.Snapshot}) и
+ * клеткам, снятым в потоке боя, строится один BFS от юнита сразу ко всем живым юнитам противника
+ * ({@link GridSearch#bfsToGoals}) — какую цель выберет программа, заранее не известно. Путь к каждой цели тот же,
+ * что у отдельного BFS к ней: там остальные цели заняты, здесь они не раскрываются. Поток боя тем временем
+ * играет текущий ход и ждёт план, только если программа попросила путь раньше, чем план готов. Окно — столько
+ * ходов, сколько потоков, и ещё один: на доске 27x21 почти каждая гибель меняет поиск почти каждого юнита, и
+ * планы дальней части очереди всё равно пришлось бы строить заново.
+ * <p>
+ * План хранит дерево BFS — глубину и предка каждой открытой клетки. Путь длины {@code L} остаётся тем же, пока
+ * не заняли клетку глубины меньше {@code L} и не освободили клетку рядом с клеткой глубины меньше {@code L - 1}:
+ * остальные изменения доски поиск к этой цели не заметил бы. Если план не подходит, программа ищет путь как
+ * обычно, так что итог боя тот же, что без планирования. Цель программа выбирает сама (со своим
+ * перемешиванием) — план на выбор не влияет.
+ * <p>
+ * План отдаётся, только если программа просит путь по той же занятости, что у доски боя: живые юниты её списка
+ * (или её снимок) стоят ровно на занятых клетках доски. Иначе — обычный поиск по тому, что передала программа.
+ * <p>
+ * Планы хранит и отдаёт поток боя, создавший планировщик; рабочие потоки юнитов не читают. Пул потоков
+ * принадлежит симулятору и переживает планировщик.
+ */
+final class MovePlanner implements AutoCloseable {
+
+    /**
+     * На доске больше этого планы не строятся: глубина и предок клетки (обе меньше {@code 2^15}) упакованы в один
+     * неотрицательный {@code int}.
+     */
+    static final int MAX_CELLS = 1 << 15;
+
+    /** Сколько путей отдано из планов за всё время — для тестов, которым метрики не включить. */
+    static final LongAdder SERVED = new LongAdder();
+
+    private static final ThreadLocal<MovePlanner> ACTIVE = new ThreadLocal<>();
+    private static final int[] NO_CHANGES = new int[0];
+
+    private final int threads;
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final OccupancyGrid grid;
+    private final List<Unit> playerUnits;
+    private final List<Unit> computerUnits;
+
+    private final Map<Unit, Pending> plans = new IdentityHashMap<>();
+    // поиск пути программы юнита; null — программа не ищет путь через UnitTargetPathFinderImpl в режиме BFS
+    private final Map<Unit, UnitTargetPathFinderImpl> finders = new IdentityHashMap<>();
+    // изменения доски от снимка плана до версии changesVersion: клетка * 2 + 1, если клетка освободилась
+    private final Map<OccupancyGrid.Snapshot, int[]> changes = new IdentityHashMap<>();
+    private long changesVersion = -1;
+
+    /**
+     * Планировщик боя на {@code grid} с рабочими потоками {@code pool}; обслуживает вызывающий поток до
+     * {@link #close()}.
+     */
+    MovePlanner(ForkJoinPool pool, OccupancyGrid grid, List<Unit> playerUnits, List<Unit> computerUnits) {
+        this.threads = pool.getParallelism();
+        this.pool = pool;
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.grid = grid;
+        this.playerUnits = playerUnits;
+        this.computerUnits = computerUnits;
+        ACTIVE.set(this);
+    }
+
+    /**
+     * Путь из плана текущего потока для {@code finder}, если план его покрывает, он ещё верен и занятость запроса
+     * ({@code existingUnitList} или {@code occupancy}, если он задан) совпадает с доской боя; иначе {@code null} —
+     * путь нужно искать.
+     */
+    static List<Edge> plannedPath(UnitTargetPathFinderImpl finder, Unit attackUnit, Unit targetUnit,
+                                  List<Unit> existingUnitList, OccupancyGrid.Snapshot occupancy) {
+        MovePlanner planner = ACTIVE.get();
+        if (planner == null) return null;
+        List<Edge> path = planner.path(finder, attackUnit, targetUnit, existingUnitList, occupancy);
+        if (path != null) SERVED.increment();
+        if (HeroesMetrics.ENABLED) {
+            HeroesMetrics.increment(path != null
+                    ? HeroesMetrics.Counter.PLANNED_PATH_HITS
+                    : HeroesMetrics.Counter.PLANNED_PATH_MISSES);
+        }
+        return path;
+    }
+
+    /**
+     * Готовит планы перед очередным ходом ({@code playerTurn} — чей ход), не дожидаясь их: юниты окна, у которых
+     * плана нет или он устарел хотя бы для одной цели, отдаются рабочим потокам вместе со снимком доски и клетками
+     * юнитов на момент вызова.
+     */
+    void refresh(TurnScheduler turns, boolean playerTurn) {
+        List<Unit> window = new ArrayList<>();
+        List<Boolean> sides = new ArrayList<>();
+        window(turns, playerTurn, threads + 1, window, sides);
+        // планы тех, кто уже походил или ещё далеко, не держим: они почти наверняка устареют
+        plans.entrySet().removeIf(e -> {
+            if (containsUnit(window, e.getKey())) return false;
+            e.getValue().task.cancel(false);
+            return true;
+        });
+
+        OccupancyGrid.Snapshot snapshot = grid.snapshot();
+        List<Unit> computerTargets = null;
+        List<Unit> playerTargets = null;
+        for (int i = 0; i < window.size(); i++) {
+            Unit u = window.get(i);
+            int start = cellOf(u);
+            if (finderOf(u) == null || start < 0) continue;
+            // цели — все живые юниты армии противника
+            List<Unit> targets;
+            if (sides.get(i)) {
+                if (computerTargets == null) computerTargets = alive(computerUnits);
+                targets = computerTargets;
+            } else {
+                if (playerTargets == null) playerTargets = alive(playerUnits);
+                targets = playerTargets;
+            }
+
+            Pending pending = plans.get(u);
+            if (pending != null) {
+                // недостроенный план по текущей доске ещё пригодится, достроенный — если верен для всех целей
+                boolean useful = pending.task.isDone()
+                        ? covers(pending.task.join(), targets)
+                        : pending.snapshot == snapshot && pending.start == start;
+                if (useful) continue;
+                pending.task.cancel(false);
+            }
+            Job job = job(u, start, targets, snapshot);
+            plans.put(u, new Pending(snapshot, start, pool.submit(() -> plan(job))));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ACTIVE.get() == this) ACTIVE.remove();
+        // пул общий для боёв симулятора: недостроенные планы этого боя ему больше не нужны
+        for (Pending pending : plans.values()) {
+            pending.task.cancel(false);
+        }
+        plans.clear();
+    }
+
+    /**
+     * Следующие {@code size} ходов, если никто не погибнет (стороны чередуются, пустая сторона пропускается):
+     * юниты — в {@code window}, {@code true} для юнитов игрока — в {@code sides}.
+     */
+    private static void window(TurnScheduler turns, boolean playerTurn, int size, List<Unit> window,
+                               List<Boolean> sides) {
+        List<Unit> player = new ArrayList<>();
+        List<Unit> computer = new ArrayList<>();
+        turns.pending(true, player);
+        turns.pending(false, computer);
+
+        int p = 0;
+        int c = 0;
+        boolean playerNext = playerTurn;
+        while (window.size() < size && (p < player.size() || c < computer.size())) {
+            boolean fromPlayer = playerNext ? p < player.size() : c >= computer.size();
+            window.add(fromPlayer ? player.get(p++) : computer.get(c++));
+            sides.add(fromPlayer);
+            playerNext = !playerNext;
+        }
+    }
+
+    private static List<Unit> alive(List<Unit> units) {
+        List<Unit> alive = new ArrayList<>(units.size());
+        for (Unit u : units) {
+            if (u != null && u.isAlive()) alive.add(u);
+        }
+        return alive;
+    }
+
+    private static boolean containsUnit(List<Unit> units, Unit u) {
+        for (Unit x : units) {
+            if (x == u) return true;
+        }
+        return false;
+    }
+
+    private UnitTargetPathFinderImpl finderOf(Unit u) {
+        if (finders.containsKey(u)) return finders.get(u);
+        UnitTargetPathFinder finder = ProgramCloner.pathFinder(u.getProgram());
+        UnitTargetPathFinderImpl planned = null;
+        if (finder instanceof UnitTargetPathFinderImpl impl && impl.getMode() == UnitTargetPathFinderImpl.Mode.BFS
+                && impl.getBoard().getWidth() == width && impl.getBoard().getHeight() == height) {
+            planned = impl;
+        }
+        finders.put(u, planned);
+        return planned;
+    }
+
+    /** Задание для рабочего потока: всё, что нужно поиску, снято в потоке боя. */
+    private Job job(Unit unit, int start, List<Unit> targets, OccupancyGrid.Snapshot snapshot) {
+        Unit[] planned = targets.toArray(new Unit[0]);
+        int[] ends = new int[planned.length];
+        for (int i = 0; i < planned.length; i++) {
+            ends[i] = cellOf(planned[i]);
+        }
+        return new Job(unit, start, planned, ends, snapshot);
+    }
+
+    /** Строится в рабочем потоке: юнитов не читает, только клетки и снимок из задания. */
+    private Plan plan(Job job) {
+        long started = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
+        GridSearch search = GridSearch.local(width, height);
+        search.begin();
+        search.useOccupancy(job.snapshot);
+
+        int start = job.start;
+        int goals = 0;
+        for (int cell : job.ends) {
+            if (cell < 0 || cell == start || search.isGoal(cell)) continue;
+            search.goal(cell);
+            goals++;
+        }
+        int nearest = (goals > 0) ? search.bfsToGoals(start, goals) : -1;
+        if (HeroesMetrics.ENABLED) {
+            HeroesMetrics.pathSearchFinished(started, "PLANNED", search.expanded(), nearest >= 0);
+        }
+
+        int[] tree = new int[width * height];
+        for (int c = 0; c < tree.length; c++) {
+            int d = search.distanceTo(c);
+            tree[c] = (d < 0) ? -1 : d << 16 | ((c == start) ? c : search.parentOf(c));
+        }
+        return new Plan(job.unit, job.snapshot, start, tree, job.targets, job.ends);
+    }
+
+    private List<Edge> path(UnitTargetPathFinderImpl finder, Unit attackUnit, Unit targetUnit,
+                            List<Unit> existingUnitList, OccupancyGrid.Snapshot occupancy) {
+        Pending pending = plans.get(attackUnit);
+        if (pending == null || finders.get(attackUnit) != finder) return null;
+        // план ближайшего хода обычно уже готов; если нет — ждём его, он уже в работе
+        Plan plan = pending.task.join();
+        if (!isValid(plan, targetUnit)) return null;
+
+        int end = cellOf(targetUnit);
+        if (!matchesBoard(existingUnitList, occupancy, plan.start, end)) return null;
+        if (plan.tree[end] < 0) return new ArrayList<>();
+        int length = plan.tree[end] >>> 16;
+
+        // как у поиска: свой изменяемый список на каждый вызов
+        Edge[] cells = new Edge[length + 1];
+        for (int i = length, c = end; i >= 0; i--, c = plan.tree[c] & 0xFFFF) {
+            cells[i] = new Edge(c % width, c / width);
+        }
+        return new ArrayList<>(Arrays.asList(cells));
+    }
+
+    /**
+     * Поиск по занятости запроса прошёл бы по тем же клеткам, что по доске боя: занятые клетки совпадают везде,
+     * кроме клеток атакующего и цели (их поиск не проверяет).
+     */
+    private boolean matchesBoard(List<Unit> existingUnitList, OccupancyGrid.Snapshot occupancy, int start, int end) {
+        long[] board = grid.snapshot().words();
+        long[] asked;
+        if (occupancy != null) {
+            if (occupancy.getWidth() != width || occupancy.getHeight() != height) return false;
+            asked = occupancy.words();
+        } else {
+            asked = new long[board.length];
+            if (existingUnitList != null) {
+                for (Unit u : existingUnitList) {
+                    if (u == null || !u.isAlive()) continue;
+                    int c = cellOf(u);
+                    if (c >= 0) asked[c >>> 6] |= 1L << c;
+                }
+            }
+        }
+        for (int w = 0; w < board.length; w++) {
+            long mask = -1L;
+            if (start >>> 6 == w) mask &= ~(1L << start);
+            if (end >>> 6 == w) mask &= ~(1L << end);
+            if (((asked[w] ^ board[w]) & mask) != 0) return false;
+        }
+        return true;
+    }
+
+    /** План верен для каждой цели, к которой программа могла бы запросить путь. */
+    private boolean covers(Plan plan, List<Unit> targets) {
+        for (Unit t : targets) {
+            if (!isValid(plan, t)) return false;
+        }
+        return true;
+    }
+
+    /** Путь плана к {@code target} совпадёт с тем, что BFS нашёл бы на доске сейчас. */
+    private boolean isValid(Plan plan, Unit target) {
+        int i = plan.indexOf(target);
+        if (i < 0 || !target.isAlive()) return false;
+        // атакующий и цель стоят там же, где при поиске
+        int end = plan.ends[i];
+        if (end < 0 || end == plan.start || cellOf(target) != end || cellOf(plan.unit) != plan.start) return false;
+        int[] changed = changesSince(plan.snapshot);
+        if (changed.length == 0) return true;
+
+        // до недостижимой цели BFS обходит всю свою область
+        int length = (plan.tree[end] < 0) ? Integer.MAX_VALUE : plan.tree[end] >>> 16;
+        for (int code : changed) {
+            int cell = code >>> 1;
+            if (cell == end) return false;
+            if ((code & 1) != 0) {
+                // освободилась: BFS раскрыл бы её, если рядом есть клетка глубины меньше L - 1
+                if (nearDepthBelow(plan, cell, length - 1)) return false;
+            } else if (depthBelow(plan, cell, length)) {
+                // заняли клетку, через которую BFS уже прошёл
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean depthBelow(Plan plan, int cell, int limit) {
+        int node = plan.tree[cell];
+        return node >= 0 && (node >>> 16) < limit;
+    }
+
+    private boolean nearDepthBelow(Plan plan, int cell, int limit) {
+        int x = cell % width;
+        int y = cell / width;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = x + dx;
+                int ny = y + dy;
+                if ((dx == 0 && dy == 0) || nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+                if (depthBelow(plan, ny * width + nx, limit)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Клетки, занятость которых изменилась со снимка {@code since}; считаются раз на версию доски. */
+    private int[] changesSince(OccupancyGrid.Snapshot since) {
+        OccupancyGrid.Snapshot now = grid.snapshot();
+        if (now == since) return NO_CHANGES;
+        if (changesVersion != now.version()) {
+            changes.clear();
+            changesVersion = now.version();
+        }
+        return changes.computeIfAbsent(since, s -> diff(s.words(), now.words()));
+    }
+
+    private static int[] diff(long[] before, long[] after) {
+        int[] result = new int[8];
+        int size = 0;
+        for (int w = 0; w < before.length; w++) {
+            long changed = before[w] ^ after[w];
+            while (changed != 0) {
+                int bit = Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                boolean freed = (before[w] & (1L << bit)) != 0;
+                result[size++] = (((w << 6) + bit) << 1) | (freed ? 1 : 0);
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private int cellOf(Unit u) {
+        int x = u.getxCoordinate();
+        int y = u.getyCoordinate();
+        if (x < 0 || x >= width || y < 0 || y >= height) return -1;
+        return y * width + x;
+    }
+
+    private record Job(Unit unit, int start, Unit[] targets, int[] ends, OccupancyGrid.Snapshot snapshot) {
+    }
+
+    /** План в работе или готовый; {@code snapshot} и {@code start} — с чем он строится. */
+    private record Pending(OccupancyGrid.Snapshot snapshot, int start, ForkJoinTask<Plan> task) {
+    }
+
+    /**
+     * Дерево BFS одного юнита по снимку: {@code tree[c]} — глубина клетки в старших 16 битах и её предок в младших,
+     * {@code -1} — клетка не открыта. {@code targets} — цели, к которым шёл поиск, {@code ends} — их клетки.
+     */
+    private record Plan(Unit unit, OccupancyGrid.Snapshot snapshot, int start, int[] tree, Unit[] targets,
+                        int[] ends) {
+
+        int indexOf(Unit target) {
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] == target) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+
+import java.util.List;
+
+/**
+ * Результат {@link UnitTargetPathFinderImpl#findNearestTarget}: ближайшая достижимая цель,
+ * путь до неё и расстояния до всех кандидатов.
+ */
+public final class NearestTargetPath {
+
+    private final Unit target;
+    private final List<Edge> path;
+    private final int[] distances;
+
+    NearestTargetPath(Unit target, List<Edge> path, int[] distances) {
+        this.target = target;
+        this.path = path;
+        this.distances = distances;
+    }
+
+    /** Ближайшая достижимая цель или null, если недостижимы все. */
+    public Unit getTarget() {
+        return target;
+    }
+
+    /** Путь до {@link #getTarget()} (от атакующего до цели включительно); пустой, если цели нет. */
+    public List<Edge> getPath() {
+        return path;
+    }
+
+    /** Число ходов до i-го кандидата (в порядке входного списка); -1 — недостижим, мёртв или null. */
+    public int getDistance(int candidateIndex) {
+        return distances[candidateIndex];
+    }
+
+    public int getCandidateCount() {
+        return distances.length;
+    }
+}
@@ -0,0 +1,230 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Занятость доски живыми юнитами, которую бой ведёт инкрементально.
+ * <p>
+ * Хранится битсетом {@code long[]} (бит клетки {@code y * width + x}, для 27x21 — 567 бит в 9 словах)
+ * плюс счётчик юнитов на клетку, чтобы два юнита на одной клетке не «освобождали» её дважды.
+ * Обновляется событиями {@link #onUnitMoved} и {@link #onUnitDied}, каждое — O(1), так что стоимость
+ * запроса к пути больше не зависит от размера армий. Каждое изменение увеличивает {@link #version()},
+ * по которому можно инвалидировать кэши.
+ * <p>
+ * Параллельно ведётся Zobrist-хэш множества занятых клеток ({@link #zobristHash()}): XOR ключей
+ * {@link #zobristKey(int)} всех занятых клеток, при каждом изменении бита пересчитывается за O(1).
+ * Одинаковая занятость всегда даёт одинаковый хэш, поэтому он годится как ключ кэша путей.
+ * <p>
+ * Для поиска пути отдаётся неизменяемый {@link Snapshot}. Снимок делит массив с доской, пока она
+ * не изменится (copy-on-write), поэтому снимок на каждый запрос почти ничего не стоит.
+ * Класс не потокобезопасен: меняет доску только владелец боя.
+ */
+public final class OccupancyGrid {
+
+    public static final int DEFAULT_WIDTH = BoardConfig.DEFAULT.getWidth();
+    public static final int DEFAULT_HEIGHT = BoardConfig.DEFAULT.getHeight();
+
+    private final int width;
+    private final int height;
+    private final byte[] counts;
+    private final Map<Unit, Integer> cellByUnit = new IdentityHashMap<>();
+
+    private long[] words;
+    private boolean shared;
+    private long version;
+    private long zobrist;
+    private Snapshot snapshot;
+
+    public OccupancyGrid() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    public OccupancyGrid(BoardConfig board) {
+        this(board.getWidth(), board.getHeight());
+    }
+
+    public OccupancyGrid(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Board size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.counts = new byte[width * height];
+        this.words = new long[(width * height + 63) >>> 6];
+    }
+
+    /** Доска 27x21, на которой отмечены все живые юниты из {@code units}. */
+    public static OccupancyGrid of(Iterable<Unit> units) {
+        return of(BoardConfig.DEFAULT, units);
+    }
+
+    public static OccupancyGrid of(BoardConfig board, Iterable<Unit> units) {
+        OccupancyGrid grid = new OccupancyGrid(board);
+        if (units != null) {
+            for (Unit u : units) {
+                grid.add(u);
+            }
+        }
+        return grid;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Номер версии доски; меняется при каждом изменении занятости. */
+    public long version() {
+        return version;
+    }
+
+    /** Zobrist-хэш множества занятых клеток. */
+    public long zobristHash() {
+        return zobrist;
+    }
+
+    /**
+     * Zobrist-ключ клетки {@code y * width + x}. Ключи детерминированы (не зависят от запуска),
+     * поэтому хэши одинаковой занятости совпадают между досками и процессами.
+     */
+    public static long zobristKey(int cell) {
+        // финализатор SplitMix64 от «золотого» шага — вместо таблицы случайных чисел
+        return SplitMix.mix((cell + 1) * SplitMix.GAMMA);
+    }
+
+    public boolean isOccupied(int x, int y) {
+        if (!inBounds(x, y)) return false;
+        int c = y * width + x;
+        return (words[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /** Отмечает живого юнита на его текущей клетке (повторное добавление игнорируется). */
+    public void add(Unit u) {
+        if (u == null || !u.isAlive() || cellByUnit.containsKey(u)) return;
+        int x = u.getxCoordinate();
+        int y = u.getyCoordinate();
+        if (!inBounds(x, y)) return;
+
+        int c = y * width + x;
+        cellByUnit.put(u, c);
+        occupy(c);
+        version++;
+    }
+
+    /** Юнит ушёл со своей прежней клетки на текущую ({@code getxCoordinate/getyCoordinate}). */
+    public void onUnitMoved(Unit u) {
+        Integer from = cellByUnit.get(u);
+        if (from == null) {
+            add(u);
+            return;
+        }
+        int x = u.getxCoordinate();
+        int y = u.getyCoordinate();
+        int to = inBounds(x, y) ? y * width + x : -1;
+        if (to == from) return;
+
+        release(from);
+        if (to < 0) {
+            cellByUnit.remove(u);
+        } else {
+            cellByUnit.put(u, to);
+            occupy(to);
+        }
+        version++;
+    }
+
+    /** Юнит погиб — его клетка освобождается (повторный вызов ничего не делает). */
+    public void onUnitDied(Unit u) {
+        Integer c = cellByUnit.remove(u);
+        if (c == null) return;
+        release(c);
+        version++;
+    }
+
+    /** Неизменяемый снимок текущей занятости; пока доска не меняется, возвращается тот же объект. */
+    public Snapshot snapshot() {
+        if (snapshot == null || snapshot.version != version) {
+            shared = true;
+            snapshot = new Snapshot(width, height, words, version, zobrist);
+        }
+        return snapshot;
+    }
+
+    private void occupy(int c) {
+        if (counts[c]++ == 0) {
+            mutableWords()[c >>> 6] |= 1L << c;
+            zobrist ^= zobristKey(c);
+        }
+    }
+
+    private void release(int c) {
+        if (--counts[c] == 0) {
+            mutableWords()[c >>> 6] &= ~(1L << c);
+            zobrist ^= zobristKey(c);
+        }
+    }
+
+    private long[] mutableWords() {
+        if (shared) {
+            words = words.clone();
+            shared = false;
+        }
+        return words;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /** Неизменяемый снимок занятости доски на момент {@link #version()}. */
+    public static final class Snapshot {
+
+        private final int width;
+        private final int height;
+        private final long[] words;
+        private final long version;
+        private final long zobrist;
+
+        private Snapshot(int width, int height, long[] words, long version, long zobrist) {
+            this.width = width;
+            this.height = height;
+            this.words = words;
+            this.version = version;
+            this.zobrist = zobrist;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        /** Zobrist-хэш множества занятых клеток снимка. */
+        public long zobristHash() {
+            return zobrist;
+        }
+
+        public boolean isOccupied(int x, int y) {
+            if (x < 0 || x >= width || y < 0 || y >= height) return false;
+            int c = y * width + x;
+            return (words[c >>> 6] & (1L << c)) != 0;
+        }
+
+        /** Битсет занятости; только для чтения ядром поиска. */
+        long[] words() {
+            return words;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Поиск армии компьютера симуляцией боёв: восхождение к вершине по составу и расстановке.
+ * <p>
+ * Кандидат — владелец каждой клетки стороны компьютера (номер шаблона или {@code -1}), так что состав
+ * и расстановка меняются одними и теми же мутациями: поменять местами две клетки, сменить тип юнита,
+ * добавить юнита в пустую клетку, убрать юнита. Оценка — средний результат {@code battles} боёв против
+ * эталонной армии игрока без лога ({@link BattleBatchRunner#runOne}): победа — 1, ничья — 1/2, поражение — 0,
+ * и из этого {@link #MARGIN_WEIGHT} отдано доле уничтоженных юнитов эталона. Без этой доли у заведомо
+ * слабых армий все соседи давали бы одинаковый ноль, и подниматься было бы некуда.
+ * <p>
+ * Каждое поколение — лучший кандидат и несколько его мутантов, они оцениваются параллельно в
+ * {@link ForkJoinPool} на новых боях. Программы библиотеки перемешивают цели без seed, так что оценка шумная:
+ * лучший переигрывается в каждом поколении, и его оценка — среднее по всем сыгранным им боям. Иначе один
+ * удачный прогон закрепил бы случайного кандидата, и мутанты с честной оценкой его бы уже не обошли.
+ * Кандидат бросают, не доиграв его бои, если он явно проигрывает лучшему: даже все оставшиеся бои с высшей
+ * оценкой не дадут больше, или его средняя оценка больше чем на {@link #CUT_SIGMAS} стандартных ошибки ниже
+ * оценки лучшего.
+ * Поиск останавливается по времени; недоигранные к сроку кандидаты не учитываются.
+ */
+final class PresetSearch {
+
+    /** Сколько боёв до отсечения по стандартной ошибке — раньше оценка дисперсии ненадёжна. */
+    private static final int MIN_BATTLES_BEFORE_CUT = 8;
+    /** На сколько стандартных ошибок кандидат должен отставать от лучшего, чтобы его бросить. */
+    static final double CUT_SIGMAS = 2.5;
+
+    /** Доля оценки боя, которая зависит от числа уничтоженных юнитов эталона, а не от исхода. */
+    static final double MARGIN_WEIGHT = 0.1;
+
+    private static final int ATTEMPTS_PER_MUTATION = 16;
+
+    private final Army referenceArmy;
+    private final int battles;
+    private final long budgetNanos;
+    private final int parallelism;
+
+    PresetSearch(Army referenceArmy, int battles, long budgetMillis, int parallelism) {
+        if (battles <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Battles and parallelism must be positive");
+        }
+        this.referenceArmy = Objects.requireNonNull(referenceArmy, "referenceArmy");
+        this.battles = battles;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Лучшая найденная расстановка, начиная со {@code start} (владельцы клеток, см. описание класса).
+     * {@code allowed[j]} — можно ли брать шаблон {@code j}, {@code cap} — лимит юнитов на шаблон.
+     * {@code build} превращает владельцев клеток в армию компьютера.
+     */
+    Result search(List<Unit> templates, boolean[] allowed, int cap, int maxPoints, int[] start,
+                  Function<int[], Army> build, long seed) {
+        long deadline = System.nanoTime() + budgetNanos;
+        SplittableRandom rnd = new SplittableRandom(seed);
+
+        int[] best = start.clone();
+        Score bestScore = null;
+        int evaluated = 0;
+        int cut = 0;
+        int generations = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // в каждом поколении первым идёт лучший кандидат (в поколении 0 — стартовый), за ним его мутанты
+            List<int[]> generation = mutants(best, templates, allowed, cap, maxPoints, rnd);
+            while (generation.size() > 1 && System.nanoTime() < deadline) {
+                double threshold = (bestScore == null) ? -1 : bestScore.rate();
+                long batchSeed = rnd.nextLong();
+                List<Callable<Score>> tasks = new ArrayList<>(generation.size());
+                for (int i = 0; i < generation.size(); i++) {
+                    int[] owner = generation.get(i);
+                    // лучшего не отсекаем: его бои идут в общую оценку
+                    double bound = (i == 0) ? -1 : threshold;
+                    tasks.add(() -> evaluate(build.apply(owner), bound, batchSeed, deadline));
+                }
+
+                List<Future<Score>> futures = pool.invokeAll(tasks);
+                for (int i = 0; i < futures.size(); i++) {
+                    Score score = futures.get(i).get();
+                    if (score == null) continue;
+                    evaluated++;
+                    if (i == 0) {
+                        bestScore = (bestScore == null) ? score : bestScore.plus(score);
+                    } else if (score.cut) {
+                        cut++;
+                    } else if (bestScore == null || score.rate() > bestScore.rate()) {
+                        best = generation.get(i);
+                        bestScore = score;
+                    }
+                }
+                generations++;
+
+                generation = mutants(best, templates, allowed, cap, maxPoints, rnd);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Preset search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(best, bestScore == null ? Double.NaN : bestScore.rate(), generations, evaluated, cut);
+    }
+
+    /**
+     * Бои кандидата против эталона. {@code null} — не успели до срока; {@code cut} — отсечён,
+     * потому что уже не может обойти результат {@code threshold}.
+     */
+    private Score evaluate(Army computer, double threshold, long batchSeed, long deadline) {
+        SimulateBattleImpl simulator = new SimulateBattleImpl();
+        simulator.setLogSink(BattleLogSink.NONE);
+        BattleBatchRunner.MatchupFactory factory = seed -> new Army[]{referenceArmy, computer};
+        int referenceUnits = 0;
+        for (Unit u : referenceArmy.getUnits()) {
+            if (u != null && u.isAlive()) referenceUnits++;
+        }
+
+        double total = 0;
+        double squares = 0;
+        for (int k = 0; k < battles; k++) {
+            if (System.nanoTime() >= deadline) return null;
+            BattleBatchRunner.BattleResult r = BattleBatchRunner.runOne(simulator, factory, batchSeed, k);
+            double score = battleScore(r, referenceUnits);
+            total += score;
+            squares += score * score;
+
+            // оценка боя не больше 1, поэтому «все оставшиеся бои — единицы» — точная верхняя граница
+            int played = k + 1;
+            boolean losing = (total + (battles - played)) / battles <= threshold;
+            if (!losing && played >= MIN_BATTLES_BEFORE_CUT && played < battles) {
+                double mean = total / played;
+                double variance = Math.max(0, squares / played - mean * mean) * played / (played - 1);
+                losing = mean + CUT_SIGMAS * Math.sqrt(variance / played) < threshold;
+            }
+            if (losing) return new Score(total, played, true);
+        }
+        return new Score(total, battles, false);
+    }
+
+    private static double battleScore(BattleBatchRunner.BattleResult r, int referenceUnits) {
+        double outcome = switch (r.getWinner()) {
+            case COMPUTER -> 1.0;
+            case DRAW -> 0.5;
+            case PLAYER -> 0.0;
+        };
+        int survivors = 0;
+        for (int n : r.getPlayerSurvivors().values()) {
+            survivors += n;
+        }
+        double destroyed = (referenceUnits == 0)
+                ? 1.0 : 1.0 - (double) Math.min(survivors, referenceUnits) / referenceUnits;
+        return (1 - MARGIN_WEIGHT) * outcome + MARGIN_WEIGHT * destroyed;
+    }
+
+    /** {@code owner} и до {@code 2 · parallelism - 1} его мутантов — по два кандидата на поток. */
+    private List<int[]> mutants(int[] owner, List<Unit> templates, boolean[] allowed, int cap, int maxPoints,
+                                SplittableRandom rnd) {
+        List<int[]> result = new ArrayList<>(parallelism * 2);
+        result.add(owner);
+        for (int i = 1; i < parallelism * 2; i++) {
+            int[] mutant = mutate(owner, templates, allowed, cap, maxPoints, rnd);
+            if (mutant != null) result.add(mutant);
+        }
+        return result;
+    }
+
+    /** Мутант {@code owner}, соблюдающий бюджет и лимиты; {@code null}, если допустимый не нашёлся. */
+    private static int[] mutate(int[] owner, List<Unit> templates, boolean[] allowed, int cap, int maxPoints,
+                                SplittableRandom rnd) {
+        int n = templates.size();
+        int cells = owner.length;
+        int[] counts = new int[n];
+        int points = 0;
+        for (int o : owner) {
+            if (o < 0) continue;
+            counts[o]++;
+            points += templates.get(o).getCost();
+        }
+
+        for (int attempt = 0; attempt < ATTEMPTS_PER_MUTATION; attempt++) {
+            int[] next = owner.clone();
+            int a = rnd.nextInt(cells);
+            int op = rnd.nextInt(100);
+            if (op < 40) {
+                // другая клетка: перестановка двух юнитов или переход юнита в пустую клетку
+                int b = rnd.nextInt(cells);
+                if (next[a] == next[b]) continue;
+                next[a] = owner[b];
+                next[b] = owner[a];
+                return next;
+            }
+
+            int from = owner[a];
+            int to = (op < 85) ? rnd.nextInt(n) : -1; // 40..84 — сменить/добавить юнита, 85..99 — убрать
+            if (to == from || (to >= 0 && (!allowed[to] || counts[to] >= cap))) continue;
+            int delta = ((to >= 0) ? templates.get(to).getCost() : 0)
+                    - ((from >= 0) ? templates.get(from).getCost() : 0);
+            if (points + delta > maxPoints) continue;
+            next[a] = to;
+            return next;
+        }
+        return null;
+    }
+
+    private static final class Score {
+        final double total;
+        final int played;
+        final boolean cut;
+
+        Score(double total, int played, boolean cut) {
+            this.total = total;
+            this.played = played;
+            this.cut = cut;
+        }
+
+        double rate() {
+            return played == 0 ? 0.0 : total / played;
+        }
+
+        /** Оценка по боям обоих прогонов одного кандидата. */
+        Score plus(Score other) {
+            return new Score(total + other.total, played + other.played, false);
+        }
+    }
+
+    /** Итог поиска: лучшая расстановка и её оценка, плюс счётчики для диагностики. */
+    static final class Result {
+        final int[] owner;
+        final double score;
+        final int generations;
+        final int evaluated;
+        final int cut;
+
+        Result(int[] owner, double score, int generations, int evaluated, int cut) {
+            this.owner = owner;
+            this.score = score;
+            this.generations = generations;
+            this.evaluated = evaluated;
+            this.cut = cut;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+
+/**
+ * Готовые оптимальные составы армии для всех бюджетов сразу.
+ * <p>
+ * Строится одним расчётом {@link ArmyKnapsack} до бюджета, дальше которого состав уже не меняется,
+ * поэтому {@code generate} при любом {@code maxPoints} — это поиск строки и создание юнитов.
+ * Строка — число юнитов каждого шаблона по 4 бита (лимит 11 помещается), строки идут с шагом НОД стоимостей.
+ * <p>
+ * Таблица привязана к ключу — хэшу характеристик шаблонов ({@link #keyOf}); другой набор шаблонов
+ * даёт другой ключ и, значит, новую таблицу. Формат файла (big-endian):
+ * <pre>
+ * int  magic 'HPT1'      int  версия формата     long ключ
+ * int  шаблонов          int  шаг (НОД)          int  последний бюджет   int  байт в строке
+ * byte[] строки: (последний бюджет / шаг + 1) × байт в строке
+ * </pre>
+ * Загруженный файл не читается целиком, а отображается в память ({@link FileChannel#map}).
+ */
+final class PresetTable {
+
+    static final int FORMAT_VERSION = 1;
+
+    /** Больше юнитов одного шаблона в 4 бита строки не помещается. */
+    static final int MAX_COUNT = 0xF;
+
+    private static final int MAGIC = 0x48505431; // 'HPT1'
+    private static final int HEADER_BYTES = 32;
+
+    private final long key;
+    private final int types;
+    private final int step;
+    private final int limit;
+    private final int rowBytes;
+    private final ByteBuffer data;
+
+    private PresetTable(long key, int types, int step, int limit, int rowBytes, ByteBuffer data) {
+        this.key = key;
+        this.types = types;
+        this.step = step;
+        this.limit = limit;
+        this.rowBytes = rowBytes;
+        this.data = data;
+    }
+
+    /**
+     * Ключ набора шаблонов: тип, стоимость, атака, здоровье каждого шаблона по порядку, плюс ограничения
+     * и версия формата — чтобы смена правил тоже перестраивала таблицы.
+     */
+    static long keyOf(List<Unit> templates, int maxPerType, int cells) {
+        long h = SplitMix.mix(FORMAT_VERSION * SplitMix.GAMMA ^ maxPerType ^ ((long) cells << 16));
+        for (Unit t : templates) {
+            if (t == null) {
+                h = SplitMix.mix(h + 1);
+                continue;
+            }
+            h = SplitMix.mix(h ^ String.valueOf(t.getUnitType()).hashCode());
+            h = SplitMix.mix(h ^ t.getCost());
+            h = SplitMix.mix(h ^ t.getBaseAttack());
+            h = SplitMix.mix(h ^ t.getHealth());
+        }
+        return h;
+    }
+
+    /** Таблица в памяти по готовому расчёту: строка на каждый шаг бюджета до {@link ArmyKnapsack#maxPoints()}. */
+    static PresetTable build(long key, ArmyKnapsack knapsack) {
+        int types = knapsack.types();
+        int step = knapsack.gcd();
+        int limit = knapsack.maxPoints();
+        int rowBytes = (types + 1) >>> 1;
+        int rows = limit / step + 1;
+
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + rows * rowBytes);
+        writeHeader(data, key, types, step, limit, rowBytes);
+        for (int r = 0; r < rows; r++) {
+            int[] counts = knapsack.counts(r * step);
+            int offset = HEADER_BYTES + r * rowBytes;
+            for (int j = 0; j < types; j++) {
+                int shift = (j & 1) << 2;
+                data.put(offset + (j >>> 1), (byte) (data.get(offset + (j >>> 1)) | counts[j] << shift));
+            }
+        }
+        return new PresetTable(key, types, step, limit, rowBytes, data);
+    }
+
+    /**
+     * Отображает файл таблицы в память. {@code null}, если файла нет, он повреждён
+     * или построен для других шаблонов ({@code key}/{@code types} не совпали).
+     */
+    static PresetTable load(Path file, long key, int types) {
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) return null;
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION
+                    || data.getLong(8) != key || data.getInt(16) != types) {
+                return null;
+            }
+            int step = data.getInt(20);
+            int limit = data.getInt(24);
+            int rowBytes = data.getInt(28);
+            if (step <= 0 || limit < 0 || rowBytes != (types + 1) >>> 1
+                    || size != HEADER_BYTES + (long) (limit / step + 1) * rowBytes) {
+                return null;
+            }
+            return new PresetTable(key, types, step, limit, rowBytes, data);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Пишет таблицу во временный файл рядом и переименовывает — читатели не увидят недописанный файл. */
+    void save(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer copy = data.duplicate();
+                copy.clear();
+                while (copy.hasRemaining()) {
+                    channel.write(copy);
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    long key() {
+        return key;
+    }
+
+    /**
+     * Каждая строка — допустимый состав: не больше {@code cap[j]} юнитов шаблона {@code j}, не больше
+     * {@code maxUnits} всего и не дороже бюджета строки. Ключ файла — только хэш; так проверяется, что
+     * загруженная таблица не даст армию сверх правил.
+     */
+    boolean fits(int[] cost, int[] cap, int maxUnits) {
+        if (cost.length != types || cap.length != types) return false;
+        for (int row = 0, rows = limit / step + 1; row < rows; row++) {
+            int[] counts = counts(row * step);
+            long units = 0;
+            long spent = 0;
+            for (int j = 0; j < types; j++) {
+                if (counts[j] > cap[j] || (counts[j] > 0 && cost[j] < 0)) return false;
+                units += counts[j];
+                spent += (long) counts[j] * cost[j];
+            }
+            if (units > maxUnits || spent > (long) row * step) return false;
+        }
+        return true;
+    }
+
+    /** Число юнитов каждого шаблона в оптимальной армии при бюджете {@code maxPoints}. */
+    int[] counts(int maxPoints) {
+        int row = Math.min(Math.max(0, maxPoints), limit) / step;
+        int offset = HEADER_BYTES + row * rowBytes;
+        int[] counts = new int[types];
+        for (int j = 0; j < types; j++) {
+            counts[j] = (data.get(offset + (j >>> 1)) >>> ((j & 1) << 2)) & 0xF;
+        }
+        return counts;
+    }
+
+    private static void writeHeader(ByteBuffer data, long key, int types, int step, int limit, int rowBytes) {
+        data.putInt(0, MAGIC);
+        data.putInt(4, FORMAT_VERSION);
+        data.putLong(8, key);
+        data.putInt(16, types);
+        data.putInt(20, step);
+        data.putInt(24, limit);
+        data.putInt(28, rowBytes);
+    }
+}
@@ -0,0 +1,241 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.army.programs.UnitTargetPathFinder;
+import com.battle.heroes.util.GameSpeedUtil;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Копирование программы поведения для другого юнита.
+ * <p>
+ * Создаётся экземпляр того же класса, в него копируются все поля шаблона, затем поля
+ * {@link Program} ({@code unit}, {@code allyArmy}, {@code enemyArmy}, {@code simSpeed}) привязываются заново.
+ * Программы библиотеки не имеют конструктора без аргументов, поэтому при его отсутствии берётся
+ * конструктор с наименьшим числом параметров и вызывается со значениями по умолчанию —
+ * всё, что он присвоил, затем всё равно перезаписывается копированием полей.
+ * <p>
+ * Поиск конструктора и полей делается один раз на класс программы ({@link ClassValue}): для каждого
+ * класса хранятся готовые {@link MethodHandle} конструктора и геттеров/сеттеров полей, так что копирование
+ * — только их вызовы, без {@code getDeclaredField}/{@code setAccessible} и исключений на каждый юнит.
+ */
+final class ProgramCloner {
+
+    private static final ClassValue<Shape> SHAPES = new ClassValue<>() {
+        @Override
+        protected Shape computeValue(Class<?> type) {
+            return Shape.of(type);
+        }
+    };
+
+    private ProgramCloner() {
+    }
+
+    /**
+     * Копия {@code template}, привязанная к {@code unit}; армии и скорость остаются как у шаблона.
+     * Если создать/скопировать невозможно — возвращает исходный program (fallback).
+     */
+    static Program cloneFor(Program template, Unit unit) {
+        if (template == null) return null;
+        long start = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
+        Shape shape = SHAPES.get(template.getClass());
+        Program result = template;
+        if (shape.error == null) {
+            try {
+                Program copy = shape.copy(template);
+                shape.unit.invokeExact((Object) copy, (Object) unit);
+                result = copy;
+            } catch (Throwable ignored) {
+                // fallback: исходный program
+            }
+        }
+        if (HeroesMetrics.ENABLED) HeroesMetrics.programCloned(start, result != template);
+        return result;
+    }
+
+    /**
+     * Копия {@code template} для юнита {@code unit} в бою {@code ally} против {@code enemy}.
+     * В отличие от {@link #cloneFor(Program, Unit)}, без fallback: программа, которая осталась
+     * бы привязана к чужим армиям, испортила бы исходный бой.
+     */
+    static Program cloneFor(Program template, Unit unit, Army ally, Army enemy, GameSpeedUtil speed) {
+        if (template == null) return null;
+        long start = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
+        Shape shape = SHAPES.get(template.getClass());
+        if (shape.error != null) {
+            if (HeroesMetrics.ENABLED) HeroesMetrics.programCloned(start, false);
+            throw new IllegalStateException("Cannot copy program " + template.getClass().getName(), shape.error);
+        }
+        try {
+            Program copy = shape.copy(template);
+            shape.unit.invokeExact((Object) copy, (Object) unit);
+            shape.allyArmy.invokeExact((Object) copy, (Object) ally);
+            shape.enemyArmy.invokeExact((Object) copy, (Object) enemy);
+            shape.simSpeed.invokeExact((Object) copy, (Object) speed);
+            if (HeroesMetrics.ENABLED) HeroesMetrics.programCloned(start, true);
+            return copy;
+        } catch (Throwable e) {
+            if (HeroesMetrics.ENABLED) HeroesMetrics.programCloned(start, false);
+            throw new IllegalStateException("Cannot copy program " + template.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Можно ли копировать программы класса {@code program} для другого боя; {@code true} и для {@code null} —
+     * юнит без программы копируется без неё.
+     */
+    static boolean canCopy(Program program) {
+        return program == null || SHAPES.get(program.getClass()).error == null;
+    }
+
+    /** Скорость игры, к которой привязана программа (поле {@code simSpeed}); {@code null}, если её не узнать. */
+    static GameSpeedUtil gameSpeed(Program program) {
+        if (program == null) return null;
+        Shape shape = SHAPES.get(program.getClass());
+        try {
+            Object speed = (Object) shape.simSpeedGetter.invokeExact((Object) program);
+            return (speed instanceof GameSpeedUtil) ? (GameSpeedUtil) speed : null;
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    /** Поиск пути программы (поле {@code unitTargetPathFinder}); {@code null}, если его нет. */
+    static UnitTargetPathFinder pathFinder(Program program) {
+        if (program == null) return null;
+        Shape shape = SHAPES.get(program.getClass());
+        try {
+            Object finder = (Object) shape.pathFinderGetter.invokeExact((Object) program);
+            return (finder instanceof UnitTargetPathFinder) ? (UnitTargetPathFinder) finder : null;
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Всё, что нужно для копирования программ одного класса. Если класс скопировать нельзя
+     * (нет конструктора, нет доступа), {@link #error} — причина, и она тоже запоминается.
+     */
+    private static final class Shape {
+        // () -> Object: конструктор с наименьшим числом параметров, аргументы по умолчанию уже подставлены
+        private final MethodHandle constructor;
+        // (Object) -> Object и (Object, Object) -> void для каждого нестатического поля по всей иерархии
+        private final MethodHandle[] getters;
+        private final MethodHandle[] setters;
+        // (Object, Object) -> void для полей Program; ничего не делают, если поля нет
+        private final MethodHandle unit;
+        private final MethodHandle allyArmy;
+        private final MethodHandle enemyArmy;
+        private final MethodHandle simSpeed;
+        // (Object) -> Object; возвращают null, если поля нет
+        private final MethodHandle simSpeedGetter;
+        private final MethodHandle pathFinderGetter;
+        private final ReflectiveOperationException error;
+
+        private Shape(MethodHandle constructor, MethodHandle[] getters, MethodHandle[] setters,
+                      Map<String, MethodHandle> settersByName, Map<String, MethodHandle> gettersByName,
+                      ReflectiveOperationException error) {
+            this.constructor = constructor;
+            this.getters = getters;
+            this.setters = setters;
+            this.unit = settersByName.getOrDefault("unit", NO_FIELD);
+            this.allyArmy = settersByName.getOrDefault("allyArmy", NO_FIELD);
+            this.enemyArmy = settersByName.getOrDefault("enemyArmy", NO_FIELD);
+            this.simSpeed = settersByName.getOrDefault("simSpeed", NO_FIELD);
+            this.simSpeedGetter = gettersByName.getOrDefault("simSpeed", NO_VALUE);
+            this.pathFinderGetter = gettersByName.getOrDefault("unitTargetPathFinder", NO_VALUE);
+            this.error = error;
+        }
+
+        private static final MethodHandle NO_FIELD =
+                MethodHandles.empty(MethodType.methodType(void.class, Object.class, Object.class));
+        private static final MethodHandle NO_VALUE =
+                MethodHandles.empty(MethodType.methodType(Object.class, Object.class));
+
+        static Shape of(Class<?> clazz) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle constructor = constructor(clazz, lookup);
+
+                List<MethodHandle> getters = new ArrayList<>();
+                List<MethodHandle> setters = new ArrayList<>();
+                Map<String, MethodHandle> settersByName = new HashMap<>();
+                Map<String, MethodHandle> gettersByName = new HashMap<>();
+                MethodType getterType = MethodType.methodType(Object.class, Object.class);
+                MethodType setterType = MethodType.methodType(void.class, Object.class, Object.class);
+                Class<?> c = clazz;
+                while (c != null && c != Object.class) {
+                    for (Field f : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(f.getModifiers())) continue;
+                        f.setAccessible(true);
+                        MethodHandle setter = lookup.unreflectSetter(f).asType(setterType);
+                        MethodHandle getter = lookup.unreflectGetter(f).asType(getterType);
+                        getters.add(getter);
+                        setters.add(setter);
+                        // поле подкласса с тем же именем скрывает поле предка — как в прежнем поиске по иерархии
+                        settersByName.putIfAbsent(f.getName(), setter);
+                        gettersByName.putIfAbsent(f.getName(), getter);
+                    }
+                    c = c.getSuperclass();
+                }
+                return new Shape(constructor, getters.toArray(new MethodHandle[0]),
+                        setters.toArray(new MethodHandle[0]), settersByName, gettersByName, null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                ReflectiveOperationException error = (e instanceof ReflectiveOperationException roe)
+                        ? roe : new ReflectiveOperationException(e);
+                return new Shape(null, new MethodHandle[0], new MethodHandle[0], Collections.emptyMap(),
+                        Collections.emptyMap(), error);
+            }
+        }
+
+        private static MethodHandle constructor(Class<?> clazz, MethodHandles.Lookup lookup)
+                throws ReflectiveOperationException {
+            if (Modifier.isAbstract(clazz.getModifiers())) {
+                throw new InstantiationException(clazz.getName());
+            }
+            Constructor<?>[] ctors = clazz.getDeclaredConstructors();
+            Arrays.sort(ctors, Comparator.comparingInt(Constructor::getParameterCount));
+            if (ctors.length == 0) {
+                throw new NoSuchMethodException(clazz.getName() + ".<init>");
+            }
+
+            Constructor<?> ctor = ctors[0];
+            ctor.setAccessible(true);
+            Class<?>[] types = ctor.getParameterTypes();
+            Object[] args = new Object[types.length];
+            for (int i = 0; i < types.length; i++) {
+                args[i] = defaultValue(types[i]);
+            }
+            MethodHandle handle = lookup.unreflectConstructor(ctor);
+            return MethodHandles.insertArguments(handle, 0, args).asType(MethodType.methodType(Object.class));
+        }
+
+        Program copy(Program template) throws Throwable {
+            Object copy = (Object) constructor.invokeExact();
+            for (int i = 0; i < getters.length; i++) {
+                setters[i].invokeExact(copy, (Object) getters[i].invokeExact((Object) template));
+            }
+            return (Program) copy;
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        return 0;
+    }
+}
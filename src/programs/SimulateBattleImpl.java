@@ -4,80 +4,240 @@ import com.battle.heroes.army.Army;
 import com.battle.heroes.army.Unit;
 import com.battle.heroes.army.programs.PrintBattleLog;
 import com.battle.heroes.army.programs.SimulateBattle;
+import com.battle.heroes.util.GameSpeedUtil;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class SimulateBattleImpl implements SimulateBattle {
 
     private PrintBattleLog printBattleLog;
 
+    private BoardConfig board = BoardConfig.DEFAULT;
+
+    // занятость доски текущего боя: обновляется по смертям и ходам (клетка атакующего после атаки),
+    // пути могут брать её снимки
+    private OccupancyGrid occupancyGrid = new OccupancyGrid();
+
+    // false — бой без вывода в консоль (пакетные прогоны)
+    private boolean consoleOutput = true;
+    // null — синхронный вывод через printBattleLog и консоль (DirectBattleLogSink)
+    private BattleLogSink logSink;
+    private int rounds;
+    // false — бой не попадает в метрики боёв (BATTLES, ROUNDS, время боя): его учитывает внешний simulate
+    private boolean battleMetrics = true;
+
+    // расчёт боя заранее и показ записи в темпе игры (BattleRecorder + BattlePlayback)
+    private boolean computeAhead;
+    private GameSpeedUtil playbackSpeed;
+    private Consumer<BattleTimeline> outcomeListener;
+    private BattleTimeline lastTimeline;
+    private volatile BattlePlayback playback;
+
+    // 0 — без планирования ходов (MovePlanner)
+    private int planningThreads;
+    // рабочие потоки планов: создаются к первому бою с планированием и служат всем следующим боям симулятора
+    private ForkJoinPool planningPool;
+
     public void setPrintBattleLog(PrintBattleLog printBattleLog) {
         this.printBattleLog = printBattleLog;
     }
 
-    private static final Comparator<Unit> BY_ATTACK_DESC =
-            Comparator.comparingInt(Unit::getBaseAttack).reversed();
+    /** Размер поля, на котором ведутся занятость и фронты боя ({@code null} — доска игры 27x21). */
+    public void setBoard(BoardConfig board) {
+        this.board = (board == null) ? BoardConfig.DEFAULT : board;
+    }
+
+    public void setConsoleOutput(boolean consoleOutput) {
+        this.consoleOutput = consoleOutput;
+    }
+
+    /**
+     * Куда отдавать события боя вместо синхронного вывода ({@code null} — вернуть синхронный).
+     * Например, {@link AsyncBattleLogSink} или {@link BattleLogSink#NONE}.
+     */
+    public void setLogSink(BattleLogSink logSink) {
+        this.logSink = logSink;
+    }
+
+    /** Бой — запись для другого {@code simulate}, который сам учтёт его в метриках боёв. */
+    void setBattleMetrics(boolean battleMetrics) {
+        this.battleMetrics = battleMetrics;
+    }
+
+    /** Куда сейчас отдаются события боя; {@code null} — синхронный вывод. */
+    BattleLogSink getLogSink() {
+        return logSink;
+    }
+
+    /**
+     * {@code true} — сначала бой целиком рассчитывается без пауз на копиях армий ({@link BattleRecorder}),
+     * затем запись показывается на настоящих армиях в темпе игры ({@link BattlePlayback}). Итог известен до
+     * начала показа ({@link #setOutcomeListener}), показ можно промотать ({@link #skipToEnd()}). Если программы
+     * юнитов нельзя скопировать, бой идёт как обычно.
+     */
+    public void setComputeAhead(boolean computeAhead) {
+        this.computeAhead = computeAhead;
+    }
+
+    /**
+     * Рабочих потоков для планов ходов ({@link MovePlanner}): пока идёт текущий ход, пути ближайших по очереди юнитов
+     * ко всем целям ищутся параллельно по снимку доски, а программы берут готовые. Итог боя тот же, что без
+     * планирования; выигрыш по времени — на многоядерной машине и полных армиях. {@code 0} — без планирования
+     * (по умолчанию). Действует для программ с {@link UnitTargetPathFinderImpl} в режиме BFS, на досках до
+     * {@link MovePlanner#MAX_CELLS} клеток и не при расчёте заранее ({@link #setComputeAhead}).
+     * <p>
+     * Пул рабочих потоков создаётся к первому такому бою и переиспользуется; его потоки — демоны и сами
+     * завершаются, пока боёв нет. При смене числа потоков прежний пул закрывается.
+     */
+    public void setPlanningThreads(int planningThreads) {
+        if (planningThreads < 0) {
+            throw new IllegalArgumentException("Planning threads must be non-negative: " + planningThreads);
+        }
+        if (planningThreads != this.planningThreads && planningPool != null) {
+            planningPool.shutdown();
+            planningPool = null;
+        }
+        this.planningThreads = planningThreads;
+    }
+
+    /** Скорость показа записанного боя; {@code null} — скорость из программ юнитов. */
+    public void setPlaybackSpeed(GameSpeedUtil playbackSpeed) {
+        this.playbackSpeed = playbackSpeed;
+    }
+
+    /** Получает запись боя (с итогом) сразу после расчёта, до показа; вызывается в потоке {@code simulate}. */
+    public void setOutcomeListener(Consumer<BattleTimeline> outcomeListener) {
+        this.outcomeListener = outcomeListener;
+    }
+
+    /** Запись последнего боя, рассчитанного заранее; {@code null}, если бой шёл без расчёта заранее. */
+    public BattleTimeline getLastTimeline() {
+        return lastTimeline;
+    }
+
+    /** Промотать показ идущего боя до конца (из любого потока); без показа ничего не делает. */
+    public void skipToEnd() {
+        BattlePlayback current = playback;
+        if (current != null) current.skipToEnd();
+    }
+
+    /** Число раундов последнего боя (включая недоигранный последний). */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /** Занятость доски последнего (или идущего) боя. */
+    public OccupancyGrid getOccupancyGrid() {
+        return occupancyGrid;
+    }
 
     @Override
     public void simulate(Army playerArmy, Army computerArmy) throws InterruptedException {
+        BattleLogSink log = (logSink != null)
+                ? logSink
+                : new DirectBattleLogSink(printBattleLog, consoleOutput ? System.out : null);
+        long start = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
+        try {
+            simulate(playerArmy, computerArmy, log);
+        } finally {
+            // после simulate лог боя должен быть выведен целиком
+            log.flush();
+            if (HeroesMetrics.ENABLED && battleMetrics) {
+                HeroesMetrics.battleFinished(start, rounds, aliveCount(playerArmy), aliveCount(computerArmy));
+            }
+        }
+    }
+
+    private void simulate(Army playerArmy, Army computerArmy, BattleLogSink log) throws InterruptedException {
         List<Unit> playerUnits = safeList(playerArmy);
         List<Unit> computerUnits = safeList(computerArmy);
+        lastTimeline = null;
 
+        if (computeAhead && playAhead(playerArmy, computerArmy, log)) {
+            resetBoard(playerUnits, computerUnits);
+            return;
+        }
+
+        resetBoard(playerUnits, computerUnits);
+
+        // порядок ходов сортируется один раз; погибшие убираются из очередей в момент смерти
+        TurnScheduler turns = new TurnScheduler(playerUnits, computerUnits);
+
+        if (planningThreads == 0 || board.getCells() > MovePlanner.MAX_CELLS) {
+            play(turns, log, null);
+            return;
+        }
+        if (planningPool == null) planningPool = new ForkJoinPool(planningThreads);
+        try (MovePlanner planner = new MovePlanner(planningPool, occupancyGrid, playerUnits, computerUnits)) {
+            play(turns, log, planner);
+        }
+    }
+
+    private void play(TurnScheduler turns, BattleLogSink log, MovePlanner planner) throws InterruptedException {
+        rounds = 0;
         int round = 1;
 
         // Завершаем, когда у одной из армий нет живых юнитов, способных сделать ход
-        while (hasAliveAndCanMove(playerUnits) && hasAliveAndCanMove(computerUnits)) {
-
-            // кто уже сходил в этом раунде (чтобы “восстановление очередей” не возвращало их обратно)
-            Set<Unit> actedThisRound = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (turns.bothCanMove()) {
 
-            Deque<Unit> playerQueue = buildQueue(playerUnits, actedThisRound);
-            Deque<Unit> computerQueue = buildQueue(computerUnits, actedThisRound);
+            turns.startRound();
 
             // Первый ход — у самого сильного (по атаке) среди двух армий
-            boolean playerTurn = chooseFirstTurn(playerQueue, computerQueue);
+            boolean playerTurn = turns.playerMovesFirst();
 
             boolean anyMoveThisRound = false;
 
             // Раунд идёт, пока хотя бы у одной стороны остались юниты, которые ещё не ходили в этом раунде
-            while (!playerQueue.isEmpty() || !computerQueue.isEmpty()) {
+            while (!turns.roundOver()) {
 
                 // если бой уже фактически закончился — выходим
-                if (!hasAliveAndCanMove(playerUnits) || !hasAliveAndCanMove(computerUnits)) {
+                if (!turns.bothCanMove()) {
                     return;
                 }
 
-                Unit attacker = pollNextAttacker(playerTurn, playerQueue, computerQueue);
-                if (attacker == null) {
-                    // выбранная сторона “ждёт”, ходит другая
-                    playerTurn = !playerTurn;
-                    continue;
-                }
+                // планы ближайших ходов — до того, как первый из них снят с очереди
+                if (planner != null) planner.refresh(turns, playerTurn);
 
-                // фиксируем, что этот юнит свой ход в раунде уже сделал (даже если target == null)
-                actedThisRound.add(attacker);
+                // если очередь выбранной стороны пуста, она “ждёт” и ходит другая
+                Unit attacker = turns.poll(playerTurn);
                 anyMoveThisRound = true;
+                rounds = round;
 
                 boolean attackerWasAlive = attacker.isAlive();
                 Unit target = null;
 
                 // атакует через программу поведения
                 if (attackerWasAlive && attacker.getProgram() != null) {
-                    target = attacker.getProgram().attack();
+                    if (HeroesMetrics.ENABLED) {
+                        long start = System.nanoTime();
+                        target = attacker.getProgram().attack();
+                        HeroesMetrics.attackFinished(start, attacker.getUnitType(), target != null);
+                    } else {
+                        target = attacker.getProgram().attack();
+                    }
                 }
 
                 // После каждой атаки — лог через printBattleLog (target может быть null) :contentReference[oaicite:7]{index=7}
-                logAttack(attacker, target);
+                log.onAttack(attacker, target);
 
-                boolean deathHappened =
-                        (target != null && !target.isAlive()) ||
-                                (attackerWasAlive && !attacker.isAlive());
+                // программы могут передвинуть атакующего (рыцарь подходит к цели) — переносим его клетку
+                if (attacker.isAlive()) {
+                    occupancyGrid.onUnitMoved(attacker);
+                }
 
-                // Погибшие убираются из очередей в момент смерти, очереди пересчитываются :contentReference[oaicite:8]{index=8}
-                if (deathHappened) {
-                    playerQueue = buildQueue(playerUnits, actedThisRound);
-                    computerQueue = buildQueue(computerUnits, actedThisRound);
+                // Погибшие убираются из очередей в момент смерти :contentReference[oaicite:8]{index=8}
+                if (target != null && !target.isAlive()) {
+                    occupancyGrid.onUnitDied(target);
+                    turns.onUnitDied(target);
+                    if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.UNIT_DEATHS);
+                }
+                if (attackerWasAlive && !attacker.isAlive()) {
+                    occupancyGrid.onUnitDied(attacker);
+                    turns.onUnitDied(attacker);
+                    if (HeroesMetrics.ENABLED) HeroesMetrics.increment(HeroesMetrics.Counter.UNIT_DEATHS);
                 }
 
                 // Чередование ходов
@@ -88,87 +248,61 @@ public class SimulateBattleImpl implements SimulateBattle {
                 return;
             }
 
-            System.out.println("\nRound " + round + " is over!");
-            System.out.println("Player army has " + countAlive(playerUnits) + " units");
-            System.out.println("Computer army has " + countAlive(computerUnits) + " units\n");
+            log.onRoundOver(round, turns.playerAlive(), turns.computerAlive());
 
             round++;
         }
     }
 
-    private static List<Unit> safeList(Army army) {
-        if (army == null || army.getUnits() == null) return new ArrayList<>();
-        return army.getUnits();
-    }
-
-    private static boolean hasAliveAndCanMove(List<Unit> units) {
-        for (Unit u : units) {
-            if (u != null && u.isAlive() && u.getProgram() != null) {
-                return true;
-            }
+    /** Бой через запись и показ; {@code false}, если записать бой нельзя (программы не копируются). */
+    private boolean playAhead(Army playerArmy, Army computerArmy, BattleLogSink log) throws InterruptedException {
+        BattleTimeline timeline;
+        try {
+            timeline = BattleRecorder.record(playerArmy, computerArmy);
+        } catch (IllegalStateException e) {
+            return false;
         }
-        return false;
-    }
-
-    private static int countAlive(List<Unit> units) {
-        int c = 0;
-        for (Unit u : units) {
-            if (u != null && u.isAlive()) c++;
+        lastTimeline = timeline;
+        rounds = timeline.getRounds();
+        if (outcomeListener != null) outcomeListener.accept(timeline);
+
+        GameSpeedUtil speed = (playbackSpeed != null) ? playbackSpeed : programSpeed(playerArmy, computerArmy);
+        BattlePlayback current = new BattlePlayback(timeline, playerArmy, computerArmy, log, speed);
+        playback = current;
+        try {
+            current.play();
+        } finally {
+            playback = null;
         }
-        return c;
+        return true;
     }
 
-    private static Deque<Unit> buildQueue(List<Unit> units, Set<Unit> actedThisRound) {
-        List<Unit> candidates = units.stream()
-                .filter(Objects::nonNull)
-                .filter(Unit::isAlive)
-                .filter(u -> u.getProgram() != null)       // “способен сделать ход”
-                .filter(u -> !actedThisRound.contains(u))  // ещё не ходил в этом раунде
-                .sorted(BY_ATTACK_DESC)
-                .collect(Collectors.toList());
-
-        return new ArrayDeque<>(candidates);
+    private static GameSpeedUtil programSpeed(Army playerArmy, Army computerArmy) {
+        for (Army army : new Army[]{playerArmy, computerArmy}) {
+            for (Unit u : safeList(army)) {
+                GameSpeedUtil speed = (u == null) ? null : ProgramCloner.gameSpeed(u.getProgram());
+                if (speed != null) return speed;
+            }
+        }
+        return null;
     }
 
-    private static boolean chooseFirstTurn(Deque<Unit> playerQueue, Deque<Unit> computerQueue) {
-        if (computerQueue.isEmpty()) return true;
-        if (playerQueue.isEmpty()) return false;
-
-        Unit p = playerQueue.peekFirst();
-        Unit c = computerQueue.peekFirst();
-
-        int pa = (p == null) ? Integer.MIN_VALUE : p.getBaseAttack();
-        int ca = (c == null) ? Integer.MIN_VALUE : c.getBaseAttack();
-
-        // если равны — начинает игрок
-        return pa >= ca;
+    private void resetBoard(List<Unit> playerUnits, List<Unit> computerUnits) {
+        occupancyGrid = new OccupancyGrid(board);
+        playerUnits.forEach(occupancyGrid::add);
+        computerUnits.forEach(occupancyGrid::add);
     }
 
-    private static Unit pollNextAttacker(boolean playerTurn,
-                                         Deque<Unit> playerQueue,
-                                         Deque<Unit> computerQueue) {
-        if (playerTurn) {
-            if (!playerQueue.isEmpty()) return playerQueue.pollFirst();
-            if (!computerQueue.isEmpty()) return computerQueue.pollFirst(); // игрок “ждёт”
-        } else {
-            if (!computerQueue.isEmpty()) return computerQueue.pollFirst();
-            if (!playerQueue.isEmpty()) return playerQueue.pollFirst(); // компьютер “ждёт”
+    private static int aliveCount(Army army) {
+        int alive = 0;
+        for (Unit u : safeList(army)) {
+            if (u != null && u.isAlive()) alive++;
         }
-        return null;
+        return alive;
     }
 
-    private void logAttack(Unit attacker, Unit target) {
-        if (printBattleLog != null) {
-            try {
-                printBattleLog.printBattleLog(attacker, target);
-                return;
-            } catch (RuntimeException ignored) {
-            }
-        }
-
-        // Если нет логгера или он “не принял” target == null
-        if (target == null) {
-            System.out.println("Unit can not find target for attack!");
-        }
+    private static List<Unit> safeList(Army army) {
+        if (army == null || army.getUnits() == null) return new ArrayList<>();
+        return army.getUnits();
     }
 }
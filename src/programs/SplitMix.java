@@ -0,0 +1,21 @@
+package programs;
+
+/**
+ * Финализатор SplitMix64 — общий для всех мест, где нужно перемешать биты: seed боёв пакета
+ * ({@link BattleBatchRunner}), ключ таблицы составов ({@link PresetTable}), сигнатура доски
+ * ({@link FlowFieldPathFinder}), Zobrist-ключи клеток ({@link OccupancyGrid}). Соседние входы дают несвязанные результаты.
+ */
+final class SplitMix {
+
+    /** «Золотой» шаг SplitMix64: {@code mix(x + k · GAMMA)} — k-е число последовательности от {@code x}. */
+    static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private SplitMix() {
+    }
+
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
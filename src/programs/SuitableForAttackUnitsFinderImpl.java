@@ -45,4 +45,14 @@ public class SuitableForAttackUnitsFinderImpl implements SuitableForAttackUnitsF
 
         return suitableUnits;
     }
+
+    /**
+     * То же, что списочный вариант для рядов доски — списков юнитов с одинаковым {@code y} в порядке армии, —
+     * но по готовому индексу, без перебора. Программы библиотеки передают другие списки (столбцы, {@code x == i}),
+     * для них этот вариант не равносилен списочному.
+     */
+    public List<Unit> getSuitableUnits(FrontierIndex frontier, boolean isLeftArmyTarget) {
+        if (frontier == null) return new ArrayList<>();
+        return frontier.frontier(isLeftArmyTarget);
+    }
 }
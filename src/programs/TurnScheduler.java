@@ -0,0 +1,169 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Очередь ходов боя для двух армий.
+ * <p>
+ * Порядок ходов армии (атака по убыванию, при равенстве — порядок в списке армии) сортируется один раз
+ * на весь бой. Раунд — проход курсора по этому массиву: {@link #poll} за амортизированное {@code O(1)}
+ * пропускает погибших, {@link #onUnitDied} — {@code O(1)} (поиск юнита по identity-таблице и пометка).
+ * Число живых и живых «способных ходить» юнитов каждой армии ведётся счётчиками, так что проверки
+ * конца боя не проходят по спискам.
+ * <p>
+ * Результат тот же, что у пересборки очередей после каждой смерти: очередь раунда — это
+ * отсортированные живые юниты с программой, которые ещё не ходили. Юнит, который стоит в списке армии
+ * дважды, учитывается один раз (прежние очереди ходили им дважды, пока не пересобирались после гибели).
+ */
+final class TurnScheduler {
+
+    private final Side player;
+    private final Side computer;
+
+    TurnScheduler(List<Unit> playerUnits, List<Unit> computerUnits) {
+        this.player = new Side(playerUnits);
+        this.computer = new Side(computerUnits);
+    }
+
+    /** У обеих армий есть живой юнит, способный сделать ход. */
+    boolean bothCanMove() {
+        return player.aliveCanMove > 0 && computer.aliveCanMove > 0;
+    }
+
+    /** Новый раунд: в очередях снова все живые юниты с программой. */
+    void startRound() {
+        player.startRound();
+        computer.startRound();
+    }
+
+    /** В этом раунде ходить больше некому. */
+    boolean roundOver() {
+        return player.remaining == 0 && computer.remaining == 0;
+    }
+
+    /** Первый ход — у самого сильного (по атаке) среди двух армий; если равны — начинает игрок. */
+    boolean playerMovesFirst() {
+        if (computer.remaining == 0) return true;
+        if (player.remaining == 0) return false;
+        return player.peek().getBaseAttack() >= computer.peek().getBaseAttack();
+    }
+
+    /**
+     * Следующий юнит армии, чей ход; если её очередь пуста — сторона «ждёт» и ходит другая.
+     * {@code null}, если раунд окончен.
+     */
+    Unit poll(boolean playerTurn) {
+        Side first = playerTurn ? player : computer;
+        Side second = playerTurn ? computer : player;
+        if (first.remaining > 0) return first.poll();
+        if (second.remaining > 0) return second.poll();
+        return null;
+    }
+
+    /** Юнит погиб: убирается из очереди и из счётчиков (повторный вызов ничего не делает). */
+    void onUnitDied(Unit u) {
+        if (u == null || u.isAlive()) return;
+        player.onUnitDied(u);
+        computer.onUnitDied(u);
+    }
+
+    /** Дописывает в {@code out} живых юнитов армии, которые ещё не ходили в этом раунде, в порядке ходов. */
+    void pending(boolean player, List<Unit> out) {
+        (player ? this.player : computer).pending(out);
+    }
+
+    int playerAlive() {
+        return player.alive;
+    }
+
+    int computerAlive() {
+        return computer.alive;
+    }
+
+    private static final class Side {
+
+        private final Map<Unit, Integer> slotByUnit = new IdentityHashMap<>();
+        private final Unit[] units;
+        private final boolean[] dead;
+        private final boolean[] canMove;
+        // слоты «способных ходить» юнитов в порядке ходов и позиции слотов в этом порядке
+        private final int[] order;
+        private final int[] orderPos;
+
+        private int alive;
+        private int aliveCanMove;
+        private int cursor;
+        private int remaining;
+
+        Side(List<Unit> list) {
+            int n = list.size();
+            units = new Unit[n];
+            dead = new boolean[n];
+            canMove = new boolean[n];
+            orderPos = new int[n];
+
+            int slots = 0;
+            for (Unit u : list) {
+                if (u == null || !u.isAlive() || slotByUnit.putIfAbsent(u, slots) != null) continue;
+                units[slots] = u;
+                canMove[slots] = u.getProgram() != null;
+                alive++;
+                if (canMove[slots]) aliveCanMove++;
+                slots++;
+            }
+
+            // сортировка устойчива: при равной атаке сохраняется порядок списка
+            Integer[] sorted = new Integer[aliveCanMove];
+            int size = 0;
+            for (int s = 0; s < slots; s++) {
+                if (canMove[s]) sorted[size++] = s;
+            }
+            Arrays.sort(sorted, Comparator.comparingInt((Integer s) -> units[s].getBaseAttack()).reversed());
+            order = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                order[i] = sorted[i];
+                orderPos[sorted[i]] = i;
+            }
+        }
+
+        void startRound() {
+            cursor = 0;
+            remaining = aliveCanMove;
+        }
+
+        Unit peek() {
+            while (dead[order[cursor]]) cursor++;
+            return units[order[cursor]];
+        }
+
+        Unit poll() {
+            Unit u = peek();
+            cursor++;
+            remaining--;
+            return u;
+        }
+
+        void pending(List<Unit> out) {
+            for (int i = cursor; i < order.length; i++) {
+                if (!dead[order[i]]) out.add(units[order[i]]);
+            }
+        }
+
+        void onUnitDied(Unit u) {
+            Integer slot = slotByUnit.get(u);
+            if (slot == null || dead[slot]) return;
+            dead[slot] = true;
+            alive--;
+            if (canMove[slot]) {
+                aliveCanMove--;
+                if (orderPos[slot] >= cursor) remaining--;
+            }
+        }
+    }
+}
@@ -4,128 +4,244 @@ import com.battle.heroes.army.Unit;
 import com.battle.heroes.army.programs.Edge;
 import com.battle.heroes.army.programs.UnitTargetPathFinder;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 public class UnitTargetPathFinderImpl implements UnitTargetPathFinder {
 
-    private static final int WIDTH = 27;
-    private static final int HEIGHT = 21;
+    /** Алгоритм поиска. Длина найденного пути во всех режимах, кроме {@link #HIERARCHICAL}, одинаковая (кратчайшая). */
+    public enum Mode {
+        /** Поиск в ширину — эталонный режим, путь совпадает с историческим поведением. */
+        BFS,
+        /** A* с эвристикой Чебышёва: раскрывает в разы меньше клеток, когда цель недалеко. */
+        A_STAR,
+        /** Jump point search: A* по «точкам прыжка», для равномерной стоимости ходов на 8-связной сетке. */
+        JUMP_POINT,
+        /**
+         * HPA* по кластерам 16x16 ({@link HierarchicalGrid}) — для больших досок: время запроса почти не зависит
+         * от размера доски. Путь бывает на несколько процентов длиннее кратчайшего; старт и цель в одном кластере
+         * ищутся обычным A*.
+         */
+        HIERARCHICAL
+    }
+
+    private final Mode mode;
+    private final BoardConfig board;
+    private final int width;
+    private final int height;
+    // абстракция доски для HIERARCHICAL: своя на поток, перестраивается по изменениям занятости
+    private final ThreadLocal<HierarchicalGrid> hierarchy;
 
-    // 8 направлений (включая диагонали)
-    private static final int[][] DIRECTIONS = {
-            {-1, 0}, {1, 0}, {0, -1}, {0, 1},
-            {-1, -1}, {-1, 1}, {1, -1}, {1, 1}
-    };
+    public UnitTargetPathFinderImpl() {
+        this(Mode.BFS);
+    }
+
+    public UnitTargetPathFinderImpl(Mode mode) {
+        this(mode, BoardConfig.DEFAULT);
+    }
+
+    public UnitTargetPathFinderImpl(Mode mode, BoardConfig board) {
+        this.mode = (mode == null) ? Mode.BFS : mode;
+        this.board = (board == null) ? BoardConfig.DEFAULT : board;
+        this.width = this.board.getWidth();
+        this.height = this.board.getHeight();
+        this.hierarchy = (this.mode == Mode.HIERARCHICAL)
+                ? ThreadLocal.withInitial(() -> new HierarchicalGrid(width, height,
+                HierarchicalGrid.DEFAULT_CLUSTER_SIZE))
+                : null;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public BoardConfig getBoard() {
+        return board;
+    }
 
     @Override
     public List<Edge> getTargetPath(Unit attackUnit, Unit targetUnit, List<Unit> existingUnitList) {
-        List<Edge> empty = new ArrayList<>();
-        if (attackUnit == null || targetUnit == null) return empty;
+        return findPath(attackUnit, targetUnit, existingUnitList, null);
+    }
+
+    /**
+     * То же, что {@link #getTargetPath(Unit, Unit, List)}, но занятость берётся из снимка доски,
+     * которую ведёт бой ({@link OccupancyGrid}), а не из списка юнитов: стоимость запроса
+     * не зависит от размера армий. Клетки атакующего и цели в снимке заняты — это учтено.
+     */
+    public List<Edge> getTargetPath(Unit attackUnit, Unit targetUnit, OccupancyGrid.Snapshot occupancy) {
+        return findPath(attackUnit, targetUnit, null, occupancy);
+    }
+
+    private List<Edge> findPath(Unit attackUnit, Unit targetUnit,
+                                List<Unit> existingUnitList, OccupancyGrid.Snapshot occupancy) {
+        if (attackUnit == null || targetUnit == null) return new ArrayList<>();
 
         int startX = attackUnit.getxCoordinate();
         int startY = attackUnit.getyCoordinate();
         int endX = targetUnit.getxCoordinate();
         int endY = targetUnit.getyCoordinate();
 
-        if (!inBounds(startX, startY) || !inBounds(endX, endY)) return empty;
+        if (!inBounds(startX, startY) || !inBounds(endX, endY)) return new ArrayList<>();
 
         // Если уже стоим на цели
         if (startX == endX && startY == endY) {
-            List<Edge> path = new ArrayList<>();
+            List<Edge> path = new ArrayList<>(1);
             path.add(new Edge(startX, startY));
             return path;
         }
 
-        // blocked[x][y] = занято живым юнитом (кроме атакующего и цели)
-        boolean[][] blocked = new boolean[WIDTH][HEIGHT];
-        if (existingUnitList != null) {
-            for (Unit u : existingUnitList) {
-                if (u == null) continue;
-                if (!u.isAlive()) continue;
-                if (u == attackUnit || u == targetUnit) continue;
-
-                int x = u.getxCoordinate();
-                int y = u.getyCoordinate();
-                if (inBounds(x, y)) {
-                    blocked[x][y] = true;
-                }
-            }
+        // бой с планированием ходов мог уже найти этот путь заранее (MovePlanner)
+        if (mode == Mode.BFS) {
+            List<Edge> planned = MovePlanner.plannedPath(this, attackUnit, targetUnit, existingUnitList,
+                    occupancy);
+            if (planned != null) return planned;
         }
 
-        // BFS
-        boolean[][] visited = new boolean[WIDTH][HEIGHT];
-        int[][] prevX = new int[WIDTH][HEIGHT];
-        int[][] prevY = new int[WIDTH][HEIGHT];
-
-        // -1 значит "предка нет"
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                prevX[x][y] = -1;
-                prevY[x][y] = -1;
-            }
+        // Буферы поиска переиспользуются (по одному набору на поток), в steady state
+        // аллоцируется только возвращаемый список
+        long started = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
+        if (mode == Mode.HIERARCHICAL) {
+            return hierarchicalPath(startY * width + startX, endY * width + endX, existingUnitList, occupancy,
+                    started);
         }
+        GridSearch search = GridSearch.local(width, height);
+        search.begin();
+        markOccupied(search, attackUnit, targetUnit, existingUnitList, occupancy);
+
+        int start = search.cell(startX, startY);
+        int end = search.cell(endX, endY);
+        boolean found = switch (mode) {
+            case BFS -> search.bfs(start, end);
+            case A_STAR, HIERARCHICAL -> search.aStar(start, end);
+            case JUMP_POINT -> search.jumpPointSearch(start, end);
+        };
+        if (HeroesMetrics.ENABLED) HeroesMetrics.pathSearchFinished(started, mode.name(), search.expanded(), found);
+        if (!found) return new ArrayList<>();
+
+        return search.path(start, end);
+    }
 
-        ArrayDeque<int[]> q = new ArrayDeque<>();
-        visited[startX][startY] = true;
-        q.addLast(new int[]{startX, startY});
-
-        boolean found = false;
-
-        while (!q.isEmpty()) {
-            int[] cur = q.pollFirst();
-            int x = cur[0];
-            int y = cur[1];
+    /**
+     * Путь по абстракции {@link HierarchicalGrid}; если она не даёт ответа — A* по той же занятости. Занятость —
+     * все живые юниты (клетки старта и цели поиск обрабатывает сам).
+     */
+    private List<Edge> hierarchicalPath(int start, int end, List<Unit> existingUnitList,
+                                        OccupancyGrid.Snapshot occupancy, long started) {
+        HierarchicalGrid grid = hierarchy.get();
+        if (occupancy != null && (occupancy.getWidth() != width || occupancy.getHeight() != height)) {
+            throw new IllegalArgumentException("Snapshot is " + occupancy.getWidth() + "x" + occupancy.getHeight()
+                    + ", board is " + board);
+        }
+        grid.sync(occupancy != null ? occupancy.words() : grid.occupancyOf(existingUnitList));
+
+        List<Edge> path = grid.findPath(start, end);
+        int expanded = grid.expanded();
+        if (path == null) {
+            GridSearch search = GridSearch.local(width, height);
+            search.begin();
+            search.useOccupancy(grid.occupied());
+            boolean found = search.aStar(start, end);
+            expanded += search.expanded();
+            path = found ? search.path(start, end) : new ArrayList<>();
+        }
+        if (HeroesMetrics.ENABLED) {
+            HeroesMetrics.pathSearchFinished(started, mode.name(), expanded, !path.isEmpty());
+        }
+        return path;
+    }
 
-            if (x == endX && y == endY) {
-                found = true;
-                break;
-            }
+    /**
+     * Ближайшая из нескольких целей за один поиск вместо отдельного {@link #getTargetPath} на каждую.
+     * <p>
+     * Один BFS от атакующего ко всем кандидатам сразу: занятые клетки непроходимы, клетки
+     * кандидатов — цели, сквозь них путь не идёт. Путь до ближайшей цели совпадает с тем, что вернул бы
+     * {@code getTargetPath} в режиме BFS; при равных расстояниях выбирается цель, открытая BFS первой.
+     * Режим {@link Mode} здесь не используется: расстояния нужны до всех кандидатов.
+     */
+    public NearestTargetPath findNearestTarget(Unit attackUnit, List<Unit> candidates, List<Unit> existingUnitList) {
+        return nearestTarget(attackUnit, candidates, existingUnitList, null);
+    }
 
-            for (int[] d : DIRECTIONS) {
-                int nx = x + d[0];
-                int ny = y + d[1];
+    /** {@link #findNearestTarget(Unit, List, List)} по снимку занятости доски. */
+    public NearestTargetPath findNearestTarget(Unit attackUnit, List<Unit> candidates,
+                                               OccupancyGrid.Snapshot occupancy) {
+        return nearestTarget(attackUnit, candidates, null, occupancy);
+    }
 
-                if (!inBounds(nx, ny)) continue;
-                if (visited[nx][ny]) continue;
+    private NearestTargetPath nearestTarget(Unit attackUnit, List<Unit> candidates,
+                                            List<Unit> existingUnitList, OccupancyGrid.Snapshot occupancy) {
+        int n = (candidates == null) ? 0 : candidates.size();
+        int[] distances = new int[n];
+        Arrays.fill(distances, -1);
+        if (attackUnit == null || n == 0) return new NearestTargetPath(null, new ArrayList<>(), distances);
 
-                // клетка занята, но целевая клетка допускается (там стоит targetUnit)
-                if (blocked[nx][ny] && !(nx == endX && ny == endY)) continue;
+        int startX = attackUnit.getxCoordinate();
+        int startY = attackUnit.getyCoordinate();
+        if (!inBounds(startX, startY)) return new NearestTargetPath(null, new ArrayList<>(), distances);
+
+        long started = HeroesMetrics.ENABLED ? System.nanoTime() : 0L;
+        GridSearch search = GridSearch.local(width, height);
+        search.begin();
+        markOccupied(search, attackUnit, null, existingUnitList, occupancy);
+
+        int goals = 0;
+        for (Unit c : candidates) {
+            if (!isReachableCandidate(c)) continue;
+            int cell = search.cell(c.getxCoordinate(), c.getyCoordinate());
+            if (search.isGoal(cell)) continue;
+            search.goal(cell);
+            goals++;
+        }
+        if (goals == 0) return new NearestTargetPath(null, new ArrayList<>(), distances);
 
-                visited[nx][ny] = true;
-                prevX[nx][ny] = x;
-                prevY[nx][ny] = y;
-                q.addLast(new int[]{nx, ny});
-            }
+        int start = search.cell(startX, startY);
+        int nearestCell = search.bfsToGoals(start, goals);
+        if (HeroesMetrics.ENABLED) {
+            HeroesMetrics.pathSearchFinished(started, "NEAREST", search.expanded(), nearestCell >= 0);
         }
 
-        if (!found) return empty;
+        Unit nearest = null;
+        for (int i = 0; i < n; i++) {
+            Unit c = candidates.get(i);
+            if (!isReachableCandidate(c)) continue;
+            int cell = search.cell(c.getxCoordinate(), c.getyCoordinate());
+            distances[i] = search.distanceTo(cell);
+            if (nearest == null && cell == nearestCell) nearest = c;
+        }
+        if (nearest == null) return new NearestTargetPath(null, new ArrayList<>(), distances);
 
-        // Восстановление пути от цели к старту
-        List<Edge> path = new ArrayList<>();
-        int cx = endX;
-        int cy = endY;
+        return new NearestTargetPath(nearest, search.path(start, nearestCell), distances);
+    }
 
-        while (!(cx == startX && cy == startY)) {
-            path.add(new Edge(cx, cy));
-            int px = prevX[cx][cy];
-            int py = prevY[cx][cy];
+    /**
+     * Занятые клетки для поиска: из снимка доски, если он есть, иначе — живые юниты списка
+     * (кроме атакующего и цели). Клетки атакующего и цели ядро поиска обрабатывает отдельно,
+     * поэтому для снимка их исключать не нужно.
+     */
+    private static void markOccupied(GridSearch search, Unit attackUnit, Unit targetUnit,
+                                     List<Unit> existingUnitList, OccupancyGrid.Snapshot occupancy) {
+        if (occupancy != null) {
+            search.useOccupancy(occupancy);
+            return;
+        }
+        if (existingUnitList == null) return;
 
-            // на всякий случай защита от неконсистентности
-            if (px == -1 || py == -1) return empty;
+        for (Unit u : existingUnitList) {
+            if (u == null) continue;
+            if (!u.isAlive()) continue;
+            if (u == attackUnit || u == targetUnit) continue;
 
-            cx = px;
-            cy = py;
+            search.block(u.getxCoordinate(), u.getyCoordinate());
         }
+    }
 
-        path.add(new Edge(startX, startY));
-        Collections.reverse(path);
-        return path;
+    private boolean isReachableCandidate(Unit u) {
+        return u != null && u.isAlive() && inBounds(u.getxCoordinate(), u.getyCoordinate());
     }
 
-    private static boolean inBounds(int x, int y) {
-        return x >= 0 && x < WIDTH && y >= 0 && y < HEIGHT;
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
     }
 }
@@ -0,0 +1,101 @@
+package programs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ArmyKnapsack} против полного перебора составов на маленьких случайных задачах: та же суммарная атака
+ * и здоровье для каждого бюджета, а восстановленный состав укладывается в лимиты и даёт ровно их.
+ * <p>
+ * Стоимости нарочно с общими делителями и повторами, а типы — с доминированием, чтобы работали все сокращения
+ * таблицы: НОД, обрезка бюджета, лимит клеток и отбрасывание доминируемых типов.
+ */
+class ArmyKnapsackTest {
+
+    private static final int INSTANCES = 400;
+
+    @Test
+    void matchesBruteForce() {
+        Random rnd = new Random(20240611);
+        for (int instance = 0; instance < INSTANCES; instance++) {
+            int n = 1 + rnd.nextInt(4);
+            int[] cost = new int[n];
+            int[] attack = new int[n];
+            int[] health = new int[n];
+            int[] cap = new int[n];
+            int unit = 1 + rnd.nextInt(3);
+            for (int t = 0; t < n; t++) {
+                cost[t] = unit * (1 + rnd.nextInt(8));
+                attack[t] = rnd.nextInt(30);
+                health[t] = 1 + rnd.nextInt(50);
+                cap[t] = rnd.nextInt(6);
+            }
+            int maxUnits = 1 + rnd.nextInt(12);
+            int maxPoints = rnd.nextInt(120);
+
+            ArmyKnapsack knapsack = ArmyKnapsack.solve(cost, attack, health, cap, maxUnits, maxPoints);
+            assertNotNull(knapsack, "instance " + instance);
+            for (int points = 0; points <= maxPoints; points++) {
+                String where = "instance " + instance + ", points " + points;
+                long[] expected = bruteForce(cost, attack, health, cap, maxUnits, points);
+                assertEquals(expected[0], knapsack.attack(points), where);
+                assertEquals(expected[1], knapsack.health(points), where);
+
+                int[] counts = knapsack.counts(points);
+                long a = 0;
+                long h = 0;
+                int units = 0;
+                int spent = 0;
+                for (int t = 0; t < n; t++) {
+                    assertTrue(counts[t] >= 0 && counts[t] <= cap[t], where);
+                    a += (long) counts[t] * attack[t];
+                    h += (long) counts[t] * health[t];
+                    units += counts[t];
+                    spent += counts[t] * cost[t];
+                }
+                assertTrue(units <= maxUnits && spent <= points, where);
+                assertEquals(expected[0], a, where);
+                assertEquals(expected[1], h, where);
+            }
+        }
+    }
+
+    /** {максимальная атака, максимальное здоровье при ней} перебором всех составов. */
+    private static long[] bruteForce(int[] cost, int[] attack, int[] health, int[] cap, int maxUnits, int points) {
+        long[] best = {0, 0};
+        search(0, new int[cost.length], cost, attack, health, cap, maxUnits, points, best);
+        return best;
+    }
+
+    private static void search(int t, int[] counts, int[] cost, int[] attack, int[] health, int[] cap,
+                               int maxUnits, int points, long[] best) {
+        if (t == counts.length) {
+            long a = 0;
+            long h = 0;
+            int units = 0;
+            int spent = 0;
+            for (int i = 0; i < counts.length; i++) {
+                a += (long) counts[i] * attack[i];
+                h += (long) counts[i] * health[i];
+                units += counts[i];
+                spent += counts[i] * cost[i];
+            }
+            if (units > maxUnits || spent > points) return;
+            if (a > best[0] || (a == best[0] && h > best[1])) {
+                best[0] = a;
+                best[1] = h;
+            }
+            return;
+        }
+        for (int c = 0; c <= cap[t]; c++) {
+            counts[t] = c;
+            search(t + 1, counts, cost, attack, health, cap, maxUnits, points, best);
+        }
+        counts[t] = 0;
+    }
+}
@@ -0,0 +1,208 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AsyncBattleLogSink}: порядок событий нескольких производителей, полнота {@link AsyncBattleLogSink#flush()}
+ * и все режимы {@link AsyncBattleLogSink.Backpressure} при заполненном кольце. Кольцо заполняется так: получатель
+ * стоит на защёлке, и потребитель не освобождает ни одной ячейки, пока её не откроют.
+ */
+class AsyncBattleLogSinkTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS = 20000;
+
+    @Test
+    void keepsOrderOfEveryProducer() throws InterruptedException {
+        Recorder recorder = new Recorder(null);
+        try (AsyncBattleLogSink sink = new AsyncBattleLogSink(recorder, 64, AsyncBattleLogSink.Backpressure.BLOCK)) {
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                int producer = p;
+                producers.add(new Thread(() -> {
+                    Unit unit = unit("p" + producer, 0);
+                    for (int i = 0; i < EVENTS; i++) {
+                        unit.setHealth(i);
+                        sink.onAttack(unit, null);
+                    }
+                }));
+            }
+            producers.forEach(Thread::start);
+            for (Thread t : producers) {
+                t.join();
+            }
+            sink.flush();
+
+            List<String> events = recorder.events();
+            assertEquals(PRODUCERS * EVENTS, events.size());
+            int[] next = new int[PRODUCERS];
+            for (String e : events) {
+                // снимок юнита: здоровье — то, что было при вызове, а не текущее
+                int producer = e.charAt(1) - '0';
+                assertEquals("p" + producer + ":" + next[producer]++, e);
+            }
+            assertEquals(0, sink.dropped());
+        }
+    }
+
+    @Test
+    void flushDeliversEverythingAcceptedBefore() {
+        Recorder recorder = new Recorder(null);
+        try (AsyncBattleLogSink sink = new AsyncBattleLogSink(recorder)) {
+            Unit unit = unit("u", 0);
+            for (int round = 1; round <= 200; round++) {
+                for (int i = 0; i < 30; i++) {
+                    unit.setHealth(i);
+                    sink.onAttack(unit, unit);
+                }
+                sink.onRoundOver(round, 30, round);
+                sink.flush();
+                List<String> events = recorder.events();
+                assertEquals(round * 31, events.size());
+                assertEquals("round " + round, events.get(events.size() - 1));
+                assertEquals(events.size(), recorder.flushedAt(), "downstream flushed after the last event");
+            }
+        }
+    }
+
+    @Test
+    void dropDiscardsWhenRingIsFull() {
+        CountDownLatch gate = new CountDownLatch(1);
+        Recorder recorder = new Recorder(gate);
+        try (AsyncBattleLogSink sink = new AsyncBattleLogSink(recorder, 4, AsyncBattleLogSink.Backpressure.DROP)) {
+            Unit unit = unit("u", 0);
+            for (int i = 0; i < 20; i++) {
+                unit.setHealth(i);
+                sink.onAttack(unit, null);
+            }
+            sink.onRoundOver(1, 1, 0);
+            assertEquals(17, sink.dropped());
+
+            gate.countDown();
+            sink.flush();
+            assertEquals(List.of("u:0", "u:1", "u:2", "u:3"), recorder.events());
+        }
+    }
+
+    @Test
+    void blockWaitsForFreeSlots() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        Recorder recorder = new Recorder(gate);
+        try (AsyncBattleLogSink sink = new AsyncBattleLogSink(recorder, 4, AsyncBattleLogSink.Backpressure.BLOCK)) {
+            Thread battle = new Thread(() -> {
+                Unit unit = unit("u", 0);
+                for (int i = 0; i < 20; i++) {
+                    unit.setHealth(i);
+                    sink.onAttack(unit, null);
+                }
+            });
+            battle.start();
+            battle.join(200);
+            assertTrue(battle.isAlive(), "producer must wait while the ring is full");
+            assertTrue(recorder.events().size() <= 1);
+
+            gate.countDown();
+            battle.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(battle.isAlive());
+            sink.flush();
+            List<String> events = recorder.events();
+            assertEquals(20, events.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals("u:" + i, events.get(i));
+            }
+            assertEquals(0, sink.dropped());
+        }
+    }
+
+    @Test
+    void sampleThinsAttacksButKeepsRounds() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        Recorder recorder = new Recorder(gate);
+        try (AsyncBattleLogSink sink = new AsyncBattleLogSink(recorder, 8, AsyncBattleLogSink.Backpressure.SAMPLE)) {
+            Unit unit = unit("u", 0);
+            for (int i = 0; i < 40; i++) {
+                unit.setHealth(i);
+                sink.onAttack(unit, null);
+            }
+            // до 3/4 кольца (6 событий) проходят все атаки, дальше — каждая восьмая, пока есть место
+            assertEquals(32, sink.dropped());
+
+            // итог раунда в полном кольце ждёт места, а не теряется
+            Thread round = new Thread(() -> sink.onRoundOver(1, 1, 1));
+            round.start();
+            round.join(200);
+            assertTrue(round.isAlive(), "round result must wait for a free slot");
+
+            gate.countDown();
+            round.join(TimeUnit.SECONDS.toMillis(10));
+            sink.flush();
+            assertEquals(List.of("u:0", "u:1", "u:2", "u:3", "u:4", "u:5", "u:6", "u:14", "round 1"),
+                    recorder.events());
+        }
+    }
+
+    private static Unit unit(String name, int health) {
+        return new Unit(name, "T", health, 1, 1, "Melee", new HashMap<>(), new HashMap<>(), 0, 0);
+    }
+
+    /** Пишет события строками; с защёлкой — не принимает ни одного события, пока её не откроют. */
+    private static final class Recorder implements BattleLogSink {
+
+        private final CountDownLatch gate;
+        private final List<String> events = new ArrayList<>();
+        private int flushedAt;
+
+        Recorder(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void onAttack(Unit attacker, Unit target) {
+            await();
+            add(attacker.getName() + ":" + attacker.getHealth());
+        }
+
+        @Override
+        public void onRoundOver(int round, int playerAlive, int computerAlive) {
+            await();
+            add("round " + round);
+        }
+
+        @Override
+        public synchronized void flush() {
+            flushedAt = events.size();
+        }
+
+        synchronized List<String> events() {
+            return new ArrayList<>(events);
+        }
+
+        synchronized int flushedAt() {
+            return flushedAt;
+        }
+
+        private synchronized void add(String event) {
+            events.add(event);
+        }
+
+        private void await() {
+            if (gate == null) return;
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
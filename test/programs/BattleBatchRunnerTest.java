@@ -0,0 +1,160 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.util.GameSpeedUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link BattleBatchRunner}: сводка, собранная по дереву задач ForkJoin, совпадает с суммой результатов отдельных
+ * боёв и не зависит от числа потоков, а бои идут на копиях — исходные армии не меняются.
+ */
+class BattleBatchRunnerTest {
+
+    private static final int BATTLES = 500;
+
+    @Test
+    void summaryAddsUpAcrossTaskTree() {
+        List<BattleBatchRunner.BattleResult> results = Collections.synchronizedList(new ArrayList<>());
+        BattleBatchRunner.Summary summary = new BattleBatchRunner(4)
+                .run(BattleBatchRunnerTest::armies, BATTLES, 9L, results::add);
+
+        assertEquals(BATTLES, summary.getBattles());
+        assertEquals(BATTLES, results.size());
+        assertEquals(BATTLES, summary.getPlayerWins() + summary.getComputerWins() + summary.getDraws());
+
+        long player = 0;
+        long computer = 0;
+        long rounds = 0;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        Map<String, Long> playerSurvivors = new TreeMap<>();
+        Map<String, Long> computerSurvivors = new TreeMap<>();
+        for (BattleBatchRunner.BattleResult r : results) {
+            if (r.getWinner() == BattleBatchRunner.Winner.PLAYER) player++;
+            if (r.getWinner() == BattleBatchRunner.Winner.COMPUTER) computer++;
+            rounds += r.getRounds();
+            min = Math.min(min, r.getRounds());
+            max = Math.max(max, r.getRounds());
+            r.getPlayerSurvivors().forEach((type, n) -> playerSurvivors.merge(type, (long) n, Long::sum));
+            r.getComputerSurvivors().forEach((type, n) -> computerSurvivors.merge(type, (long) n, Long::sum));
+        }
+        assertEquals(player, summary.getPlayerWins());
+        assertEquals(computer, summary.getComputerWins());
+        assertEquals((double) rounds / BATTLES, summary.getAverageRounds(), 1e-9);
+        assertEquals(min, summary.getMinRounds());
+        assertEquals(max, summary.getMaxRounds());
+        assertEquals(playerSurvivors, summary.getPlayerSurvivors());
+        assertEquals(computerSurvivors, summary.getComputerSurvivors());
+        // исход не предрешён — иначе сумма побед проверяла бы немногое
+        assertTrue(summary.getPlayerWins() > 0 && summary.getComputerWins() > 0, summary.toString());
+    }
+
+    @Test
+    void summaryDoesNotDependOnParallelism() {
+        String single = new BattleBatchRunner(1).run(BattleBatchRunnerTest::armies, 200, 3L).toString();
+        for (int parallelism : new int[]{2, 3, 8}) {
+            String parallel = new BattleBatchRunner(parallelism).run(BattleBatchRunnerTest::armies, 200, 3L)
+                    .toString();
+            assertEquals(single, parallel, "parallelism " + parallelism);
+        }
+    }
+
+    @Test
+    void sourceArmiesStayUnchanged() {
+        Army[] source = armies(5L);
+        String before = state(source);
+
+        Army[] copy = BattleBatchRunner.copyPair(source[0], source[1]);
+        for (int side = 0; side < 2; side++) {
+            for (int i = 0; i < copy[side].getUnits().size(); i++) {
+                Unit original = source[side].getUnits().get(i);
+                Unit unit = copy[side].getUnits().get(i);
+                assertNotSame(original, unit);
+                assertNotSame(original.getProgram(), unit.getProgram());
+                Strike program = (Strike) unit.getProgram();
+                assertSame(unit, program.unit());
+                assertSame(copy[1 - side], program.enemy());
+            }
+        }
+
+        BattleBatchRunner.Summary summary = new BattleBatchRunner(4).run(source[0], source[1], 50);
+        assertEquals(50, summary.getBattles());
+        assertEquals(before, state(source));
+    }
+
+    /** Армии по seed: 3–15 юнитов на сторону трёх типов, бой решается за несколько раундов. */
+    private static Army[] armies(long seed) {
+        Random rnd = new Random(seed);
+        Army[] armies = {new Army(), new Army()};
+        String[] types = {"Knight", "Archer", "Pikeman"};
+        for (int side = 0; side < 2; side++) {
+            List<Unit> units = new ArrayList<>();
+            for (int i = 0, n = 3 + rnd.nextInt(13); i < n; i++) {
+                String type = types[rnd.nextInt(types.length)];
+                units.add(new Unit(type + " " + i, type, 20 + rnd.nextInt(80), 5 + rnd.nextInt(20), 1, "Melee",
+                        new HashMap<>(), new HashMap<>(), side * 24 + rnd.nextInt(3), rnd.nextInt(21)));
+            }
+            armies[side].setUnits(units);
+        }
+        for (int side = 0; side < 2; side++) {
+            for (Unit u : armies[side].getUnits()) {
+                u.setProgram(new Strike(u, armies[side], armies[1 - side]));
+            }
+        }
+        return armies;
+    }
+
+    private static String state(Army[] armies) {
+        StringBuilder sb = new StringBuilder();
+        for (Army army : armies) {
+            for (Unit u : army.getUnits()) {
+                sb.append(u.getName()).append(' ').append(u.getHealth()).append(' ').append(u.isAlive())
+                        .append(' ').append(u.getxCoordinate()).append(',').append(u.getyCoordinate()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Бьёт самого слабого живого врага; без случайности, поэтому копия программы ведёт себя так же. */
+    private static final class Strike extends Program {
+
+        Strike(Unit unit, Army ally, Army enemy) {
+            super(unit, ally, enemy, new GameSpeedUtil(0));
+        }
+
+        Unit unit() {
+            return unit;
+        }
+
+        Army enemy() {
+            return enemyArmy;
+        }
+
+        @Override
+        public Unit attack() {
+            Unit target = null;
+            for (Unit u : enemyArmy.getUnits()) {
+                if (u.isAlive() && (target == null || u.getHealth() < target.getHealth())) target = u;
+            }
+            if (target == null) return null;
+            target.setHealth(target.getHealth() - unit.getBaseAttack());
+            if (target.getHealth() <= 0) target.setAlive(false);
+            return target;
+        }
+    }
+}
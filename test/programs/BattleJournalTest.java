@@ -0,0 +1,136 @@
+package programs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link BattleJournal} и {@link BattleJournalReader}: бои, записанные в несколько сегментов, читаются обратно теми
+ * же (и напрямую через курсор, и через {@link BattleJournalReader.Cursor#timeline()}), атака без цели сохраняет
+ * {@code -1}, а недописанный последний бой сегмента пропускается при любой точке обрыва.
+ */
+class BattleJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripAcrossSegments() throws IOException {
+        Random rnd = new Random(22);
+        List<BattleTimeline> written = new ArrayList<>();
+        // маленькие сегменты — бои расходятся по многим файлам
+        try (BattleJournal journal = new BattleJournal(dir, 4096)) {
+            for (int i = 0; i < 60; i++) {
+                BattleTimeline timeline = timeline(rnd);
+                journal.append(timeline);
+                written.add(timeline);
+            }
+            assertEquals(60, journal.getBattles());
+        }
+
+        BattleJournalReader reader = BattleJournalReader.open(dir);
+        assertTrue(reader.getSegmentCount() > 1, "segments " + reader.getSegmentCount());
+        BattleJournalReader.Cursor cursor = reader.cursor();
+        int noTarget = 0;
+        for (int i = 0; i < written.size(); i++) {
+            assertTrue(cursor.next(), "battle " + i);
+            assertEquals(i, cursor.getBattle());
+            BattleTimeline expected = written.get(i);
+            assertEquals(describe(expected), describe(cursor), "battle " + i);
+            assertEquals(describe(expected), describe(cursor.timeline()), "battle " + i);
+            for (int e = 0; e < cursor.size(); e++) {
+                if (cursor.kind(e) == BattleTimeline.Kind.ATTACK && cursor.target(e) == -1) noTarget++;
+            }
+        }
+        assertFalse(cursor.next());
+        assertTrue(noTarget > 0, "no ATTACK without a target was written");
+    }
+
+    @Test
+    void truncatedLastBattleIsSkipped() throws IOException {
+        Random rnd = new Random(222);
+        List<BattleTimeline> written = new ArrayList<>();
+        try (BattleJournal journal = new BattleJournal(dir)) {
+            for (int i = 0; i < 3; i++) {
+                BattleTimeline timeline = timeline(rnd);
+                journal.append(timeline);
+                written.add(timeline);
+            }
+        }
+        Path segment = dir.resolve(BattleJournal.segmentName(0));
+        long full = Files.size(segment);
+        long last = (2L + written.get(2).size()) * BattleJournal.RECORD_BYTES;
+
+        // обрыв в любом месте последнего боя: посреди записи, на границе записей, в заголовке боя
+        for (long cut = 1; cut <= last; cut++) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(full - cut);
+            }
+            BattleJournalReader.Cursor cursor = BattleJournalReader.open(dir).cursor();
+            for (int i = 0; i < 2; i++) {
+                assertTrue(cursor.next(), "cut " + cut + ", battle " + i);
+                assertEquals(describe(written.get(i)), describe(cursor.timeline()), "cut " + cut);
+            }
+            assertFalse(cursor.next(), "cut " + cut);
+        }
+    }
+
+    /** Бой из 0–200 случайных событий, среди них атаки без цели; итог — как у записанного боя. */
+    private static BattleTimeline timeline(Random rnd) {
+        int player = 1 + rnd.nextInt(40);
+        int computer = 1 + rnd.nextInt(40);
+        int units = player + computer;
+        BattleTimeline.Builder builder = new BattleTimeline.Builder(player, computer);
+        int round = 0;
+        for (int i = 0, n = rnd.nextInt(201); i < n; i++) {
+            int unit = rnd.nextInt(units);
+            switch (rnd.nextInt(5)) {
+                case 0 -> builder.move(unit, rnd.nextInt(27), rnd.nextInt(21));
+                case 1 -> builder.damage(unit, rnd.nextInt(200) - 50);
+                case 2 -> builder.death(unit);
+                case 3 -> builder.attack(unit, rnd.nextBoolean() ? -1 : rnd.nextInt(units));
+                default -> builder.roundOver(++round, rnd.nextInt(player + 1), rnd.nextInt(computer + 1));
+            }
+        }
+        return builder.build(round, rnd.nextInt(player + 1), rnd.nextInt(computer + 1));
+    }
+
+    private static String describe(BattleTimeline t) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(t.getPlayerCount()).append('/').append(t.getComputerCount()).append(" rounds ")
+                .append(t.getRounds()).append(" alive ").append(t.getPlayerAlive()).append('/')
+                .append(t.getComputerAlive()).append(' ').append(t.getWinner()).append('\n');
+        for (int i = 0; i < t.size(); i++) {
+            sb.append(event(t.kind(i), t.unit(i), t.target(i), t.y(i))).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String describe(BattleJournalReader.Cursor t) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(t.getPlayerCount()).append('/').append(t.getComputerCount()).append(" rounds ")
+                .append(t.getRounds()).append(" alive ").append(t.getPlayerAlive()).append('/')
+                .append(t.getComputerAlive()).append(' ').append(t.getWinner()).append('\n');
+        for (int i = 0; i < t.size(); i++) {
+            sb.append(event(t.kind(i), t.unit(i), t.target(i), t.y(i))).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** Три колонки события: у каждого типа свои имена геттеров, но лежат они в тех же колонках. */
+    private static String event(BattleTimeline.Kind kind, int a, int b, int c) {
+        return kind + " " + a + " " + b + " " + c;
+    }
+}
@@ -0,0 +1,181 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@link BattleState}: {@code of} → {@code fork} → {@code strike} → {@code applyTo}/{@code toArmies}. Ответвление не
+ * меняет родителя, битсет живых после смертельных ударов согласован со здоровьем, подсчётом и обходом
+ * {@link BattleState#nextAlive}, а состояние возвращается на юнитов без потерь. Армии больше 64 юнитов — битсеты
+ * в несколько слов.
+ */
+class BattleStateTest {
+
+    @Test
+    void forkLeavesParentUnchanged() {
+        Army[] armies = armies(new Random(16));
+        BattleState parent = BattleState.of(armies[0], armies[1]);
+        String before = describe(parent);
+        assertEquals(state(armies), describe(BattleState.of(armies[0], armies[1])));
+
+        BattleState fork = parent.fork();
+        Random rnd = new Random(160);
+        for (int i = 0; i < 500; i++) {
+            int a = rnd.nextInt(fork.size());
+            int b = rnd.nextInt(fork.size());
+            fork.strike(a, b);
+            fork.moveTo(a, rnd.nextInt(27), rnd.nextInt(21));
+            if (rnd.nextInt(10) == 0) fork.setAlive(b, true);
+        }
+        assertNotEquals(before, describe(fork));
+        assertEquals(before, describe(parent));
+
+        // и наоборот: изменения родителя ответвлению не видны
+        String forked = describe(fork);
+        parent.setHealth(0, -1);
+        parent.setAlive(parent.size() - 1, false);
+        assertEquals(forked, describe(fork));
+
+        fork.copyFrom(parent);
+        assertEquals(describe(parent), describe(fork));
+    }
+
+    @Test
+    void killingStrikesKeepAliveBitsetConsistent() {
+        Random rnd = new Random(61);
+        for (int battle = 0; battle < 50; battle++) {
+            Army[] armies = armies(rnd);
+            BattleState state = BattleState.of(armies[0], armies[1]).fork();
+            while (state.aliveCount(true) > 0 && state.aliveCount(false) > 0) {
+                int attacker = randomAlive(state, rnd, rnd.nextBoolean());
+                int target = randomAlive(state, rnd, !state.isPlayer(attacker));
+                int health = state.health(target);
+                boolean killed = state.strike(attacker, target);
+
+                assertEquals(health - state.attack(attacker), state.health(target));
+                assertEquals(state.health(target) <= 0, killed);
+                assertEquals(!killed, state.isAlive(target));
+                checkAlive(state, "battle " + battle);
+            }
+        }
+    }
+
+    @Test
+    void applyToAndToArmiesCarryTheState() {
+        Army[] armies = armies(new Random(116));
+        BattleState state = BattleState.of(armies[0], armies[1]);
+        // Knight, Pikeman и два вида Archer
+        assertEquals(4, state.getTypes().count());
+        BattleState fork = state.fork();
+        Random rnd = new Random(1160);
+        for (int i = 0; i < 300; i++) {
+            int attacker = randomAlive(fork, rnd, rnd.nextBoolean());
+            int target = randomAlive(fork, rnd, !fork.isPlayer(attacker));
+            if (attacker < 0 || target < 0) break;
+            fork.strike(attacker, target);
+            fork.moveTo(attacker, rnd.nextInt(27), rnd.nextInt(21));
+        }
+
+        Army[] copies = fork.toArmies();
+        assertEquals(describe(fork), state(copies));
+        for (int side = 0; side < 2; side++) {
+            int points = 0;
+            for (int i = 0; i < copies[side].getUnits().size(); i++) {
+                Unit original = armies[side].getUnits().get(i);
+                Unit copy = copies[side].getUnits().get(i);
+                assertNotSame(original, copy);
+                assertNull(copy.getProgram());
+                assertEquals(original.getUnitType(), copy.getUnitType());
+                assertEquals(original.getAttackType(), copy.getAttackType());
+                assertEquals(original.getAttackBonuses(), copy.getAttackBonuses());
+                assertEquals(original.getDefenceBonuses(), copy.getDefenceBonuses());
+                points += copy.getCost();
+            }
+            assertEquals(points, copies[side].getPoints());
+        }
+        // исходные юниты не тронуты, пока состояние на них не перенесли
+        assertEquals(describe(state), state(armies));
+
+        fork.applyTo(armies[0], armies[1]);
+        assertEquals(describe(fork), state(armies));
+        assertEquals(describe(fork), describe(BattleState.of(armies[0], armies[1])));
+    }
+
+    /** Живость по битсету совпадает со здоровьем, подсчётом по сторонам и обходом {@code nextAlive}. */
+    private static void checkAlive(BattleState state, String where) {
+        for (boolean player : new boolean[]{true, false}) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < state.size(); i++) {
+                assertEquals(state.health(i) > 0, state.isAlive(i), where + ", unit " + i);
+                if (state.isPlayer(i) == player && state.isAlive(i)) expected.add(i);
+            }
+            List<Integer> walked = new ArrayList<>();
+            for (int i = state.nextAlive(0, player); i >= 0; i = state.nextAlive(i + 1, player)) {
+                walked.add(i);
+            }
+            assertEquals(expected, walked, where);
+            assertEquals(expected.size(), state.aliveCount(player), where);
+        }
+    }
+
+    private static int randomAlive(BattleState state, Random rnd, boolean player) {
+        int from = rnd.nextInt(state.size());
+        int i = state.nextAlive(from, player);
+        return (i >= 0) ? i : state.nextAlive(0, player);
+    }
+
+    /** 30–80 юнитов на сторону; у Archer два вида бонусов — в реестре это разные типы. */
+    private static Army[] armies(Random rnd) {
+        Map<String, Double> archerBonus = new HashMap<>();
+        archerBonus.put("Knight", 1.5);
+        String[] types = {"Knight", "Archer", "Pikeman"};
+        Army[] armies = {new Army(), new Army()};
+        for (int side = 0; side < 2; side++) {
+            List<Unit> units = new ArrayList<>();
+            for (int i = 0, n = 30 + rnd.nextInt(51); i < n; i++) {
+                String type = types[rnd.nextInt(types.length)];
+                Map<String, Double> attack = (type.equals("Archer") && rnd.nextBoolean())
+                        ? archerBonus : new HashMap<>();
+                units.add(new Unit(type + " " + side + "_" + i, type, 1 + rnd.nextInt(100), 5 + rnd.nextInt(30),
+                        10 + rnd.nextInt(20), type.equals("Archer") ? "Ranged" : "Melee", attack, new HashMap<>(),
+                        rnd.nextInt(27), rnd.nextInt(21)));
+            }
+            armies[side].setUnits(units);
+        }
+        return armies;
+    }
+
+    private static String describe(BattleState s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.size(); i++) {
+            sb.append(s.isPlayer(i) ? 'P' : 'C').append(' ').append(s.name(i)).append(' ').append(s.health(i))
+                    .append(' ').append(s.attack(i)).append(' ').append(s.isAlive(i)).append(' ').append(s.x(i))
+                    .append(',').append(s.y(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String state(Army[] armies) {
+        StringBuilder sb = new StringBuilder();
+        for (int side = 0; side < 2; side++) {
+            for (Unit u : armies[side].getUnits()) {
+                sb.append(side == 0 ? 'P' : 'C').append(' ').append(u.getName()).append(' ').append(u.getHealth())
+                        .append(' ').append(u.getBaseAttack()).append(' ').append(u.isAlive()).append(' ')
+                        .append(u.getxCoordinate()).append(',').append(u.getyCoordinate()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link CachingUnitTargetPathFinder} против поиска без кэша: те же пути при маленькой ёмкости (много вытеснений),
+ * хэш доски совпадает с хэшем списка юнитов, а возвращённый путь нельзя испортить ни для кэша, ни для других.
+ */
+class CachingUnitTargetPathFinderTest {
+
+    private static final int WIDTH = 27;
+    private static final int HEIGHT = 21;
+
+    private final UnitTargetPathFinderImpl plain = new UnitTargetPathFinderImpl();
+
+    @Test
+    void matchesUncachedFinder() {
+        Random rnd = new Random(7);
+        CachingUnitTargetPathFinder cached = new CachingUnitTargetPathFinder(new UnitTargetPathFinderImpl(), 64);
+        List<Unit> units = units(rnd);
+        OccupancyGrid grid = OccupancyGrid.of(units);
+        for (int query = 0; query < 20000; query++) {
+            if (rnd.nextInt(20) == 0) move(units, rnd, grid);
+            // небольшой набор пар, чтобы запросы повторялись
+            Unit attacker = units.get(rnd.nextInt(12));
+            Unit target = units.get(12 + rnd.nextInt(12));
+
+            List<Edge> expected = plain.getTargetPath(attacker, target, units);
+            List<Edge> actual = (query % 2 == 0)
+                    ? cached.getTargetPath(attacker, target, units)
+                    : cached.getTargetPath(attacker, target, grid.snapshot());
+            assertEquals(cells(expected), cells(actual), "query " + query);
+        }
+
+        CachingUnitTargetPathFinder.Stats stats = cached.stats();
+        assertEquals(20000, stats.getHits() + stats.getMisses());
+        assertTrue(stats.getHits() > 0, stats.toString());
+        assertTrue(stats.getEvictions() > 0, stats.toString());
+        assertTrue(stats.getSize() <= 64, stats.toString());
+    }
+
+    @Test
+    void listAndGridHashesAgree() {
+        Random rnd = new Random(77);
+        List<Unit> units = units(rnd);
+        OccupancyGrid grid = OccupancyGrid.of(units);
+        for (int step = 0; step < 500; step++) {
+            move(units, rnd, grid);
+            GridSearch search = GridSearch.local(WIDTH, HEIGHT);
+            search.begin();
+            assertEquals(grid.zobristHash(), search.zobristOf(units), "step " + step);
+            assertEquals(grid.zobristHash(), grid.snapshot().zobristHash(), "step " + step);
+        }
+    }
+
+    @Test
+    void cachedPathCannotBeCorrupted() {
+        List<Unit> units = units(new Random(777));
+        Unit attacker = units.get(0);
+        Unit target = units.get(1);
+        CachingUnitTargetPathFinder cached = new CachingUnitTargetPathFinder();
+
+        List<Edge> first = cached.getTargetPath(attacker, target, units);
+        assertTrue(first.size() > 1);
+        String expected = cells(first);
+        assertThrows(UnsupportedOperationException.class, () -> first.add(new Edge(0, 0)));
+        // свои клетки вызывающий менять может — на кэш это не влияет
+        first.get(0).setX(first.get(0).getX() + 1);
+
+        List<Edge> second = cached.getTargetPath(attacker, target, units);
+        assertEquals(expected, cells(second));
+        assertEquals(1, cached.stats().getHits());
+    }
+
+    private static List<Unit> units(Random rnd) {
+        List<Unit> units = new ArrayList<>();
+        boolean[] taken = new boolean[WIDTH * HEIGHT];
+        for (int i = 0; i < 120; i++) {
+            int c;
+            do {
+                c = rnd.nextInt(WIDTH * HEIGHT);
+            } while (taken[c]);
+            taken[c] = true;
+            units.add(new Unit("u" + i, "T", 10, 1, 1, "Melee", new HashMap<>(), new HashMap<>(),
+                    c % WIDTH, c / WIDTH));
+        }
+        return units;
+    }
+
+    /** Юнит (не из пар запросов) переходит на случайную свободную клетку — доска и её хэш меняются. */
+    private static void move(List<Unit> units, Random rnd, OccupancyGrid grid) {
+        Unit u = units.get(24 + rnd.nextInt(units.size() - 24));
+        int x = rnd.nextInt(WIDTH);
+        int y = rnd.nextInt(HEIGHT);
+        for (Unit other : units) {
+            if (other.getxCoordinate() == x && other.getyCoordinate() == y) return;
+        }
+        u.setxCoordinate(x);
+        u.setyCoordinate(y);
+        grid.onUnitMoved(u);
+    }
+
+    private static String cells(List<Edge> path) {
+        StringBuilder sb = new StringBuilder();
+        for (Edge e : path) {
+            sb.append(e.getX()).append(',').append(e.getY()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,280 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.util.GameSpeedUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Бой с расчётом заранее ({@link SimulateBattleImpl#setComputeAhead}): настоящие армии заканчивают бой в том
+ * состоянии, что записано в {@link SimulateBattleImpl#getLastTimeline()}, и в том же, что после обычного боя;
+ * итог приходит до первой атаки показа; {@link SimulateBattleImpl#skipToEnd()} снимает паузы, но итоги раундов
+ * выводятся все.
+ */
+class ComputeAheadTest {
+
+    private static final int BATTLES = 40;
+    private static final int PAUSE_MILLIS = 500;
+
+    @Test
+    void realArmiesEndInRecordedState() throws InterruptedException {
+        SimulateBattleImpl ahead = new SimulateBattleImpl();
+        ahead.setComputeAhead(true);
+        ahead.setPlaybackSpeed(new GameSpeedUtil(0));
+        for (long seed = 0; seed < BATTLES; seed++) {
+            Army[] armies = armies(seed);
+            String start = state(armies);
+            List<String> events = new ArrayList<>();
+            ahead.setLogSink(new RecordingSink(events));
+            ahead.simulate(armies[0], armies[1]);
+
+            BattleTimeline timeline = ahead.getLastTimeline();
+            assertNotNull(timeline, "seed " + seed);
+            assertEquals(replay(timeline, armies(seed)), state(armies), "seed " + seed);
+            assertEquals(timeline.getPlayerAlive(), alive(armies[0]), "seed " + seed);
+            assertEquals(timeline.getComputerAlive(), alive(armies[1]), "seed " + seed);
+            assertEquals(timeline.getRounds(), ahead.getRounds(), "seed " + seed);
+            assertFalse(start.equals(state(armies)), "seed " + seed);
+
+            // тот же бой без расчёта заранее: те же события и то же состояние армий
+            Army[] plain = armies(seed);
+            List<String> plainEvents = new ArrayList<>();
+            SimulateBattleImpl simulator = new SimulateBattleImpl();
+            simulator.setLogSink(new RecordingSink(plainEvents));
+            simulator.simulate(plain[0], plain[1]);
+            assertEquals(plainEvents, events, "seed " + seed);
+            assertEquals(state(plain), state(armies), "seed " + seed);
+        }
+    }
+
+    @Test
+    void outcomeComesBeforeFirstAttack() throws InterruptedException {
+        SimulateBattleImpl ahead = new SimulateBattleImpl();
+        ahead.setComputeAhead(true);
+        ahead.setPlaybackSpeed(new GameSpeedUtil(0));
+        List<String> events = new ArrayList<>();
+        List<BattleTimeline> outcomes = new ArrayList<>();
+        ahead.setLogSink(new RecordingSink(events));
+        ahead.setOutcomeListener(timeline -> {
+            outcomes.add(timeline);
+            events.add("outcome " + timeline.getWinner());
+        });
+
+        Army[] armies = armies(3L);
+        ahead.simulate(armies[0], armies[1]);
+
+        assertEquals(1, outcomes.size());
+        assertSame(ahead.getLastTimeline(), outcomes.get(0));
+        assertEquals("outcome " + outcomes.get(0).getWinner(), events.get(0));
+        assertTrue(events.size() > 1 && events.get(1).contains(">"), events.toString());
+    }
+
+    @Test
+    void skipToEndDropsPausesButKeepsRounds() throws InterruptedException {
+        SimulateBattleImpl ahead = new SimulateBattleImpl();
+        ahead.setComputeAhead(true);
+        // пауза показа — после каждого удара (шаг Chase сразу переходит в атаку, без паузы)
+        ahead.setPlaybackSpeed(new GameSpeedUtil(PAUSE_MILLIS));
+        CountDownLatch firstAttack = new CountDownLatch(1);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        ahead.setLogSink(new RecordingSink(events) {
+            @Override
+            public void onAttack(Unit attacker, Unit target) {
+                super.onAttack(attacker, target);
+                firstAttack.countDown();
+            }
+        });
+
+        Army[] armies = armies(5L);
+        Thread battle = new Thread(() -> {
+            try {
+                ahead.simulate(armies[0], armies[1]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long began = System.nanoTime();
+        battle.start();
+        assertTrue(firstAttack.await(10, TimeUnit.SECONDS));
+        ahead.skipToEnd();
+        battle.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(battle.isAlive(), "playback must finish after skipToEnd");
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - began) < 10);
+
+        BattleTimeline timeline = ahead.getLastTimeline();
+        List<String> rounds = new ArrayList<>();
+        int pauses = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.kind(i) == BattleTimeline.Kind.DAMAGE) pauses++;
+            if (timeline.kind(i) == BattleTimeline.Kind.ROUND_OVER) {
+                rounds.add("round " + timeline.round(i) + ": " + timeline.playerAlive(i) + "/"
+                        + timeline.computerAlive(i));
+            }
+        }
+        // одни удары без промотки показывались бы дольше, чем ждёт тест
+        assertTrue(pauses * PAUSE_MILLIS > TimeUnit.SECONDS.toMillis(10), "battle is too short to skip: " + pauses);
+        List<String> shown = new ArrayList<>(events);
+        shown.removeIf(e -> !e.startsWith("round "));
+        assertEquals(rounds, shown);
+        assertEquals(replay(timeline, armies(5L)), state(armies));
+    }
+
+    /** Исходные армии, к которым применены шаги, урон и гибели записи. */
+    private static String replay(BattleTimeline timeline, Army[] armies) {
+        List<Unit> units = new ArrayList<>(armies[0].getUnits());
+        units.addAll(armies[1].getUnits());
+        for (int i = 0; i < timeline.size(); i++) {
+            switch (timeline.kind(i)) {
+                case MOVE -> {
+                    units.get(timeline.unit(i)).setxCoordinate(timeline.x(i));
+                    units.get(timeline.unit(i)).setyCoordinate(timeline.y(i));
+                }
+                case DAMAGE -> units.get(timeline.unit(i)).setHealth(timeline.health(i));
+                case DEATH -> units.get(timeline.unit(i)).setAlive(false);
+                default -> {
+                }
+            }
+        }
+        return state(armies);
+    }
+
+    /** 4–15 юнитов на сторону в своих зонах; бой решается за несколько раундов сближения и ударов. */
+    private static Army[] armies(long seed) {
+        Random rnd = new Random(seed);
+        Army[] armies = {new Army(), new Army()};
+        Set<Integer> taken = new HashSet<>();
+        for (int side = 0; side < 2; side++) {
+            List<Unit> units = new ArrayList<>();
+            int baseX = (side == 0) ? 24 : 0;
+            for (int i = 0, n = 4 + rnd.nextInt(12); i < n; i++) {
+                int x;
+                int y;
+                do {
+                    x = baseX + rnd.nextInt(3);
+                    y = rnd.nextInt(OccupancyGrid.DEFAULT_HEIGHT);
+                } while (!taken.add(y * OccupancyGrid.DEFAULT_WIDTH + x));
+                units.add(new Unit("u" + side + "_" + i, "T", 30 + rnd.nextInt(60), 5 + rnd.nextInt(20), 1,
+                        "Melee", new HashMap<>(), new HashMap<>(), x, y));
+            }
+            armies[side].setUnits(units);
+        }
+        for (int side = 0; side < 2; side++) {
+            for (Unit u : armies[side].getUnits()) {
+                u.setProgram(new Chase(u, armies[side], armies[1 - side]));
+            }
+        }
+        return armies;
+    }
+
+    private static String state(Army[] armies) {
+        StringBuilder sb = new StringBuilder();
+        for (Army army : armies) {
+            for (Unit u : army.getUnits()) {
+                sb.append(u.getName()).append(' ').append(u.getHealth()).append(' ').append(u.isAlive())
+                        .append(' ').append(u.getxCoordinate()).append(',').append(u.getyCoordinate()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int alive(Army army) {
+        int alive = 0;
+        for (Unit u : army.getUnits()) {
+            if (u.isAlive()) alive++;
+        }
+        return alive;
+    }
+
+    /**
+     * Идёт к самому слабому живому врагу по клетке за ход и бьёт, когда встал рядом; застрявший юнит после
+     * {@link #MAX_TURNS} ходов сдаётся, чтобы бой кончился. Без случайности, поэтому копия программы в записи
+     * ведёт себя так же, как оригинал.
+     */
+    private static final class Chase extends Program {
+
+        static final int MAX_TURNS = 200;
+
+        private int turns;
+
+        Chase(Unit unit, Army ally, Army enemy) {
+            super(unit, ally, enemy, new GameSpeedUtil(0));
+        }
+
+        @Override
+        public Unit attack() {
+            if (++turns > MAX_TURNS) {
+                unit.setAlive(false);
+                return null;
+            }
+            Unit target = null;
+            for (Unit u : enemyArmy.getUnits()) {
+                if (u.isAlive() && (target == null || u.getHealth() < target.getHealth())) target = u;
+            }
+            if (target == null) return null;
+            int dx = Integer.signum(target.getxCoordinate() - unit.getxCoordinate());
+            int dy = Integer.signum(target.getyCoordinate() - unit.getyCoordinate());
+            int x = unit.getxCoordinate();
+            int y = unit.getyCoordinate();
+            if (x + dx != target.getxCoordinate() || y + dy != target.getyCoordinate()) {
+                // прямо, иначе в обход по одной из осей
+                int[][] steps = {{dx, dy}, {dx, 0}, {0, dy}};
+                for (int[] step : steps) {
+                    if ((step[0] != 0 || step[1] != 0) && free(x + step[0], y + step[1])) {
+                        unit.setxCoordinate(x + step[0]);
+                        unit.setyCoordinate(y + step[1]);
+                        break;
+                    }
+                }
+                return null;
+            }
+            target.setHealth(target.getHealth() - unit.getBaseAttack());
+            if (target.getHealth() <= 0) target.setAlive(false);
+            return target;
+        }
+
+        private boolean free(int x, int y) {
+            for (Army army : new Army[]{allyArmy, enemyArmy}) {
+                for (Unit u : army.getUnits()) {
+                    if (u.isAlive() && u.getxCoordinate() == x && u.getyCoordinate() == y) return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class RecordingSink implements BattleLogSink {
+
+        private final List<String> events;
+
+        RecordingSink(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onAttack(Unit attacker, Unit target) {
+            events.add(attacker.getName() + ">" + ((target == null) ? "-" : target.getName()));
+        }
+
+        @Override
+        public void onRoundOver(int round, int playerAlive, int computerAlive) {
+            events.add("round " + round + ": " + playerAlive + "/" + computerAlive);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link FlowFieldPathFinder} против {@link UnitTargetPathFinderImpl} в режиме BFS: та же достижимость и длина
+ * пути, а сам путь — цепочка соседних свободных клеток от атакующего до цели. Доска между запросами меняется
+ * (ходы и гибели), так что проверяется и сброс полей — по списку юнитов и по версии {@link OccupancyGrid}.
+ */
+class FlowFieldPathFinderTest {
+
+    private static final int WIDTH = 27;
+    private static final int HEIGHT = 21;
+
+    private final UnitTargetPathFinderImpl bfs = new UnitTargetPathFinderImpl(UnitTargetPathFinderImpl.Mode.BFS);
+
+    @Test
+    void matchesBfsByUnitList() {
+        Random rnd = new Random(4);
+        for (int board = 0; board < 40; board++) {
+            List<Unit> units = units(rnd);
+            FlowFieldPathFinder flow = new FlowFieldPathFinder();
+            for (int query = 0; query < 150; query++) {
+                change(units, rnd, null);
+                check(units, rnd, flow, "board " + board + ", query " + query);
+            }
+        }
+    }
+
+    @Test
+    void matchesBfsByBattleGrid() {
+        Random rnd = new Random(44);
+        for (int board = 0; board < 40; board++) {
+            List<Unit> units = units(rnd);
+            OccupancyGrid grid = OccupancyGrid.of(units);
+            FlowFieldPathFinder flow = new FlowFieldPathFinder(grid);
+            for (int query = 0; query < 150; query++) {
+                change(units, rnd, grid);
+                check(units, rnd, flow, "board " + board + ", query " + query);
+            }
+        }
+    }
+
+    private void check(List<Unit> units, Random rnd, FlowFieldPathFinder flow, String where) {
+        List<Unit> alive = new ArrayList<>();
+        for (Unit u : units) {
+            if (u.isAlive()) alive.add(u);
+        }
+        if (alive.size() < 2) return;
+        Unit attacker = alive.get(rnd.nextInt(alive.size()));
+        Unit target = alive.get(rnd.nextInt(alive.size()));
+
+        List<Edge> expected = bfs.getTargetPath(attacker, target, units);
+        List<Edge> actual = flow.getTargetPath(attacker, target, units);
+        assertEquals(expected.size(), actual.size(), where);
+        assertEquals(expected.size() - 1, Math.max(-1, flow.distance(attacker, target, units)), where);
+        if (actual.isEmpty()) return;
+
+        Edge first = actual.get(0);
+        Edge last = actual.get(actual.size() - 1);
+        assertTrue(first.getX() == attacker.getxCoordinate() && first.getY() == attacker.getyCoordinate(), where);
+        assertTrue(last.getX() == target.getxCoordinate() && last.getY() == target.getyCoordinate(), where);
+        for (int i = 1; i < actual.size(); i++) {
+            Edge a = actual.get(i - 1);
+            Edge b = actual.get(i);
+            assertTrue(Math.max(Math.abs(a.getX() - b.getX()), Math.abs(a.getY() - b.getY())) == 1, where);
+            if (i < actual.size() - 1) assertFalse(occupied(units, b.getX(), b.getY()), where);
+        }
+    }
+
+    /** 40–200 юнитов на разных клетках: от свободной доски до почти заставленной. */
+    private static List<Unit> units(Random rnd) {
+        List<Unit> units = new ArrayList<>();
+        boolean[] taken = new boolean[WIDTH * HEIGHT];
+        for (int i = 0, n = 40 + rnd.nextInt(160); i < n; i++) {
+            int c;
+            do {
+                c = rnd.nextInt(WIDTH * HEIGHT);
+            } while (taken[c]);
+            taken[c] = true;
+            units.add(new Unit("u" + i, "T", 10, 1, 1, "Melee", new HashMap<>(), new HashMap<>(),
+                    c % WIDTH, c / WIDTH));
+        }
+        return units;
+    }
+
+    /** Один юнит делает шаг на свободную клетку или погибает. */
+    private static void change(List<Unit> units, Random rnd, OccupancyGrid grid) {
+        Unit u = units.get(rnd.nextInt(units.size()));
+        if (!u.isAlive()) return;
+        if (rnd.nextInt(6) == 0) {
+            u.setAlive(false);
+            if (grid != null) grid.onUnitDied(u);
+            return;
+        }
+        int x = Math.min(WIDTH - 1, Math.max(0, u.getxCoordinate() + rnd.nextInt(3) - 1));
+        int y = Math.min(HEIGHT - 1, Math.max(0, u.getyCoordinate() + rnd.nextInt(3) - 1));
+        if (occupied(units, x, y)) return;
+        u.setxCoordinate(x);
+        u.setyCoordinate(y);
+        if (grid != null) grid.onUnitMoved(u);
+    }
+
+    private static boolean occupied(List<Unit> units, int x, int y) {
+        for (Unit u : units) {
+            if (u.isAlive() && u.getxCoordinate() == x && u.getyCoordinate() == y) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,72 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@link FrontierIndex} против списочного {@link SuitableForAttackUnitsFinderImpl#getSuitableUnits(List, boolean)}
+ * по рядам доски ({@code y}, юниты в порядке армии) — после каждого шага, гибели или нескольких юнитов на клетке.
+ */
+class FrontierIndexTest {
+
+    private static final int WIDTH = 27;
+    private static final int HEIGHT = 21;
+
+    private final SuitableForAttackUnitsFinderImpl finder = new SuitableForAttackUnitsFinderImpl();
+
+    @Test
+    void matchesListFinderByBoardRows() {
+        Random rnd = new Random(15);
+        for (int battle = 0; battle < 200; battle++) {
+            List<Unit> army = new ArrayList<>();
+            for (int i = 0, n = 1 + rnd.nextInt(60); i < n; i++) {
+                // узкая зона — чтобы часто было несколько юнитов на клетке и в ряду
+                army.add(unit("u" + i, rnd.nextInt(4), rnd.nextInt(HEIGHT)));
+            }
+            FrontierIndex index = FrontierIndex.of(army);
+            for (int step = 0; step < 300; step++) {
+                Unit u = army.get(rnd.nextInt(army.size()));
+                if (rnd.nextInt(5) == 0) {
+                    u.setAlive(false);
+                    index.onUnitDied(u);
+                } else {
+                    u.setxCoordinate(rnd.nextInt(WIDTH));
+                    u.setyCoordinate(rnd.nextInt(HEIGHT));
+                    index.onUnitMoved(u);
+                }
+                for (boolean left : new boolean[]{true, false}) {
+                    List<Unit> expected = finder.getSuitableUnits(boardRows(army), left);
+                    List<Unit> actual = finder.getSuitableUnits(index, left);
+                    assertEquals(expected.size(), actual.size(), "battle " + battle + ", step " + step);
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertSame(expected.get(i), actual.get(i), "battle " + battle + ", step " + step);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<List<Unit>> boardRows(List<Unit> army) {
+        List<List<Unit>> rows = new ArrayList<>(HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            List<Unit> row = new ArrayList<>();
+            for (Unit u : army) {
+                if (u.getyCoordinate() == y) row.add(u);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Unit unit(String name, int x, int y) {
+        return new Unit(name, "Archer", 10, 5, 1, "Ranged", new HashMap<>(), new HashMap<>(), x, y);
+    }
+}
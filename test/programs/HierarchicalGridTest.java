@@ -0,0 +1,183 @@
+package programs;
+
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link HierarchicalGrid} и режим {@link UnitTargetPathFinderImpl.Mode#HIERARCHICAL} против BFS на случайных
+ * досках, где юниты между запросами ходят и гибнут: путь — цепочка соседних свободных клеток, достижимость та же,
+ * а длина не меньше кратчайшей. Абстракция, доведённая до новой занятости инкрементальным
+ * {@link HierarchicalGrid#sync}, даёт те же пути, что построенная с нуля.
+ */
+class HierarchicalGridTest {
+
+    private static final BoardConfig BOARD = new BoardConfig(120, 90, 3);
+    private static final int WIDTH = BOARD.getWidth();
+    private static final int HEIGHT = BOARD.getHeight();
+
+    private final UnitTargetPathFinderImpl bfs = new UnitTargetPathFinderImpl(UnitTargetPathFinderImpl.Mode.BFS, BOARD);
+
+    @Test
+    void finderMatchesBfsReachability() {
+        UnitTargetPathFinderImpl hierarchical =
+                new UnitTargetPathFinderImpl(UnitTargetPathFinderImpl.Mode.HIERARCHICAL, BOARD);
+        Random rnd = new Random(20);
+        int longer = 0;
+        for (int board = 0; board < 20; board++) {
+            List<Unit> units = units(rnd);
+            for (int query = 0; query < 60; query++) {
+                change(units, rnd);
+                Unit[] pair = pair(units, rnd);
+                if (pair == null) continue;
+                String where = "board " + board + ", query " + query;
+
+                List<Edge> expected = bfs.getTargetPath(pair[0], pair[1], units);
+                List<Edge> actual = hierarchical.getTargetPath(pair[0], pair[1], units);
+                assertEquals(expected.isEmpty(), actual.isEmpty(), where);
+                if (actual.isEmpty()) continue;
+                assertTrue(actual.size() >= expected.size(), where);
+                if (actual.size() > expected.size()) longer++;
+                checkPath(actual, cell(pair[0]), cell(pair[1]), occupied(units), where);
+            }
+        }
+        // пути через точки перехода бывают длиннее — значит, запросы действительно шли через абстракцию
+        assertTrue(longer > 0, "every path matched BFS length");
+    }
+
+    @Test
+    void incrementalSyncMatchesRebuild() {
+        for (int clusterSize : new int[]{7, HierarchicalGrid.DEFAULT_CLUSTER_SIZE}) {
+            Random rnd = new Random(200 + clusterSize);
+            int served = 0;
+            for (int board = 0; board < 10; board++) {
+                List<Unit> units = units(rnd);
+                HierarchicalGrid incremental = new HierarchicalGrid(WIDTH, HEIGHT, clusterSize);
+                for (int query = 0; query < 60; query++) {
+                    // несколько изменений между запросами — sync видит сразу пачку клеток
+                    for (int i = rnd.nextInt(4); i >= 0; i--) {
+                        change(units, rnd);
+                    }
+                    Unit[] pair = pair(units, rnd);
+                    if (pair == null) continue;
+                    String where = "cluster " + clusterSize + ", board " + board + ", query " + query;
+                    int start = cell(pair[0]);
+                    int end = cell(pair[1]);
+
+                    incremental.sync(incremental.occupancyOf(units));
+                    List<Edge> actual = incremental.findPath(start, end);
+                    HierarchicalGrid fresh = new HierarchicalGrid(WIDTH, HEIGHT, clusterSize);
+                    fresh.sync(fresh.occupancyOf(units));
+                    List<Edge> rebuilt = fresh.findPath(start, end);
+                    assertEquals(cells(rebuilt), cells(actual), where);
+                    if (actual == null) continue;
+
+                    served++;
+                    List<Edge> expected = bfs.getTargetPath(pair[0], pair[1], units);
+                    assertFalse(expected.isEmpty(), where);
+                    assertTrue(actual.size() >= expected.size(), where);
+                    checkPath(actual, start, end, occupied(units), where);
+                }
+            }
+            assertTrue(served > 0, "cluster " + clusterSize + ": no query was answered by the abstraction");
+        }
+    }
+
+    /** Путь от {@code start} до {@code end}: соседние по 8 направлениям клетки, промежуточные свободны. */
+    private static void checkPath(List<Edge> path, int start, int end, boolean[] occupied, String where) {
+        assertEquals(start, path.get(0).getY() * WIDTH + path.get(0).getX(), where);
+        Edge last = path.get(path.size() - 1);
+        assertEquals(end, last.getY() * WIDTH + last.getX(), where);
+        for (int i = 1; i < path.size(); i++) {
+            Edge a = path.get(i - 1);
+            Edge b = path.get(i);
+            assertEquals(1, Math.max(Math.abs(a.getX() - b.getX()), Math.abs(a.getY() - b.getY())), where);
+            if (i < path.size() - 1) assertFalse(occupied[b.getY() * WIDTH + b.getX()], where);
+        }
+    }
+
+    /** Атакующий и цель — разные живые юниты; {@code null}, если живых меньше двух. */
+    private static Unit[] pair(List<Unit> units, Random rnd) {
+        List<Unit> alive = new ArrayList<>();
+        for (Unit u : units) {
+            if (u.isAlive()) alive.add(u);
+        }
+        if (alive.size() < 2) return null;
+        Unit attacker = alive.get(rnd.nextInt(alive.size()));
+        Unit target;
+        do {
+            target = alive.get(rnd.nextInt(alive.size()));
+        } while (target == attacker);
+        return new Unit[]{attacker, target};
+    }
+
+    /** От 5 до 35% доски занято: от почти свободной до лабиринта с отрезанными областями. */
+    private static List<Unit> units(Random rnd) {
+        List<Unit> units = new ArrayList<>();
+        boolean[] taken = new boolean[WIDTH * HEIGHT];
+        int n = WIDTH * HEIGHT * (5 + rnd.nextInt(31)) / 100;
+        for (int i = 0; i < n; i++) {
+            int c;
+            do {
+                c = rnd.nextInt(WIDTH * HEIGHT);
+            } while (taken[c]);
+            taken[c] = true;
+            units.add(new Unit("u" + i, "T", 10, 1, 1, "Melee", new HashMap<>(), new HashMap<>(),
+                    c % WIDTH, c / WIDTH));
+        }
+        return units;
+    }
+
+    /** Один юнит шагает на соседнюю свободную клетку, перескакивает на случайную или погибает. */
+    private static void change(List<Unit> units, Random rnd) {
+        Unit u = units.get(rnd.nextInt(units.size()));
+        if (!u.isAlive()) return;
+        int kind = rnd.nextInt(8);
+        if (kind == 0) {
+            u.setAlive(false);
+            return;
+        }
+        int x;
+        int y;
+        if (kind == 1) {
+            x = rnd.nextInt(WIDTH);
+            y = rnd.nextInt(HEIGHT);
+        } else {
+            x = Math.min(WIDTH - 1, Math.max(0, u.getxCoordinate() + rnd.nextInt(3) - 1));
+            y = Math.min(HEIGHT - 1, Math.max(0, u.getyCoordinate() + rnd.nextInt(3) - 1));
+        }
+        if (occupied(units)[y * WIDTH + x]) return;
+        u.setxCoordinate(x);
+        u.setyCoordinate(y);
+    }
+
+    private static boolean[] occupied(List<Unit> units) {
+        boolean[] occupied = new boolean[WIDTH * HEIGHT];
+        for (Unit u : units) {
+            if (u.isAlive()) occupied[cell(u)] = true;
+        }
+        return occupied;
+    }
+
+    private static int cell(Unit u) {
+        return u.getyCoordinate() * WIDTH + u.getxCoordinate();
+    }
+
+    private static String cells(List<Edge> path) {
+        if (path == null) return "null";
+        StringBuilder sb = new StringBuilder();
+        for (Edge e : path) {
+            sb.append(e.getX()).append(',').append(e.getY()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Edge;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.util.GameSpeedUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Бой с планами ходов ({@link SimulateBattleImpl#setPlanningThreads}) против того же боя без них: одинаковые пути
+ * каждого запроса, атаки, итоги раундов и выжившие.
+ * <p>
+ * Программы библиотеки перемешивают цели несидированным {@code Collections.shuffle}, поэтому здесь свои: цель
+ * берётся общим сидированным {@link Random}, путь — через {@link UnitTargetPathFinderImpl} в режиме BFS, юнит
+ * проходит по нему до трёх клеток и бьёт соседнюю цель. Часть программ передаёт поиску не всех юнитов доски, а
+ * только противника — для таких запросов план не подходит, и путь должен быть тем, что найдёт обычный поиск.
+ * Планы должны действительно отдаваться — это видно по {@link MovePlanner#SERVED}.
+ */
+class PlannedBattleTest {
+
+    private static final int BATTLES = 60;
+    // после стольких ходов юниты сдаются — бой с недостижимыми целями тоже заканчивается
+    private static final int MAX_MOVES = 4000;
+
+    @Test
+    void plannedBattleMatchesSequential() throws InterruptedException {
+        SimulateBattleImpl planned = new SimulateBattleImpl();
+        planned.setPlanningThreads(2);
+        long served = MovePlanner.SERVED.sum();
+        for (long seed = 0; seed < BATTLES; seed++) {
+            assertEquals(battle(new SimulateBattleImpl(), seed), battle(planned, seed), "seed " + seed);
+        }
+        // без отданных планов сравнение проверяло бы только обычный поиск
+        assertTrue(MovePlanner.SERVED.sum() > served, "no planned path was served");
+    }
+
+    private static List<String> battle(SimulateBattleImpl simulator, long seed) throws InterruptedException {
+        List<String> events = new ArrayList<>();
+        Army[] armies = armies(seed, events);
+        simulator.setLogSink(new RecordingSink(events));
+        simulator.simulate(armies[0], armies[1]);
+        events.add("alive " + alive(armies[0]) + "/" + alive(armies[1]));
+        return events;
+    }
+
+    /** Полные зоны: юниты игрока на x 24..26, компьютера на 0..2, до 40 на сторону, на разных клетках. */
+    private static Army[] armies(long seed, List<String> events) {
+        Random rnd = new Random(seed);
+        Battle battle = new Battle(new Random(seed * 31), events);
+        Army[] armies = {new Army(), new Army()};
+        Set<Integer> taken = new HashSet<>();
+        for (int side = 0; side < 2; side++) {
+            List<Unit> units = new ArrayList<>();
+            int baseX = (side == 0) ? 24 : 0;
+            for (int i = 0, n = 5 + rnd.nextInt(36); i < n; i++) {
+                int x;
+                int y;
+                do {
+                    x = baseX + rnd.nextInt(3);
+                    y = rnd.nextInt(OccupancyGrid.DEFAULT_HEIGHT);
+                } while (!taken.add(y * OccupancyGrid.DEFAULT_WIDTH + x));
+                units.add(new Unit("u" + side + "_" + i, "T", 20 + rnd.nextInt(60), 5 * (1 + rnd.nextInt(6)), 1,
+                        "Melee", new HashMap<>(), new HashMap<>(), x, y));
+            }
+            armies[side].setUnits(units);
+        }
+        for (int side = 0; side < 2; side++) {
+            for (Unit u : armies[side].getUnits()) {
+                u.setProgram(new Approach(u, armies[side], armies[1 - side], battle, rnd.nextInt(4) != 0));
+            }
+        }
+        return armies;
+    }
+
+    private static int alive(Army army) {
+        int alive = 0;
+        for (Unit u : army.getUnits()) {
+            if (u.isAlive()) alive++;
+        }
+        return alive;
+    }
+
+    /** Общее для программ одного боя: случайные числа и запись путей. */
+    private static final class Battle {
+
+        final Random rnd;
+        final List<String> events;
+        int moves;
+
+        Battle(Random rnd, List<String> events) {
+            this.rnd = rnd;
+            this.events = events;
+        }
+    }
+
+    private static final class Approach extends Program {
+
+        // имя поля — как у программ библиотеки: по нему планировщик находит поиск пути программы
+        private final UnitTargetPathFinderImpl unitTargetPathFinder = new UnitTargetPathFinderImpl();
+        private final Battle battle;
+        // true — поиску передаются все юниты доски, false — только противник
+        private final boolean wholeBoard;
+
+        Approach(Unit unit, Army ally, Army enemy, Battle battle, boolean wholeBoard) {
+            super(unit, ally, enemy, new GameSpeedUtil(0));
+            this.battle = battle;
+            this.wholeBoard = wholeBoard;
+        }
+
+        @Override
+        public Unit attack() {
+            if (++battle.moves > MAX_MOVES) {
+                unit.setAlive(false);
+                return null;
+            }
+            List<Unit> targets = new ArrayList<>();
+            for (Unit u : enemyArmy.getUnits()) {
+                if (u.isAlive()) targets.add(u);
+            }
+            if (targets.isEmpty()) return null;
+            Unit target = targets.get(battle.rnd.nextInt(targets.size()));
+
+            List<Unit> existing = new ArrayList<>(enemyArmy.getUnits());
+            if (wholeBoard) existing.addAll(allyArmy.getUnits());
+            List<Edge> path = unitTargetPathFinder.getTargetPath(unit, target, existing);
+            battle.events.add(unit.getName() + " path " + cells(path));
+
+            if (path.size() > 2) {
+                Edge to = path.get(Math.min(3, path.size() - 2));
+                unit.setxCoordinate(to.getX());
+                unit.setyCoordinate(to.getY());
+                return null;
+            }
+            if (path.isEmpty()) return null;
+            target.setHealth(target.getHealth() - unit.getBaseAttack());
+            if (target.getHealth() <= 0) target.setAlive(false);
+            return target;
+        }
+
+        private static String cells(List<Edge> path) {
+            StringBuilder sb = new StringBuilder();
+            for (Edge e : path) {
+                sb.append(e.getX()).append(',').append(e.getY()).append(' ');
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final class RecordingSink implements BattleLogSink {
+
+        private final List<String> events;
+
+        RecordingSink(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onAttack(Unit attacker, Unit target) {
+            events.add(attacker.getName() + ">" + ((target == null) ? "-" : target.getName()));
+        }
+
+        @Override
+        public void onRoundOver(int round, int playerAlive, int computerAlive) {
+            events.add("round " + round + ": " + playerAlive + "/" + computerAlive);
+        }
+    }
+}
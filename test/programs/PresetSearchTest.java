@@ -0,0 +1,186 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.util.GameSpeedUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Режим {@link GeneratePresetImpl.Mode#SEARCH}: поиск укладывается в отведённое время, отсекает кандидатов, которые
+ * заведомо хуже лучшего, и возвращает армию в пределах очков и лимита юнитов на тип. Если бой кандидата сыграть
+ * нельзя, {@code generate} отдаёт состав без поиска.
+ */
+class PresetSearchTest {
+
+    private static final int MAX_POINTS = 500;
+    private static final long BUDGET_MILLIS = 400;
+
+    @Test
+    void stopsWithinBudgetAndCutsWeakCandidates() {
+        List<Unit> templates = templates(false);
+        GeneratePresetImpl exact = new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT);
+        Army start = exact.generate(templates, MAX_POINTS);
+
+        PresetSearch search = new PresetSearch(reference(), 12, BUDGET_MILLIS, 2);
+        long began = System.nanoTime();
+        PresetSearch.Result result = search.search(templates, allowed(templates),
+                GeneratePresetImpl.DEFAULT_MAX_UNITS_PER_TYPE, MAX_POINTS, owner(start, templates),
+                o -> armyOf(o, templates), 1L);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+
+        // срок проверяется перед каждым боем — опоздание не больше одного боя
+        assertTrue(elapsed < BUDGET_MILLIS + 1000, "search took " + elapsed + " ms");
+        assertTrue(result.generations > 1, "generations " + result.generations);
+        assertTrue(result.cut > 0, "no candidate was cut after " + result.evaluated);
+        assertTrue(result.score >= 0 && result.score <= 1, "score " + result.score);
+    }
+
+    @Test
+    void searchedArmyRespectsLimits() {
+        GeneratePresetImpl generator = new GeneratePresetImpl(GeneratePresetImpl.Mode.SEARCH);
+        generator.setReferenceArmy(reference());
+        generator.setSearchLimits(BUDGET_MILLIS, 8, 2);
+        Army army = generator.generate(templates(false), MAX_POINTS);
+
+        int points = 0;
+        Set<Integer> cells = new HashSet<>();
+        for (Unit u : army.getUnits()) {
+            points += u.getCost();
+            assertTrue(u.getxCoordinate() >= 0 && u.getxCoordinate() < 3, u.getName());
+            assertTrue(cells.add(u.getyCoordinate() * 3 + u.getxCoordinate()), "two units on one cell");
+        }
+        assertTrue(points <= MAX_POINTS, "points " + points);
+        for (int count : typeCounts(army).values()) {
+            assertTrue(count <= GeneratePresetImpl.DEFAULT_MAX_UNITS_PER_TYPE, "count " + count);
+        }
+    }
+
+    @Test
+    void failingProgramFallsBackToExactArmy() {
+        List<Unit> templates = templates(true);
+        Army exact = new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT).generate(templates, MAX_POINTS);
+
+        GeneratePresetImpl generator = new GeneratePresetImpl(GeneratePresetImpl.Mode.SEARCH);
+        generator.setReferenceArmy(reference());
+        generator.setSearchLimits(BUDGET_MILLIS, 8, 2);
+        Army army = generator.generate(templates, MAX_POINTS);
+        assertEquals(typeCounts(exact), typeCounts(army));
+    }
+
+    /** Армия игрока: 12 одинаковых юнитов на правом краю. */
+    private static Army reference() {
+        Army army = new Army();
+        List<Unit> units = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            units.add(new Unit("Guard " + i, "Guard", 70, 15, 20, "Melee", new HashMap<>(), new HashMap<>(),
+                    24 + i % 3, i));
+        }
+        army.setUnits(units);
+        for (Unit u : units) {
+            u.setProgram(new Strike(u, army, null));
+        }
+        return army;
+    }
+
+    /** {@code unclonable} — у Knight программа, копию которой создать нельзя. */
+    private static List<Unit> templates(boolean unclonable) {
+        List<Unit> templates = new ArrayList<>();
+        templates.add(template("Knight", 100, 25, 30, unclonable));
+        templates.add(template("Swordsman", 90, 18, 25, false));
+        templates.add(template("Archer", 50, 20, 20, false));
+        templates.add(template("Pikeman", 60, 12, 15, false));
+        return templates;
+    }
+
+    private static Unit template(String type, int health, int attack, int cost, boolean unclonable) {
+        Unit t = new Unit(type, type, health, attack, cost, "Melee", new HashMap<>(), new HashMap<>(), 0, 0);
+        t.setProgram(unclonable ? new Fragile(t) : new Strike(t, null, null));
+        return t;
+    }
+
+    /** Поиску доступны все шаблоны. */
+    private static boolean[] allowed(List<Unit> templates) {
+        boolean[] allowed = new boolean[templates.size()];
+        Arrays.fill(allowed, true);
+        return allowed;
+    }
+
+    /** Владельцы клеток зоны 3x21 по армии из {@code generate}. */
+    private static int[] owner(Army army, List<Unit> templates) {
+        int[] owner = new int[3 * 21];
+        Arrays.fill(owner, -1);
+        for (Unit u : army.getUnits()) {
+            for (int j = 0; j < templates.size(); j++) {
+                if (templates.get(j).getUnitType().equals(u.getUnitType())) {
+                    owner[u.getyCoordinate() * 3 + u.getxCoordinate()] = j;
+                }
+            }
+        }
+        return owner;
+    }
+
+    private static Army armyOf(int[] owner, List<Unit> templates) {
+        List<Unit> units = new ArrayList<>();
+        for (int c = 0; c < owner.length; c++) {
+            if (owner[c] < 0) continue;
+            Unit t = templates.get(owner[c]);
+            Unit u = new Unit(t.getName() + " " + c, t.getUnitType(), t.getHealth(), t.getBaseAttack(), t.getCost(),
+                    "Melee", new HashMap<>(), new HashMap<>(), c % 3, c / 3);
+            u.setProgram(new Strike(u, null, null));
+            units.add(u);
+        }
+        Army army = new Army();
+        army.setUnits(units);
+        return army;
+    }
+
+    private static Map<String, Integer> typeCounts(Army army) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Unit u : army.getUnits()) {
+            counts.merge(u.getUnitType(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /** Бьёт самого слабого живого врага. */
+    private static class Strike extends Program {
+
+        Strike(Unit unit, Army ally, Army enemy) {
+            super(unit, ally, enemy, new GameSpeedUtil(0));
+        }
+
+        @Override
+        public Unit attack() {
+            Unit target = null;
+            for (Unit u : enemyArmy.getUnits()) {
+                if (u.isAlive() && (target == null || u.getHealth() < target.getHealth())) target = u;
+            }
+            if (target == null) return null;
+            target.setHealth(target.getHealth() - unit.getBaseAttack());
+            if (target.getHealth() <= 0) target.setAlive(false);
+            return target;
+        }
+    }
+
+    /** Конструктор не принимает {@code null}, поэтому копию для другого боя создать нельзя. */
+    private static final class Fragile extends Strike {
+
+        Fragile(Unit unit) {
+            super(Objects.requireNonNull(unit), null, null);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Таблицы составов на диске: по умолчанию не пишутся, подложенный файл с верным ключом не нарушает правил. */
+class PresetTableTest {
+
+    private static final int MAX_POINTS = 1500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void noFilesByDefault() throws IOException {
+        // здоровье от времени — ключ таблицы, которой в общем каталоге ещё не было
+        List<Unit> templates = templates();
+        templates.add(template("Scout", 1 + (int) (System.nanoTime() & 0xFFFF), 5, 7));
+        List<Path> before = list(GeneratePresetImpl.DEFAULT_PRESET_DIR);
+        new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT).generate(templates, MAX_POINTS);
+        new GeneratePresetImpl().generate(templates, MAX_POINTS);
+        assertEquals(before, list(GeneratePresetImpl.DEFAULT_PRESET_DIR));
+    }
+
+    @Test
+    void savedTableIsReused() throws IOException {
+        Army first = new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT, dir).generate(templates(), MAX_POINTS);
+        Path file = tableFile();
+        Army second = new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT, dir).generate(templates(), MAX_POINTS);
+        assertEquals(typeCounts(first), typeCounts(second));
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void tamperedRowsAreRejected() throws IOException {
+        new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT, dir).generate(templates(), MAX_POINTS);
+        Army honest = new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT, null).generate(templates(), MAX_POINTS);
+
+        // заголовок и ключ остаются, во всех строках — по 15 юнитов каждого шаблона
+        Path file = tableFile();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer rows = ByteBuffer.allocate((int) channel.size() - 32);
+            while (rows.hasRemaining()) {
+                rows.put((byte) 0xFF);
+            }
+            rows.flip();
+            channel.write(rows, 32);
+        }
+
+        Army army = new GeneratePresetImpl(GeneratePresetImpl.Mode.EXACT, dir).generate(templates(), MAX_POINTS);
+        int points = 0;
+        for (Unit u : army.getUnits()) {
+            points += u.getCost();
+        }
+        assertTrue(points <= MAX_POINTS, "points " + points);
+        for (int count : typeCounts(army).values()) {
+            assertTrue(count <= GeneratePresetImpl.DEFAULT_MAX_UNITS_PER_TYPE, "count " + count);
+        }
+        assertEquals(typeCounts(honest), typeCounts(army));
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private Path tableFile() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "preset-*.bin")) {
+            for (Path file : files) {
+                return file;
+            }
+        }
+        throw new AssertionError("no table file in " + dir);
+    }
+
+    private static Map<String, Integer> typeCounts(Army army) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Unit u : army.getUnits()) {
+            counts.merge(u.getUnitType(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static List<Unit> templates() {
+        List<Unit> templates = new ArrayList<>();
+        templates.add(template("Knight", 100, 25, 30));
+        templates.add(template("Swordsman", 60, 20, 20));
+        templates.add(template("Pikeman", 50, 20, 18));
+        templates.add(template("Archer", 40, 30, 25));
+        return templates;
+    }
+
+    private static Unit template(String type, int health, int attack, int cost) {
+        return new Unit(type, type, health, attack, cost, "Melee", new HashMap<>(), new HashMap<>(), 0, 0);
+    }
+}
@@ -0,0 +1,230 @@
+package programs;
+
+import com.battle.heroes.army.Army;
+import com.battle.heroes.army.Unit;
+import com.battle.heroes.army.programs.Program;
+import com.battle.heroes.util.GameSpeedUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TurnScheduler} против прежней логики боя — пересборки очередей после каждой гибели.
+ * <p>
+ * Программы юнитов бьют случайного живого врага общим сидированным {@link Random}, иногда промахиваются
+ * ({@code null}) и иногда погибают сами. Случайные числа берутся в порядке ходов, поэтому при любом расхождении
+ * порядка расходятся и атаки, и итоги раундов.
+ */
+class TurnSchedulerTest {
+
+    private static final int BATTLES = 3000;
+
+    @Test
+    void turnOrderMatchesRebuildPerDeath() throws InterruptedException {
+        for (long seed = 0; seed < BATTLES; seed++) {
+            assertEquals(referenceBattle(seed), battle(seed), "seed " + seed);
+        }
+    }
+
+    @Test
+    void unitListedTwiceMovesOncePerRound() throws InterruptedException {
+        Army[] armies = armies(7);
+        List<Unit> player = new ArrayList<>(armies[0].getUnits());
+        Unit twice = player.stream().filter(u -> u.getProgram() != null).findFirst().orElseThrow();
+        player.add(twice);
+        armies[0].setUnits(player);
+
+        List<String> events = new ArrayList<>();
+        SimulateBattleImpl simulator = new SimulateBattleImpl();
+        simulator.setLogSink(new RecordingSink(events));
+        simulator.simulate(armies[0], armies[1]);
+
+        int moves = 0;
+        int total = 0;
+        for (String e : events) {
+            if (e.startsWith("round")) {
+                assertTrue(moves <= 1, "two moves in one round: " + events);
+                moves = 0;
+            } else if (e.startsWith(twice.getName() + ">")) {
+                moves++;
+                total++;
+            }
+        }
+        assertTrue(total > 0, "unit never moved: " + events);
+    }
+
+    private static List<String> battle(long seed) throws InterruptedException {
+        Army[] armies = armies(seed);
+        List<String> events = new ArrayList<>();
+        SimulateBattleImpl simulator = new SimulateBattleImpl();
+        simulator.setLogSink(new RecordingSink(events));
+        simulator.simulate(armies[0], armies[1]);
+        return events;
+    }
+
+    /** Армии боя: от 1 до 44 юнитов на сторону, атака кратна 5 (много равных), у каждого 12-го нет программы. */
+    private static Army[] armies(long seed) {
+        Random rnd = new Random(seed);
+        Random programs = new Random(seed * 31);
+        Army[] armies = {new Army(), new Army()};
+        for (int side = 0; side < 2; side++) {
+            List<Unit> units = new ArrayList<>();
+            int n = 1 + rnd.nextInt(44);
+            for (int i = 0; i < n; i++) {
+                units.add(new Unit("u" + side + "_" + i, "T", 20 + rnd.nextInt(100), 5 * (1 + rnd.nextInt(6)), 1,
+                        "Melee", new HashMap<>(), new HashMap<>(), 0, 0));
+            }
+            armies[side].setUnits(units);
+        }
+        for (int side = 0; side < 2; side++) {
+            for (Unit u : armies[side].getUnits()) {
+                if (rnd.nextInt(12) != 0) u.setProgram(new RandomStrike(u, armies[side], armies[1 - side], programs));
+            }
+        }
+        return armies;
+    }
+
+    private static String attack(Unit attacker, Unit target) {
+        return attacker.getName() + ">" + ((target == null) ? "-" : target.getName());
+    }
+
+    private static String roundOver(int round, int playerAlive, int computerAlive) {
+        return "round " + round + ": " + playerAlive + "/" + computerAlive;
+    }
+
+    private static final class RecordingSink implements BattleLogSink {
+
+        private final List<String> events;
+
+        RecordingSink(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onAttack(Unit attacker, Unit target) {
+            events.add(attack(attacker, target));
+        }
+
+        @Override
+        public void onRoundOver(int round, int playerAlive, int computerAlive) {
+            events.add(roundOver(round, playerAlive, computerAlive));
+        }
+    }
+
+    private static final class RandomStrike extends Program {
+
+        private final Random rnd;
+
+        RandomStrike(Unit unit, Army ally, Army enemy, Random rnd) {
+            super(unit, ally, enemy, new GameSpeedUtil(0));
+            this.rnd = rnd;
+        }
+
+        @Override
+        public Unit attack() {
+            List<Unit> alive = new ArrayList<>();
+            for (Unit u : enemyArmy.getUnits()) {
+                if (u.isAlive()) alive.add(u);
+            }
+            if (alive.isEmpty() || rnd.nextInt(10) == 0) return null;
+            Unit target = alive.get(rnd.nextInt(alive.size()));
+            target.setHealth(target.getHealth() - unit.getBaseAttack());
+            if (target.getHealth() <= 0) target.setAlive(false);
+            if (rnd.nextInt(15) == 0) unit.setAlive(false);
+            return target;
+        }
+    }
+
+    // ---- прежняя логика SimulateBattleImpl: очереди пересобираются после каждой гибели ----
+
+    private static List<String> referenceBattle(long seed) throws InterruptedException {
+        Army[] armies = armies(seed);
+        List<Unit> playerUnits = armies[0].getUnits();
+        List<Unit> computerUnits = armies[1].getUnits();
+        List<String> events = new ArrayList<>();
+        int round = 1;
+
+        while (hasAliveAndCanMove(playerUnits) && hasAliveAndCanMove(computerUnits)) {
+            Set<Unit> acted = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<Unit> playerQueue = buildQueue(playerUnits, acted);
+            Deque<Unit> computerQueue = buildQueue(computerUnits, acted);
+            boolean playerTurn = chooseFirstTurn(playerQueue, computerQueue);
+            boolean anyMove = false;
+
+            while (!playerQueue.isEmpty() || !computerQueue.isEmpty()) {
+                if (!hasAliveAndCanMove(playerUnits) || !hasAliveAndCanMove(computerUnits)) {
+                    return events;
+                }
+                Unit attacker = pollNextAttacker(playerTurn, playerQueue, computerQueue);
+                if (attacker == null) {
+                    playerTurn = !playerTurn;
+                    continue;
+                }
+                acted.add(attacker);
+                anyMove = true;
+
+                boolean attackerWasAlive = attacker.isAlive();
+                Unit target = null;
+                if (attackerWasAlive && attacker.getProgram() != null) {
+                    target = attacker.getProgram().attack();
+                }
+                events.add(attack(attacker, target));
+
+                if ((target != null && !target.isAlive()) || (attackerWasAlive && !attacker.isAlive())) {
+                    playerQueue = buildQueue(playerUnits, acted);
+                    computerQueue = buildQueue(computerUnits, acted);
+                }
+                playerTurn = !playerTurn;
+            }
+            if (!anyMove) {
+                return events;
+            }
+            events.add(roundOver(round, countAlive(playerUnits), countAlive(computerUnits)));
+            round++;
+        }
+        return events;
+    }
+
+    private static boolean hasAliveAndCanMove(List<Unit> units) {
+        for (Unit u : units) {
+            if (u != null && u.isAlive() && u.getProgram() != null) return true;
+        }
+        return false;
+    }
+
+    private static int countAlive(List<Unit> units) {
+        int c = 0;
+        for (Unit u : units) {
+            if (u != null && u.isAlive()) c++;
+        }
+        return c;
+    }
+
+    private static Deque<Unit> buildQueue(List<Unit> units, Set<Unit> acted) {
+        return units.stream()
+                .filter(Objects::nonNull)
+                .filter(Unit::isAlive)
+                .filter(u -> u.getProgram() != null)
+                .filter(u -> !acted.contains(u))
+                .sorted(Comparator.comparingInt(Unit::getBaseAttack).reversed())
+                .collect(Collectors.toCollection(ArrayDeque::new));
+    }
+
+    private static boolean chooseFirstTurn(Deque<Unit> playerQueue, Deque<Unit> computerQueue) {
+        if (computerQueue.isEmpty()) return true;
+        if (playerQueue.isEmpty()) return false;
+        return playerQueue.peekFirst().getBaseAttack() >= computerQueue.peekFirst().getBaseAttack();
+    }
+
+    private static Unit pollNextAttacker(boolean playerTurn, Deque<Unit> playerQueue, Deque<Unit> computerQueue) {
+        Deque<Unit> first = playerTurn ? playerQueue : computerQueue;
+        Deque<Unit> second = playerTurn ? computerQueue : playerQueue;
+        if (!first.isEmpty()) return first.pollFirst();
+        if (!second.isEmpty()) return second.pollFirst();
+        return null;
+    }
+}